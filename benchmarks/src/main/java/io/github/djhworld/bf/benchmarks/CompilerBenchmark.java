@@ -0,0 +1,63 @@
+package io.github.djhworld.bf.benchmarks;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.compile.CompileException;
+import io.github.djhworld.bf.compile.Compiler;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiler throughput on large sources: mandlebrot.b repeated up to the size, and a single deeply nested loop
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompilerBenchmark {
+    @Param({"1048576", "8388608"})
+    private int size;
+
+    @Param({"mandlebrot", "nested"})
+    private String source;
+
+    private final Compiler compiler = new Compiler();
+    private String program;
+    private byte[] programBytes;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder(size);
+        if (source.equals("mandlebrot")) {
+            String mandlebrot = Workloads.resource("mandlebrot.b");
+            while (builder.length() + mandlebrot.length() <= size)
+                builder.append(mandlebrot);
+        } else {
+            int depth = size / 3;
+            for (int i = 0; i < depth; i++)
+                builder.append("[+");
+            for (int i = 0; i < depth; i++)
+                builder.append(']');
+        }
+
+        program = builder.toString();
+        programBytes = program.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Benchmark
+    public List<Operation> compileString() throws CompileException {
+        return compiler.compile(program);
+    }
+
+    @Benchmark
+    public List<Operation> compileChannel() throws CompileException, IOException {
+        return compiler.compile(Channels.newChannel(new ByteArrayInputStream(programBytes)));
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.djhworld.bf.benchmarks;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.compile.CompileException;
+import io.github.djhworld.bf.compile.Compiler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the example programs from the test resources on each engine. The program is compiled once up front,
+ * the tape and console are new for every run. For the jit engine the time includes generating the bytecode, for closures building the tree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MachineBenchmark {
+    @Param({"mandlebrot.b", "rot13.b", "helloworld.b"})
+    private String program;
+
+    @Param({"interpreter", "jit", "tiered", "closures"})
+    private String engine;
+
+    private List<Operation> operations;
+    private byte[] input;
+
+    @Setup
+    public void setUp() throws CompileException {
+        operations = new Compiler().compile(Workloads.resource(program));
+        input = Workloads.text(64 * 1024);
+    }
+
+    @Benchmark
+    public void execute(Blackhole blackhole) throws IOException {
+        Workloads.CountingOutputStream output = new Workloads.CountingOutputStream();
+        Workloads.engine(engine, Workloads.console(input, output)).execute(operations);
+        blackhole.consume(output.count);
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.djhworld.bf.benchmarks;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.compile.CompileException;
+import io.github.djhworld.bf.compile.Compiler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Workloads that stress one part of the machine each
+ * <ul>
+ * <li>loops: three nested loops, the innermost steps its counter by two so the optimiser leaves it as a loop,
+ * about 8 million back-edges</li>
+ * <li>io: copies 4MB of input to the output a byte at a time</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SyntheticBenchmark {
+    private static final String LOOPS = "-[>-[>--[-->+<]<-]<-]";
+    private static final String IO = ",[.,]";
+
+    @Param({"interpreter", "jit", "tiered", "closures"})
+    private String engine;
+
+    private List<Operation> loops;
+    private List<Operation> io;
+    private byte[] input;
+
+    @Setup
+    public void setUp() throws CompileException {
+        Compiler compiler = new Compiler();
+        loops = compiler.compile(LOOPS);
+        io = compiler.compile(IO);
+        input = Workloads.text(4 * 1024 * 1024);
+    }
+
+    @Benchmark
+    public void loops(Blackhole blackhole) throws IOException {
+        run(loops, new byte[0], blackhole);
+    }
+
+    @Benchmark
+    public void io(Blackhole blackhole) throws IOException {
+        run(io, input, blackhole);
+    }
+
+    private void run(List<Operation> operations, byte[] input, Blackhole blackhole) throws IOException {
+        Workloads.CountingOutputStream output = new Workloads.CountingOutputStream();
+        Workloads.engine(engine, Workloads.console(input, output)).execute(operations);
+        blackhole.consume(output.count);
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.djhworld.bf.benchmarks;
+
+import io.github.djhworld.bf.closure.ClosureCompiler;
+import io.github.djhworld.bf.closure.ClosureMachine;
+import io.github.djhworld.bf.jit.JitCompiler;
+import io.github.djhworld.bf.jit.JitMachine;
+import io.github.djhworld.bf.jit.TieredMachine;
+import io.github.djhworld.bf.vm.BufferedInput;
+import io.github.djhworld.bf.vm.BufferedOutput;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Engine;
+import io.github.djhworld.bf.vm.Machine;
+import io.github.djhworld.bf.vm.Tape;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Programs, inputs and engines shared by the benchmarks
+ */
+final class Workloads {
+    private Workloads() {
+    }
+
+    static String resource(String name) {
+        try (InputStream in = Workloads.class.getResourceAsStream("/" + name)) {
+            if (in == null)
+                throw new IllegalArgumentException("No such program: " + name);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                bytes.write(buffer, 0, read);
+            return new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Printable text of the given size ending in a zero byte, which the programs reading input treat as the end
+     */
+    static byte[] text(int size) {
+        byte[] text = new byte[size + 1];
+        for (int i = 0; i < size; i++)
+            text[i] = (byte) (i % 80 == 79 ? '\n' : 'a' + i % 26);
+        return text;
+    }
+
+    /**
+     * @param engine one of interpreter, jit, tiered or closures
+     */
+    static Engine engine(String engine, Console console) {
+        byte[] memory = new byte[Tape.DEFAULT_SIZE];
+        switch (engine) {
+            case "interpreter":
+                return new Machine(console, memory);
+            case "jit":
+                return new JitMachine(new JitCompiler(), console, memory);
+            case "tiered":
+                return new TieredMachine(new JitCompiler(), console, memory, TieredMachine.DEFAULT_THRESHOLD);
+            case "closures":
+                return new ClosureMachine(new ClosureCompiler(), console, memory);
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+    }
+
+    static Console console(byte[] input, CountingOutputStream output) {
+        return new Console(new BufferedInput(new ByteArrayInputStream(input)), new BufferedOutput(output));
+    }
+
+    /**
+     * Discards everything written to it, the count is handed to a Blackhole so the output cannot be optimised away
+     */
+    static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
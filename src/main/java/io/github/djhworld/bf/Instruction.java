@@ -8,10 +8,20 @@ public enum Instruction {
     PRINT('.'),
     READ(','),
     JUMP_IF_ZERO('['),
-    JUMP_IF_NOT_ZERO(']');
+    JUMP_IF_NOT_ZERO(']'),
+
+    // the instructions below have no source token, they are only produced by the optimiser
+    SET_ZERO,
+    SCAN_LEFT,
+    SCAN_RIGHT,
+    MUL_ADD;
 
     public final char token;
 
+    Instruction() {
+        this('\0');
+    }
+
     Instruction(char token) {
         this.token = token;
     }
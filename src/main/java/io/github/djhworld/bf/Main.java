@@ -1,24 +1,467 @@
 package io.github.djhworld.bf;
 
+import io.github.djhworld.bf.aot.AotCompiler;
+import io.github.djhworld.bf.aot.CTranspiler;
+import io.github.djhworld.bf.aot.JavaTranspiler;
+import io.github.djhworld.bf.closure.ClosureCompiler;
+import io.github.djhworld.bf.closure.ClosureMachine;
+import io.github.djhworld.bf.compile.CachingCompiler;
 import io.github.djhworld.bf.compile.Compiler;
+import io.github.djhworld.bf.compile.PartialEvaluator;
+import io.github.djhworld.bf.ir.PassManager;
+import io.github.djhworld.bf.jit.JitCompiler;
+import io.github.djhworld.bf.jit.JitMachine;
+import io.github.djhworld.bf.jit.TieredMachine;
+import io.github.djhworld.bf.pipeline.Pipeline;
+import io.github.djhworld.bf.service.BatchRunner;
+import io.github.djhworld.bf.service.RecordFormat;
+import io.github.djhworld.bf.vm.Budget;
+import io.github.djhworld.bf.vm.BudgetExceededException;
+import io.github.djhworld.bf.vm.BufferedInput;
+import io.github.djhworld.bf.vm.BufferedOutput;
+import io.github.djhworld.bf.vm.CellWidth;
+import io.github.djhworld.bf.vm.CheckedMachine;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Engine;
+import io.github.djhworld.bf.vm.IntMachine;
 import io.github.djhworld.bf.vm.Machine;
+import io.github.djhworld.bf.vm.OverflowPolicy;
+import io.github.djhworld.bf.vm.PagedTape;
+import io.github.djhworld.bf.vm.ProfilingMachine;
+import io.github.djhworld.bf.vm.ShortMachine;
+import io.github.djhworld.bf.vm.Snapshot;
+import io.github.djhworld.bf.vm.Tape;
+import io.github.djhworld.bf.vm.TapePolicy;
+
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
-import static java.nio.file.Files.readAllBytes;
 import static java.nio.file.Paths.get;
 
 public class Main {
+    private static final int PROFILED_LOOPS = 10;
+
+    // options about how the program is compiled, which every mode compiling a program takes
+    private static final List<String> COMPILER_OPTIONS = Arrays.asList("--cache-dir", "--disable-pass", "--precompute",
+            "--tape-size");
+    // options only the interpreter running on a Tape takes, on top of the compiler's
+    private static final List<String> INTERPRETER_OPTIONS = Arrays.asList("--tape-policy", "--paged", "--max-operations",
+            "--timeout", "--snapshot", "--resume");
+
     public static void main(String[] args) throws Exception {
-        if (args.length == 0)
+        String file = null;
+        boolean jit = false;
+        boolean tiered = false;
+        boolean closures = false;
+        Integer tapeSize = null;
+        TapePolicy tapePolicy = TapePolicy.FIXED;
+        boolean paged = false;
+        CellWidth cellWidth = CellWidth.EIGHT;
+        OverflowPolicy overflow = OverflowPolicy.WRAP;
+        String cacheDirectory = null;
+        Long maxOperations = null;
+        Long timeout = null;
+        boolean profile = false;
+        String snapshotFile = null;
+        String resumeFile = null;
+        boolean precompute = false;
+        List<String> disabledPasses = new ArrayList<>();
+        String transpile = null;
+        String aotDirectory = null;
+        String precompiled = null;
+        String image = null;
+        String writeImage = null;
+        List<String> pipeline = new ArrayList<>();
+        RecordFormat batchFormat = null;
+        String batchFile = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        Set<String> given = new LinkedHashSet<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--"))
+                given.add(args[i]);
+            switch (args[i]) {
+                case "--jit":
+                    jit = true;
+                    break;
+                case "--tiered":
+                    tiered = true;
+                    break;
+                case "--closures":
+                    closures = true;
+                    break;
+                case "--tape-size":
+                    tapeSize = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--tape-policy":
+                    tapePolicy = TapePolicy.valueOf(value(args, ++i).toUpperCase());
+                    break;
+                case "--paged":
+                    paged = true;
+                    break;
+                case "--cell-width":
+                    cellWidth = CellWidth.ofBits(Integer.parseInt(value(args, ++i)));
+                    break;
+                case "--overflow":
+                    overflow = OverflowPolicy.valueOf(value(args, ++i).toUpperCase());
+                    break;
+                case "--cache-dir":
+                    cacheDirectory = value(args, ++i);
+                    break;
+                case "--max-operations":
+                    maxOperations = Long.parseLong(value(args, ++i));
+                    break;
+                case "--profile":
+                    profile = true;
+                    break;
+                case "--precompute":
+                    precompute = true;
+                    break;
+                case "--transpile":
+                    transpile = value(args, ++i);
+                    break;
+                case "--aot":
+                    aotDirectory = value(args, ++i);
+                    break;
+                case "--precompiled":
+                    precompiled = value(args, ++i);
+                    break;
+                case "--image":
+                    image = value(args, ++i);
+                    break;
+                case "--write-image":
+                    writeImage = value(args, ++i);
+                    break;
+                case "--disable-pass":
+                    disabledPasses.add(value(args, ++i));
+                    break;
+                case "--snapshot":
+                    snapshotFile = value(args, ++i);
+                    break;
+                case "--resume":
+                    resumeFile = value(args, ++i);
+                    break;
+                case "--timeout":
+                    timeout = Long.parseLong(value(args, ++i));
+                    break;
+                case "--batch":
+                    batchFormat = recordFormat(value(args, ++i));
+                    batchFile = value(args, ++i);
+                    break;
+                case "--parallelism":
+                    parallelism = Integer.parseInt(value(args, ++i));
+                    break;
+                case "|":
+                    if (file == null)
+                        throw new IllegalArgumentException("Missing file before |");
+                    pipeline.add(file);
+                    file = null;
+                    break;
+                default:
+                    file = args[i];
+            }
+        }
+
+        // the defaults count as not given
+        if (tapePolicy == TapePolicy.FIXED)
+            given.remove("--tape-policy");
+        if (cellWidth == CellWidth.EIGHT)
+            given.remove("--cell-width");
+        if (overflow == OverflowPolicy.WRAP)
+            given.remove("--overflow");
+        if (!pipeline.isEmpty())
+            given.add("|");
+        Budget budget = budget(maxOperations, timeout);
+
+        Console console = new Console(new BufferedInput(System.in), new BufferedOutput(System.out));
+        if (precompiled != null) {
+            supported("--precompiled", given, Arrays.asList("--precompiled", "--tape-size"));
+            runPrecompiled(precompiled, console, tapeSize == null ? Tape.DEFAULT_SIZE : tapeSize);
+            return;
+        }
+        if (image != null) {
+            supported("--image", given, Arrays.asList("--image", "--tape-size", "--tape-policy", "--paged",
+                    "--max-operations", "--timeout"));
+            runImage(image, console, tape(tapePolicy, tapeSize, paged), budget);
+            return;
+        }
+
+        if (file == null)
             throw new IllegalArgumentException("Please provide a file to execute");
+        checkOptions(given);
+
+        int size = tapeSize == null ? Tape.DEFAULT_SIZE : tapeSize;
+        boolean wrapping = overflow == OverflowPolicy.WRAP;
+        Compiler compiler = compiler(wrapping, disabledPasses, precompute, size, cacheDirectory);
+        if (aotDirectory != null) {
+            compileAheadOfTime(compiler, file, aotDirectory);
+        } else if (writeImage != null) {
+            writeImage(compiler, file, writeImage);
+        } else if (!pipeline.isEmpty()) {
+            pipeline.add(file);
+            runPipeline(compiler, pipeline, size);
+        } else if (batchFormat != null) {
+            runBatch(compiler, file, batchFormat, batchFile, size, parallelism, maxOperations, timeout);
+        } else if (transpile != null) {
+            transpile(compiler, file, transpile, size);
+        } else if (profile) {
+            runProfiled(compiler, file, console, size);
+        } else if (snapshotFile != null || resumeFile != null) {
+            Machine machine = new Machine(console, tape(tapePolicy, tapeSize, paged));
+            machine.setBudget(budget);
+            runResumable(machine, compiler, file, snapshotFile, resumeFile);
+        } else {
+            Engine engine;
+            if (closures) {
+                engine = new ClosureMachine(new ClosureCompiler(), console, new byte[size]);
+            } else if (jit) {
+                engine = new JitMachine(new JitCompiler(), console, new byte[size]);
+            } else if (tiered) {
+                engine = new TieredMachine(new JitCompiler(), console, new byte[size], TieredMachine.DEFAULT_THRESHOLD);
+            } else if (cellWidth == CellWidth.EIGHT && wrapping) {
+                Machine machine = new Machine(console, tape(tapePolicy, tapeSize, paged));
+                machine.setBudget(budget);
+                engine = machine;
+            } else if (!wrapping) {
+                engine = new CheckedMachine(console, new int[size], cellWidth, overflow);
+            } else if (cellWidth == CellWidth.SIXTEEN) {
+                engine = new ShortMachine(console, new char[size]);
+            } else {
+                engine = new IntMachine(console, new int[size]);
+            }
+
+            try (FileChannel program = FileChannel.open(get(file))) {
+                new Runner(compiler, engine).run(program);
+            }
+        }
+    }
+
+    private static Compiler compiler(boolean wrapping, List<String> disabledPasses, boolean precompute, int tapeSize,
+                                     String cacheDirectory) {
+        PassManager passes = PassManager.defaults(wrapping);
+        for (String pass : disabledPasses)
+            passes.disable(pass);
+
+        PartialEvaluator evaluator = null;
+        if (precompute)
+            evaluator = new PartialEvaluator(PartialEvaluator.DEFAULT_MAX_OPERATIONS, tapeSize);
+        return cacheDirectory == null
+                ? new Compiler(wrapping, passes, evaluator)
+                : new CachingCompiler(wrapping, passes, evaluator, CachingCompiler.DEFAULT_MAX_ENTRIES, get(cacheDirectory));
+    }
+
+    private static Program compile(Compiler compiler, String file) throws Exception {
+        try (FileChannel source = FileChannel.open(get(file))) {
+            return Program.of(compiler.compile(source));
+        }
+    }
+
+    private static void runPrecompiled(String name, Console console, int tapeSize) throws Exception {
+        try {
+            AotCompiler.load(name).execute(new byte[tapeSize], 0, console);
+        } finally {
+            console.flush();
+        }
+    }
+
+    private static void runImage(String image, Console console, Tape tape, Budget budget) throws Exception {
+        Machine machine = new Machine(console, tape);
+        machine.setBudget(budget);
+        machine.execute(ProgramImage.map(get(image)));
+    }
+
+    /**
+     * Compiles every program in the directory named by file into a class in aotDirectory
+     */
+    private static void compileAheadOfTime(Compiler compiler, String file, String aotDirectory) throws Exception {
+        for (Path written : new AotCompiler(compiler, new JitCompiler()).compileDirectory(get(file), get(aotDirectory)))
+            System.err.println("Wrote " + written);
+    }
 
-        Runner runner = new Runner(
-                new Compiler(),
-                new Machine(System.in, System.out, new byte[30000])
-        );
+    private static void writeImage(Compiler compiler, String file, String image) throws Exception {
+        ProgramImage.write(compile(compiler, file), get(image));
+    }
+
+    /**
+     * Runs the files as a pipeline from standard input to standard output, each stage reading what the one before
+     * it printed
+     */
+    private static void runPipeline(Compiler compiler, List<String> files, int tapeSize) throws Exception {
+        List<Program> stages = new ArrayList<>();
+        for (String stage : files)
+            stages.add(compile(compiler, stage));
+        new Pipeline(stages, tapeSize, Pipeline.DEFAULT_BUFFER_SIZE)
+                .run(new BufferedInput(System.in), new BufferedOutput(System.out));
+    }
 
-        String file = args[0];
-        String program = new String(readAllBytes(get(file)));
+    /**
+     * Runs the program once for every record in batchFile, or standard input when it is -, giving each record a
+     * budget of its own and reporting those running past it on standard error
+     */
+    private static void runBatch(Compiler compiler, String file, RecordFormat format, String batchFile, int tapeSize,
+                                 int parallelism, Long maxOperations, Long timeout) throws Exception {
+        Program program = compile(compiler, file);
+        try (BatchRunner batch = new BatchRunner(program, tapeSize, parallelism, () -> budget(maxOperations, timeout));
+             InputStream records = batchFile.equals("-") ? System.in : Files.newInputStream(get(batchFile))) {
+            OutputStream out = new BufferedOutputStream(System.out, BufferedOutput.DEFAULT_BUFFER_SIZE);
+            List<Long> failed = batch.run(records, out, format);
+            out.flush();
+            for (long record : failed)
+                System.err.println("Record " + record + " ran past its budget");
+        }
+    }
+
+    /**
+     * Runs the program and prints its hottest loops on standard error, even when it fails
+     */
+    private static void runProfiled(Compiler compiler, String file, Console console, int tapeSize) throws Exception {
+        ProfilingMachine machine = new ProfilingMachine(console, new byte[tapeSize]);
+        try (FileChannel program = FileChannel.open(get(file))) {
+            new Runner(compiler, machine).run(program);
+        } finally {
+            if (machine.getProfile() != null)
+                System.err.print(machine.getProfile().report(PROFILED_LOOPS));
+        }
+    }
+
+    /**
+     * Runs the program from the snapshot in resumeFile if given, and writes a snapshot to snapshotFile if given
+     * when the program runs past its budget
+     */
+    private static void runResumable(Machine machine, Compiler compiler, String file, String snapshotFile,
+                                     String resumeFile) throws Exception {
+        Program program = compile(compiler, file);
+
+        if (resumeFile != null)
+            machine.restore(program, Snapshot.decode(ByteBuffer.wrap(Files.readAllBytes(get(resumeFile)))));
+
+        try {
+            machine.execute(program);
+        } catch (BudgetExceededException e) {
+            if (snapshotFile != null)
+                Files.write(get(snapshotFile), machine.snapshot(program).encode());
+            throw e;
+        }
+    }
+
+    /**
+     * Prints the program as Java or C source, a Java class is named after the file
+     */
+    private static void transpile(Compiler compiler, String file, String language, int tapeSize) throws Exception {
+        Program program = compile(compiler, file);
+
+        switch (language) {
+            case "java":
+                String className = AotCompiler.className(get(file).getFileName().toString());
+                System.out.print(new JavaTranspiler(tapeSize).transpile(className, program));
+                break;
+            case "c":
+                System.out.print(new CTranspiler(tapeSize).transpile(program));
+                break;
+            default:
+                throw new IllegalArgumentException("Can only transpile to java or c, not " + language);
+        }
+    }
+
+    /**
+     * Fails unless the options given all go together, given being the options on the command line that differ from
+     * their defaults, with | standing for a pipeline
+     */
+    private static void checkOptions(Set<String> given) {
+        List<String> compiling = new ArrayList<>(COMPILER_OPTIONS);
+        if (given.contains("--aot")) {
+            supported("--aot", given, with(compiling, "--aot"));
+        } else if (given.contains("--write-image")) {
+            supported("--write-image", given, with(compiling, "--write-image"));
+        } else if (given.contains("--transpile")) {
+            supported("--transpile", given, with(compiling, "--transpile"));
+        } else if (given.contains("|")) {
+            supported("A pipeline", given, with(compiling, "|"));
+        } else if (given.contains("--batch")) {
+            supported("--batch", given, with(compiling, "--batch", "--parallelism", "--max-operations", "--timeout"));
+        } else if (given.contains("--profile")) {
+            supported("--profile", given, with(compiling, "--profile"));
+        } else if (given.contains("--jit") || given.contains("--tiered") || given.contains("--closures")) {
+            String engine = given.contains("--jit") ? "--jit" : given.contains("--tiered") ? "--tiered" : "--closures";
+            supported(engine, given, with(compiling, engine));
+        } else if (given.contains("--cell-width") || given.contains("--overflow")) {
+            supported("Wide or non-wrapping cells", given,
+                    Arrays.asList("--cell-width", "--overflow", "--cache-dir", "--disable-pass", "--tape-size"));
+        } else {
+            compiling.addAll(INTERPRETER_OPTIONS);
+            supported("The interpreter", given, compiling);
+            if (given.contains("--paged") && (given.contains("--snapshot") || given.contains("--resume")))
+                throw new IllegalArgumentException("Snapshots need a flat tape, not a paged one");
+            if (given.contains("--precompute") && (given.contains("--tape-policy") || given.contains("--paged")))
+                throw new IllegalArgumentException("Precomputing needs a flat fixed tape");
+        }
+    }
+
+    private static void supported(String mode, Set<String> given, List<String> supported) {
+        Set<String> unsupported = new LinkedHashSet<>(given);
+        unsupported.removeAll(supported);
+        if (!unsupported.isEmpty())
+            throw new IllegalArgumentException(mode + " cannot be used with " + String.join(", ", unsupported));
+    }
+
+    private static List<String> with(List<String> options, String... more) {
+        List<String> all = new ArrayList<>(options);
+        all.addAll(Arrays.asList(more));
+        return all;
+    }
+
+    /**
+     * @param timeout in milliseconds from now
+     */
+    private static Budget budget(Long maxOperations, Long timeout) {
+        Budget budget = Budget.UNLIMITED;
+        if (maxOperations != null)
+            budget = budget.withMaxOperations(maxOperations);
+        if (timeout != null)
+            budget = budget.withTimeout(timeout, TimeUnit.MILLISECONDS);
+        return budget;
+    }
+
+    private static RecordFormat recordFormat(String name) {
+        switch (name) {
+            case "lines":
+                return RecordFormat.LINES;
+            case "length":
+                return RecordFormat.LENGTH_PREFIXED;
+            default:
+                throw new IllegalArgumentException("Records are either lines or length, not " + name);
+        }
+    }
+
+    private static Tape tape(TapePolicy policy, Integer size, boolean paged) {
+        if (paged) {
+            if (policy == TapePolicy.GROW)
+                throw new IllegalArgumentException("A paged tape is either fixed or wrapping");
+            return new PagedTape(size == null ? Tape.MAX_SIZE : size, policy);
+        }
+
+        switch (policy) {
+            case GROW:
+                return Tape.growing(size == null ? Tape.MAX_SIZE : size);
+            default:
+                return new Tape(size == null ? Tape.DEFAULT_SIZE : size, policy);
+        }
+    }
 
-        runner.run(program);
+    private static String value(String[] args, int i) {
+        if (i >= args.length)
+            throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+        return args[i];
     }
-}
\ No newline at end of file
+}
@@ -3,9 +3,24 @@ package io.github.djhworld.bf;
 public class Operation {
     public final Instruction instruction;
     public final int argument;
+    public final int offset;
+    // where the operation came from in the source, only known for loops and -1 otherwise
+    public final int line;
+    public final int column;
 
     public Operation(Instruction instruction, int argument) {
+        this(instruction, argument, 0);
+    }
+
+    public Operation(Instruction instruction, int argument, int offset) {
+        this(instruction, argument, offset, -1, -1);
+    }
+
+    public Operation(Instruction instruction, int argument, int offset, int line, int column) {
         this.instruction = instruction;
         this.argument = argument;
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
     }
 }
@@ -0,0 +1,78 @@
+package io.github.djhworld.bf;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Packed form of a compiled program, laid out as parallel int arrays so the machine can
+ * dispatch on it without touching any Operation objects.
+ * <p>
+ * The opcode constants mirror {@link Instruction#ordinal()}.
+ */
+public final class Program {
+    public static final int INC = 0;
+    public static final int DEC = 1;
+    public static final int INC_DP = 2;
+    public static final int DEC_DP = 3;
+    public static final int PRINT = 4;
+    public static final int READ = 5;
+    public static final int JUMP_IF_ZERO = 6;
+    public static final int JUMP_IF_NOT_ZERO = 7;
+    public static final int SET_ZERO = 8;
+    public static final int SCAN_LEFT = 9;
+    public static final int SCAN_RIGHT = 10;
+    public static final int MUL_ADD = 11;
+
+    public final int[] opcodes;
+    public final int[] arguments;
+    public final int[] offsets;
+
+    public Program(int[] opcodes, int[] arguments) {
+        this(opcodes, arguments, new int[opcodes.length]);
+    }
+
+    public Program(int[] opcodes, int[] arguments, int[] offsets) {
+        if (opcodes.length != arguments.length || opcodes.length != offsets.length)
+            throw new IllegalArgumentException("opcodes, arguments and offsets must be the same length");
+
+        this.opcodes = opcodes;
+        this.arguments = arguments;
+        this.offsets = offsets;
+    }
+
+    public static Program of(List<Operation> operations) {
+        int size = operations.size();
+        int[] opcodes = new int[size];
+        int[] arguments = new int[size];
+        int[] offsets = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            Operation operation = operations.get(i);
+            opcodes[i] = operation.instruction.ordinal();
+            arguments[i] = operation.argument;
+            offsets[i] = operation.offset;
+        }
+
+        return new Program(opcodes, arguments, offsets);
+    }
+
+    public int size() {
+        return opcodes.length;
+    }
+
+    /**
+     * @return a SHA-256 hash of the opcodes, arguments and offsets, equal programs have equal digests
+     */
+    public byte[] digest() {
+        ByteBuffer buffer = ByteBuffer.allocate(opcodes.length * 12);
+        buffer.asIntBuffer().put(opcodes).put(arguments).put(offsets);
+
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(buffer.array());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.djhworld.bf;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact binary form of a compiled program, used to keep compiled programs on disk.
+ * <p>
+ * After a header of the magic number, the format version and the number of operations, every operation is
+ * written as its opcode byte followed by its argument and offset as zig-zag encoded variable length integers,
+ * so the common small values take a single byte each. Brackets are followed by their line and column in the
+ * source in the same way.
+ */
+public final class ProgramCodec {
+    public static final int MAGIC = 0x42464F50; // "BFOP"
+    public static final int VERSION = 2;
+
+    private static final Instruction[] INSTRUCTIONS = Instruction.values();
+
+    private ProgramCodec() {
+    }
+
+    public static byte[] encode(List<Operation> operations) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(9 + operations.size() * 3);
+        writeInt(out, MAGIC);
+        out.write(VERSION);
+        writeInt(out, operations.size());
+
+        for (Operation operation : operations) {
+            out.write(operation.instruction.ordinal());
+            writeVarInt(out, operation.argument);
+            writeVarInt(out, operation.offset);
+            if (isBracket(operation.instruction)) {
+                writeVarInt(out, operation.line);
+                writeVarInt(out, operation.column);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a program from the buffer's position onwards, the buffer can be a mapped file
+     *
+     * @throws IllegalArgumentException if the buffer does not hold a program in this format, or its jumps do not
+     *                                  pair up
+     */
+    public static List<Operation> decode(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IllegalArgumentException("Not a compiled program");
+
+            int version = buffer.get();
+            if (version != VERSION)
+                throw new IllegalArgumentException("Unsupported compiled program version " + version);
+
+            int size = buffer.getInt();
+            if (size < 0 || size > buffer.remaining() / 3)
+                throw new IllegalArgumentException("Invalid operation count " + size);
+
+            List<Operation> operations = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int opcode = buffer.get();
+                if (opcode < 0 || opcode >= INSTRUCTIONS.length)
+                    throw new IllegalArgumentException("Invalid opcode " + opcode + " at operation " + i);
+
+                Instruction instruction = INSTRUCTIONS[opcode];
+                int argument = readVarInt(buffer);
+                int offset = readVarInt(buffer);
+                if (isBracket(instruction))
+                    operations.add(new Operation(instruction, argument, offset, readVarInt(buffer), readVarInt(buffer)));
+                else
+                    operations.add(new Operation(instruction, argument, offset));
+            }
+
+            validateJumps(operations);
+            return Collections.unmodifiableList(operations);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated compiled program", e);
+        }
+    }
+
+    /**
+     * Every jump has to land on its partner, which jumps back to it, as the interpreter takes the targets on trust
+     */
+    private static void validateJumps(List<Operation> operations) {
+        for (int i = 0; i < operations.size(); i++) {
+            Instruction instruction = operations.get(i).instruction;
+            if (!isBracket(instruction))
+                continue;
+
+            int target = operations.get(i).argument;
+            boolean forward = instruction == Instruction.JUMP_IF_ZERO;
+            if (forward ? target <= i || target >= operations.size() : target < 0 || target >= i)
+                throw new IllegalArgumentException("Jump target " + target + " out of range at operation " + i);
+
+            Operation partner = operations.get(target);
+            if (partner.instruction != (forward ? Instruction.JUMP_IF_NOT_ZERO : Instruction.JUMP_IF_ZERO)
+                    || partner.argument != i)
+                throw new IllegalArgumentException("Unpaired jump at operation " + i);
+        }
+    }
+
+    private static boolean isBracket(Instruction instruction) {
+        return instruction == Instruction.JUMP_IF_ZERO || instruction == Instruction.JUMP_IF_NOT_ZERO;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        int zigZag = (value << 1) ^ (value >> 31);
+        while ((zigZag & ~0x7F) != 0) {
+            out.write((zigZag & 0x7F) | 0x80);
+            zigZag >>>= 7;
+        }
+        out.write(zigZag);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int zigZag = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            zigZag |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+        throw new IllegalArgumentException("Malformed variable length integer");
+    }
+}
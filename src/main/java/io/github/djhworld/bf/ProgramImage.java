@@ -0,0 +1,259 @@
+package io.github.djhworld.bf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The packed form of a compiled program laid out flat, so it can be mapped from a file and run where it lies
+ * by {@link io.github.djhworld.bf.vm.Machine#execute(ProgramImage)}, without decoding anything. Processes mapping
+ * the same image share one copy of it in the page cache.
+ * <p>
+ * After a header of the magic number, the format version, the number of operations and the number of wide offsets
+ * as little endian ints, every operation takes one little endian long: the opcode in the lowest byte, the offset in
+ * the three bytes above it and the argument in the upper half. A single read brings in the whole operation. Jumps
+ * hold the index of their target operation, so an image means the same wherever it is mapped.
+ * <p>
+ * An offset beyond {@link #MAX_OFFSET} cells either way, as far out sparse programs have, does not fit in three
+ * bytes. Its operation has {@link #WIDE} set in the opcode byte and the index of the offset in the table of little
+ * endian ints after the operations in place of the offset. The interpreter leaves those to its slow path.
+ * <p>
+ * Unlike {@link ProgramCodec} nothing is compressed.
+ */
+public final class ProgramImage {
+    public static final int MAGIC = 0x4D494642; // "BFIM" in little endian
+    public static final int VERSION = 2;
+    /**
+     * The largest offset either way kept in the operation itself
+     */
+    public static final int MAX_OFFSET = (1 << 23) - 1;
+    /**
+     * Set in the opcode byte of an operation whose offset is kept in the table of wide offsets
+     */
+    public static final int WIDE = 0x80;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int OPERATION_SIZE = 8;
+
+    private final ByteBuffer operations;
+    private final int size;
+    private final ByteBuffer wideOffsets;
+    private final int wideCount;
+
+    private ProgramImage(ByteBuffer operations, int size, ByteBuffer wideOffsets, int wideCount) {
+        this.operations = operations;
+        this.size = size;
+        this.wideOffsets = wideOffsets;
+        this.wideCount = wideCount;
+    }
+
+    public static byte[] encode(Program program) {
+        int size = program.size();
+        int wideCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (tooWide(program.offsets[i]))
+                wideCount++;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length(size, wideCount)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(wideCount);
+
+        int wide = 0;
+        for (int i = 0; i < size; i++) {
+            int offset = program.offsets[i];
+            int opcode = program.opcodes[i];
+            if (tooWide(offset)) {
+                buffer.putInt(length(size, wide), offset);
+                offset = wide++;
+                opcode |= WIDE;
+            }
+
+            buffer.putLong((long) program.arguments[i] << 32 | (offset & 0xFFFFFFL) << 8 | opcode & 0xFF);
+        }
+
+        return buffer.array();
+    }
+
+    private static boolean tooWide(int offset) {
+        return offset > MAX_OFFSET || offset < -MAX_OFFSET;
+    }
+
+    /**
+     * Writes the image to a temporary file next to the target and moves it into place, so a process mapping
+     * the target never sees half an image
+     */
+    public static void write(Program program, Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        // created with the usual permissions, unlike a temporary file, so other users can map the image too
+        Path temporary = absolute.resolveSibling(absolute.getFileName() + "." + System.nanoTime() + ".tmp");
+        try {
+            Files.write(temporary, encode(program), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            Files.move(temporary, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Maps the image read only, the mapping stays valid once the file is closed
+     *
+     * @throws IllegalArgumentException if the file does not hold an image in this format
+     */
+    public static ProgramImage map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads the image in place from the buffer's position onwards, nothing is copied. Every operation is checked
+     * once here rather than while running.
+     *
+     * @throws IllegalArgumentException if the buffer does not hold an image in this format, or an opcode or jump
+     *                                  in it is invalid
+     */
+    public static ProgramImage wrap(ByteBuffer buffer) {
+        ByteBuffer image = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (image.remaining() < HEADER_SIZE || image.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("Not a program image");
+
+        int version = image.getInt(4);
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported program image version " + version);
+
+        int size = image.getInt(8);
+        if (size < 0 || length(size, 0) > image.remaining())
+            throw new IllegalArgumentException("Invalid operation count " + size);
+
+        int wideCount = image.getInt(12);
+        if (wideCount < 0 || wideCount > size || length(size, wideCount) > image.remaining())
+            throw new IllegalArgumentException("Invalid wide offset count " + wideCount);
+
+        image.limit(length(size, wideCount));
+        image.position(length(size, 0));
+        ByteBuffer wideOffsets = image.slice().order(ByteOrder.LITTLE_ENDIAN);
+        image.limit(length(size, 0));
+        image.position(HEADER_SIZE);
+        ProgramImage programImage = new ProgramImage(image.slice().order(ByteOrder.LITTLE_ENDIAN), size, wideOffsets, wideCount);
+        programImage.validate();
+        return programImage;
+    }
+
+    /**
+     * Checks every operation once, so the interpreter can trust the image: opcodes must be known, wide offsets
+     * must be in the table and every jump must point at its partner, which points back
+     */
+    private void validate() {
+        for (int i = 0; i < size; i++) {
+            long operation = operation(i);
+            int opcode = opcode(operation);
+            if (opcode > Program.MUL_ADD || isWide(operation) && !hasOffset(opcode))
+                throw new IllegalArgumentException("Invalid opcode " + ((int) operation & 0xFF) + " at operation " + i);
+
+            if (isWide(operation) && (offset(operation) < 0 || offset(operation) >= wideCount))
+                throw new IllegalArgumentException("Wide offset " + offset(operation) + " out of range at operation " + i);
+
+            if (opcode == Program.JUMP_IF_ZERO || opcode == Program.JUMP_IF_NOT_ZERO) {
+                int target = argument(operation);
+                boolean forward = opcode == Program.JUMP_IF_ZERO;
+                if (forward ? target <= i || target >= size : target < 0 || target >= i)
+                    throw new IllegalArgumentException("Jump target " + target + " out of range at operation " + i);
+
+                long partner = operation(target);
+                if (opcode(partner) != (forward ? Program.JUMP_IF_NOT_ZERO : Program.JUMP_IF_ZERO) || argument(partner) != i)
+                    throw new IllegalArgumentException("Unpaired jump at operation " + i);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the operations, the one at index i is the long at i * 8, see {@link #opcode(long)},
+     * {@link #argument(long)} and {@link #offset(long)}
+     */
+    public ByteBuffer operations() {
+        return operations.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public long operation(int index) {
+        return operations.getLong(index * OPERATION_SIZE);
+    }
+
+    /**
+     * @return the opcode without {@link #WIDE}
+     */
+    public static int opcode(long operation) {
+        return (int) operation & 0xFF & ~WIDE;
+    }
+
+    /**
+     * @return true if the offset is kept in the table of wide offsets, see {@link #offset(int)}
+     */
+    public static boolean isWide(long operation) {
+        return ((int) operation & WIDE) != 0;
+    }
+
+    public static int argument(long operation) {
+        return (int) (operation >> 32);
+    }
+
+    /**
+     * @return the offset kept in the operation, for a wide operation the index of its offset in the table
+     */
+    public static int offset(long operation) {
+        return (int) operation >> 8;
+    }
+
+    /**
+     * @return the offset of the operation at the index, wide or not
+     */
+    public int offset(int index) {
+        long operation = operation(index);
+        return isWide(operation) ? wideOffsets.getInt(offset(operation) * 4) : offset(operation);
+    }
+
+    /**
+     * @return the image in the array form, for the engines that cannot run an image directly
+     */
+    public Program toProgram() {
+        int[] opcodes = new int[size];
+        int[] arguments = new int[size];
+        int[] offsets = new int[size];
+        for (int i = 0; i < size; i++) {
+            long operation = operation(i);
+            opcodes[i] = opcode(operation);
+            arguments[i] = argument(operation);
+            offsets[i] = offset(i);
+        }
+        return new Program(opcodes, arguments, offsets);
+    }
+
+    private static boolean hasOffset(int opcode) {
+        switch (opcode) {
+            case Program.INC:
+            case Program.DEC:
+            case Program.PRINT:
+            case Program.READ:
+            case Program.SET_ZERO:
+            case Program.MUL_ADD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int length(long size, long wideCount) {
+        long length = HEADER_SIZE + size * OPERATION_SIZE + wideCount * 4;
+        if (length > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Program too large for an image");
+        return (int) length;
+    }
+}
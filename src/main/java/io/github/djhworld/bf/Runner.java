@@ -2,21 +2,26 @@ package io.github.djhworld.bf;
 
 import io.github.djhworld.bf.compile.CompileException;
 import io.github.djhworld.bf.compile.Compiler;
-import io.github.djhworld.bf.vm.Machine;
+import io.github.djhworld.bf.vm.Engine;
 
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
 
 public class Runner {
     private final Compiler compiler;
-    private final Machine machine;
+    private final Engine engine;
 
-    public Runner(Compiler compiler, Machine machine) {
+    public Runner(Compiler compiler, Engine engine) {
         this.compiler = compiler;
-        this.machine = machine;
+        this.engine = engine;
     }
 
 
     public void run(String program) throws CompileException, IOException {
-        machine.execute(compiler.compile(program));
+        engine.execute(compiler.compile(program));
+    }
+
+    public void run(ReadableByteChannel program) throws CompileException, IOException {
+        engine.execute(compiler.compile(program));
     }
 }
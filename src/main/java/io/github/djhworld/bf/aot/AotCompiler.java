@@ -0,0 +1,122 @@
+package io.github.djhworld.bf.aot;
+
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.compile.CompileException;
+import io.github.djhworld.bf.compile.Compiler;
+import io.github.djhworld.bf.jit.CompiledProgram;
+import io.github.djhworld.bf.jit.JitCompiler;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles programs ahead of time into classes implementing {@link CompiledProgram}, so running them needs no
+ * compilation at all, only loading the class with {@link #load(String)}.
+ * <p>
+ * The classes are the ones {@link JitCompiler} generates at runtime, written to a class directory under
+ * {@link #PACKAGE} and named after their source file. The aot Maven profile does this for a directory of programs
+ * before the jar is built.
+ */
+public class AotCompiler {
+    public static final String PACKAGE = "io.github.djhworld.bf.aot.programs";
+    public static final String EXTENSION = ".b";
+
+    private final Compiler compiler;
+    private final JitCompiler jit;
+
+    public AotCompiler() {
+        this(new Compiler(), new JitCompiler());
+    }
+
+    public AotCompiler(Compiler compiler, JitCompiler jit) {
+        this.compiler = compiler;
+        this.jit = jit;
+    }
+
+    /**
+     * Compiles every program in the source directory, ignoring sub directories
+     *
+     * @return the class files written
+     * @throws IllegalArgumentException if two files map to the same class name, e.g. a-b.b and a_b.b, in which case
+     *                                  nothing is written
+     */
+    public List<Path> compileDirectory(Path sources, Path classes) throws CompileException, IOException {
+        Map<String, Path> programs = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(sources, "*" + EXTENSION)) {
+            for (Path file : files) {
+                if (!Files.isRegularFile(file))
+                    continue;
+                Path clash = programs.put(className(file.getFileName().toString()), file);
+                if (clash != null)
+                    throw new IllegalArgumentException(clash.getFileName() + " and " + file.getFileName()
+                            + " would both be compiled to the class " + className(file.getFileName().toString()));
+            }
+        }
+
+        List<Path> written = new ArrayList<>();
+        for (Path file : programs.values())
+            written.add(compileFile(file, classes));
+        return written;
+    }
+
+    /**
+     * @return the class file written
+     */
+    public Path compileFile(Path source, Path classes) throws CompileException, IOException {
+        String className = className(source.getFileName().toString());
+        Program program;
+        try (FileChannel channel = FileChannel.open(source)) {
+            program = Program.of(compiler.compile(channel));
+        }
+
+        String internalName = (PACKAGE + "." + className).replace('.', '/');
+        Path classFile = classes.resolve(internalName + ".class");
+        Files.createDirectories(classFile.getParent());
+        Files.write(classFile, jit.generate(internalName, program, 0, program.size()));
+        return classFile;
+    }
+
+    /**
+     * Loads a program compiled ahead of time from the class path
+     *
+     * @param name the name of the program's source file, with or without its extension
+     * @throws IllegalArgumentException if there is no such program
+     */
+    public static CompiledProgram load(String name) {
+        String className = PACKAGE + "." + className(name);
+        try {
+            return (CompiledProgram) Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("No program compiled ahead of time called " + name, e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to load compiled program " + className, e);
+        }
+    }
+
+    /**
+     * @return the simple name of the class for a source file, e.g. Rot13 for rot13.b or Test_obscure for
+     * test-obscure.b
+     */
+    public static String className(String fileName) {
+        String name = fileName.endsWith(EXTENSION)
+                ? fileName.substring(0, fileName.length() - EXTENSION.length())
+                : fileName;
+        if (name.isEmpty())
+            throw new IllegalArgumentException("No name left for a class in " + fileName);
+
+        StringBuilder className = new StringBuilder(name.length() + 1);
+        if (!Character.isJavaIdentifierStart(name.charAt(0)))
+            className.append('_');
+        for (char c : name.toCharArray())
+            className.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        className.setCharAt(0, Character.toUpperCase(className.charAt(0)));
+        return className.toString();
+    }
+}
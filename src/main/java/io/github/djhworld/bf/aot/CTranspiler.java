@@ -0,0 +1,102 @@
+package io.github.djhworld.bf.aot;
+
+import io.github.djhworld.bf.Program;
+
+import static io.github.djhworld.bf.Program.*;
+
+/**
+ * Writes a compiled program out as a C source file running it against standard input and output, for comparing
+ * the engines with native code.
+ * <p>
+ * Cells are unsigned chars, which wrap like the 8-bit engines. Nothing checks that the data pointer stays on the
+ * tape.
+ */
+public class CTranspiler {
+    private final int tapeSize;
+
+    /**
+     * @param tapeSize the number of cells of the tape
+     */
+    public CTranspiler(int tapeSize) {
+        if (tapeSize < 1)
+            throw new IllegalArgumentException("tapeSize must be at least 1");
+        this.tapeSize = tapeSize;
+    }
+
+    public String transpile(Program program) {
+        StringBuilder source = new StringBuilder()
+                .append("/* Generated from a brainfuck program, do not edit */\n")
+                .append("#include <stdio.h>\n\n")
+                .append("static unsigned char tape[").append(tapeSize).append("];\n\n")
+                .append("static void bf_print(unsigned char value, int times) {\n")
+                .append("    while (times-- > 0)\n")
+                .append("        putchar(value);\n")
+                .append("}\n\n")
+                .append("static unsigned char bf_read(unsigned char current, int times) {\n")
+                .append("    fflush(stdout);\n")
+                .append("    while (times-- > 0) {\n")
+                .append("        int read = getchar();\n")
+                .append("        if (read != EOF)\n")
+                .append("            current = (unsigned char) read;\n")
+                .append("    }\n")
+                .append("    return current;\n")
+                .append("}\n\n")
+                .append("int main(void) {\n")
+                .append("    unsigned char *p = tape;\n");
+
+        int depth = 1;
+        for (int i = 0; i < program.size(); i++) {
+            int argument = program.arguments[i];
+            String cell = "p[" + program.offsets[i] + "]";
+
+            switch (program.opcodes[i]) {
+                case INC:
+                    line(source, depth, cell + " += " + argument + ";");
+                    break;
+                case DEC:
+                    line(source, depth, cell + " -= " + argument + ";");
+                    break;
+                case INC_DP:
+                    line(source, depth, "p += " + argument + ";");
+                    break;
+                case DEC_DP:
+                    line(source, depth, "p -= " + argument + ";");
+                    break;
+                case PRINT:
+                    line(source, depth, "bf_print(" + cell + ", " + argument + ");");
+                    break;
+                case READ:
+                    line(source, depth, cell + " = bf_read(" + cell + ", " + argument + ");");
+                    break;
+                case JUMP_IF_ZERO:
+                    line(source, depth++, "while (*p) {");
+                    break;
+                case JUMP_IF_NOT_ZERO:
+                    line(source, --depth, "}");
+                    break;
+                case SET_ZERO:
+                    line(source, depth, cell + " = 0;");
+                    break;
+                case SCAN_LEFT:
+                    line(source, depth, "while (*p) p -= " + argument + ";");
+                    break;
+                case SCAN_RIGHT:
+                    line(source, depth, "while (*p) p += " + argument + ";");
+                    break;
+                case MUL_ADD:
+                    line(source, depth, "if (*p) " + cell + " += *p * " + argument + ";");
+                    break;
+            }
+        }
+
+        line(source, 1, "fflush(stdout);");
+        line(source, 1, "return 0;");
+        return source.append("}\n").toString();
+    }
+
+    private static void line(StringBuilder source, int depth, String line) {
+        for (int i = 0; i < depth; i++)
+            source.append("    ");
+        source.append(line).append('\n');
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.djhworld.bf.aot;
+
+import io.github.djhworld.bf.Program;
+
+import static io.github.djhworld.bf.Program.*;
+
+/**
+ * Writes a compiled program out as the source of a standalone Java class, with a main method that runs it against
+ * standard input and output. The class needs nothing but the JDK.
+ * <p>
+ * javac refuses methods over 64KB of bytecode, so like {@link io.github.djhworld.bf.jit.JitCompiler} ranges of
+ * more than {@link #MAX_METHOD_OPERATIONS} operations are split at loop boundaries into static methods that take
+ * and return the data pointer.
+ */
+public class JavaTranspiler {
+    static final int MAX_METHOD_OPERATIONS = 500;
+
+    private final int tapeSize;
+
+    /**
+     * @param tapeSize the number of cells of the tape main runs the program on
+     */
+    public JavaTranspiler(int tapeSize) {
+        if (tapeSize < 1)
+            throw new IllegalArgumentException("tapeSize must be at least 1");
+        this.tapeSize = tapeSize;
+    }
+
+    /**
+     * @param className the fully qualified name of the class, a package declaration is added for its package
+     */
+    public String transpile(String className, Program program) {
+        return new Writer(className, program).write();
+    }
+
+    private class Writer {
+        private final String className;
+        private final int[] opcodes;
+        private final int[] arguments;
+        private final int[] offsets;
+        private final StringBuilder methods = new StringBuilder();
+        private int methodCount;
+
+        Writer(String className, Program program) {
+            this.className = className;
+            this.opcodes = program.opcodes;
+            this.arguments = program.arguments;
+            this.offsets = program.offsets;
+        }
+
+        String write() {
+            int dot = className.lastIndexOf('.');
+            StringBuilder source = new StringBuilder();
+            if (dot != -1)
+                source.append("package ").append(className, 0, dot).append(";\n\n");
+
+            String body = newMethod(0, opcodes.length);
+            source.append("import java.io.BufferedInputStream;\n")
+                    .append("import java.io.BufferedOutputStream;\n")
+                    .append("import java.io.IOException;\n")
+                    .append("import java.io.InputStream;\n")
+                    .append("import java.io.OutputStream;\n\n")
+                    .append("/**\n * Generated from a brainfuck program, do not edit\n */\n")
+                    .append("public final class ").append(className.substring(dot + 1)).append(" {\n")
+                    .append("    private static final InputStream IN = new BufferedInputStream(System.in);\n")
+                    .append("    private static final OutputStream OUT = new BufferedOutputStream(System.out);\n\n")
+                    .append("    public static void main(String[] args) throws IOException {\n")
+                    .append("        try {\n")
+                    .append("            run(new byte[").append(tapeSize).append("], 0);\n")
+                    .append("        } finally {\n")
+                    .append("            OUT.flush();\n")
+                    .append("        }\n")
+                    .append("    }\n\n")
+                    .append("    /**\n     * @return the data pointer once the program has finished\n     */\n")
+                    .append("    public static int run(byte[] m, int p) throws IOException {\n")
+                    .append("        return ").append(body).append("(m, p);\n")
+                    .append("    }\n\n")
+                    .append("    private static void print(byte value, int times) throws IOException {\n")
+                    .append("        for (int i = 0; i < times; i++)\n")
+                    .append("            OUT.write(value);\n")
+                    .append("    }\n\n")
+                    .append("    private static byte read(byte current, int times) throws IOException {\n")
+                    .append("        OUT.flush();\n")
+                    .append("        for (int i = 0; i < times; i++) {\n")
+                    .append("            int read = IN.read();\n")
+                    .append("            if (read != -1)\n")
+                    .append("                current = (byte) read;\n")
+                    .append("        }\n")
+                    .append("        return current;\n")
+                    .append("    }\n")
+                    .append(methods)
+                    .append("}\n");
+            return source.toString();
+        }
+
+        private String newMethod(int from, int to) {
+            String name = "m" + methodCount++;
+            StringBuilder code = new StringBuilder();
+            writeRange(code, from, to, 2);
+            methods.append("\n    private static int ").append(name).append("(byte[] m, int p) throws IOException {\n")
+                    .append(code)
+                    .append("        return p;\n")
+                    .append("    }\n");
+            return name;
+        }
+
+        private void writeRange(StringBuilder code, int from, int to, int depth) {
+            if (to - from <= MAX_METHOD_OPERATIONS) {
+                writeInline(code, from, to, depth);
+                return;
+            }
+
+            int middle = -1;
+            int target = from + (to - from) / 2;
+            for (int i = endOf(from); i < to; i = endOf(i)) {
+                if (middle == -1 || Math.abs(i - target) < Math.abs(middle - target))
+                    middle = i;
+            }
+
+            if (middle == -1) {
+                // a single loop, only its body has to move out
+                line(code, depth, "while (m[p] != 0)");
+                line(code, depth + 1, "p = " + newMethod(from + 1, endOf(from) - 1) + "(m, p);");
+            } else {
+                line(code, depth, "p = " + newMethod(from, middle) + "(m, p);");
+                line(code, depth, "p = " + newMethod(middle, to) + "(m, p);");
+            }
+        }
+
+        private void writeInline(StringBuilder code, int from, int to, int depth) {
+            int i = from;
+            while (i < to) {
+                if (opcodes[i] == JUMP_IF_ZERO) {
+                    line(code, depth, "while (m[p] != 0) {");
+                    writeInline(code, i + 1, arguments[i], depth + 1);
+                    line(code, depth, "}");
+                    i = arguments[i] + 1;
+                } else {
+                    line(code, depth, statement(i));
+                    i++;
+                }
+            }
+        }
+
+        private String statement(int position) {
+            int argument = arguments[position];
+            String cell = "m[" + address(offsets[position]) + "]";
+
+            switch (opcodes[position]) {
+                case INC:
+                    return cell + " += " + argument + ";";
+                case DEC:
+                    return cell + " -= " + argument + ";";
+                case INC_DP:
+                    return "p += " + argument + ";";
+                case DEC_DP:
+                    return "p -= " + argument + ";";
+                case PRINT:
+                    return "print(" + cell + ", " + argument + ");";
+                case READ:
+                    return cell + " = read(" + cell + ", " + argument + ");";
+                case SET_ZERO:
+                    return cell + " = 0;";
+                case SCAN_LEFT:
+                    return "while (m[p] != 0) p -= " + argument + ";";
+                case SCAN_RIGHT:
+                    return "while (m[p] != 0) p += " + argument + ";";
+                case MUL_ADD:
+                    return "if (m[p] != 0) " + cell + " += m[p] * " + argument + ";";
+                default:
+                    throw new IllegalArgumentException("Unbalanced loop at operation " + position);
+            }
+        }
+
+        private int endOf(int position) {
+            return opcodes[position] == JUMP_IF_ZERO ? arguments[position] + 1 : position + 1;
+        }
+    }
+
+    static String address(int offset) {
+        if (offset == 0)
+            return "p";
+        // negating Integer.MIN_VALUE leaves it negative, so negative offsets keep their own sign
+        return offset > 0 ? "p + " + offset : "p + (" + offset + ")";
+    }
+
+    private static void line(StringBuilder code, int depth, String line) {
+        for (int i = 0; i < depth; i++)
+            code.append("    ");
+        code.append(line).append('\n');
+    }
+}
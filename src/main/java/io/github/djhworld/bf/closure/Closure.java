@@ -0,0 +1,18 @@
+package io.github.djhworld.bf.closure;
+
+import io.github.djhworld.bf.vm.Console;
+
+import java.io.IOException;
+
+/**
+ * A piece of a program built by {@link ClosureCompiler}, runs against the tape from the given data pointer.
+ * <p>
+ * An abstract class rather than an interface, calls through the shared call sites in loops and sequences then
+ * go through the vtable instead of the slower interface lookup.
+ */
+public abstract class Closure {
+    /**
+     * @return the data pointer once the piece has run
+     */
+    public abstract int execute(byte[] memory, int dataPointer, Console console) throws IOException;
+}
@@ -0,0 +1,343 @@
+package io.github.djhworld.bf.closure;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Scans;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static io.github.djhworld.bf.Program.*;
+
+/**
+ * Turns a compiled program into a tree of {@link Closure} objects, one per operation with loops holding their
+ * body, so running it is a chain of calls rather than a switch on every operation. Each closure keeps its
+ * argument and offset in final fields, which HotSpot treats as constants once it inlines the call.
+ * <p>
+ * Runs of INC and DEC become one closure walking a pair of arrays, as do MUL_ADDs followed by the SET_ZERO of
+ * their counter. No classes are generated, so this works where defining classes at runtime is not allowed.
+ */
+public class ClosureCompiler {
+    public Closure compile(List<Operation> operations) {
+        return compile(Program.of(operations));
+    }
+
+    public Closure compile(Program program) {
+        final int[] opcodes = program.opcodes;
+        final int[] arguments = program.arguments;
+        final int[] offsets = program.offsets;
+        // the bodies of the loops we are in, innermost first
+        Deque<List<Closure>> bodies = new ArrayDeque<>();
+        List<Closure> closures = new ArrayList<>();
+
+        int ip = 0;
+        while (ip < opcodes.length) {
+            int end = ip + 1;
+            switch (opcodes[ip]) {
+                case INC:
+                case DEC:
+                    while (end < opcodes.length && (opcodes[end] == INC || opcodes[end] == DEC))
+                        end++;
+                    int move = 0;
+                    if (end < opcodes.length && (opcodes[end] == INC_DP || opcodes[end] == DEC_DP)) {
+                        move = opcodes[end] == INC_DP ? arguments[end] : -arguments[end];
+                        end++;
+                    }
+                    closures.add(adds(program, ip, end - (move != 0 ? 1 : 0), move));
+                    break;
+                case INC_DP:
+                    closures.add(new Move(arguments[ip]));
+                    break;
+                case DEC_DP:
+                    closures.add(new Move(-arguments[ip]));
+                    break;
+                case PRINT:
+                    closures.add(new Print(offsets[ip], arguments[ip]));
+                    break;
+                case READ:
+                    closures.add(new Read(offsets[ip], arguments[ip]));
+                    break;
+                case JUMP_IF_ZERO:
+                    bodies.push(closures);
+                    closures = new ArrayList<>();
+                    break;
+                case JUMP_IF_NOT_ZERO:
+                    if (bodies.isEmpty())
+                        throw new IllegalArgumentException("Unbalanced loop at operation " + ip);
+                    Closure[] body = closures.toArray(new Closure[0]);
+                    closures = bodies.pop();
+                    closures.add(body.length == 1 ? new Loop(body[0]) : new SequenceLoop(body));
+                    break;
+                case SET_ZERO:
+                    closures.add(new SetZero(offsets[ip]));
+                    break;
+                case SCAN_LEFT:
+                    closures.add(new ScanLeft(arguments[ip]));
+                    break;
+                case SCAN_RIGHT:
+                    closures.add(new ScanRight(arguments[ip]));
+                    break;
+                case MUL_ADD:
+                    while (end < opcodes.length && opcodes[end] == MUL_ADD)
+                        end++;
+                    if (end < opcodes.length && opcodes[end] == SET_ZERO && offsets[end] == 0) {
+                        closures.add(new Multiply(slice(offsets, ip, end), slice(arguments, ip, end)));
+                        end++;
+                    } else {
+                        for (int i = ip; i < end; i++)
+                            closures.add(new MulAdd(offsets[i], arguments[i]));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown opcode " + opcodes[ip] + " at operation " + ip);
+            }
+            ip = end;
+        }
+
+        if (!bodies.isEmpty())
+            throw new IllegalArgumentException("Unbalanced loop, missing end");
+
+        return sequence(closures);
+    }
+
+    /**
+     * @param move the pointer move right after the INC and DEC operations, or 0
+     */
+    private static Closure adds(Program program, int from, int to, int move) {
+        if (to - from == 1 && move == 0) {
+            int argument = program.arguments[from];
+            return new Add(program.offsets[from], program.opcodes[from] == INC ? argument : -argument);
+        }
+
+        int[] deltas = new int[to - from];
+        for (int i = from; i < to; i++)
+            deltas[i - from] = program.opcodes[i] == INC ? program.arguments[i] : -program.arguments[i];
+        return new Adds(slice(program.offsets, from, to), deltas, move);
+    }
+
+    private static int[] slice(int[] values, int from, int to) {
+        int[] slice = new int[to - from];
+        System.arraycopy(values, from, slice, 0, slice.length);
+        return slice;
+    }
+
+    private static Closure sequence(List<Closure> closures) {
+        return closures.size() == 1 ? closures.get(0) : new Sequence(closures.toArray(new Closure[0]));
+    }
+
+    private static final class Sequence extends Closure {
+        private final Closure[] closures;
+
+        Sequence(Closure[] closures) {
+            this.closures = closures;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) throws IOException {
+            for (Closure closure : closures)
+                dataPointer = closure.execute(memory, dataPointer, console);
+            return dataPointer;
+        }
+    }
+
+    private static final class Loop extends Closure {
+        private final Closure body;
+
+        Loop(Closure body) {
+            this.body = body;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) throws IOException {
+            while (memory[dataPointer] != 0)
+                dataPointer = body.execute(memory, dataPointer, console);
+            return dataPointer;
+        }
+    }
+
+    private static final class SequenceLoop extends Closure {
+        private final Closure[] body;
+
+        SequenceLoop(Closure[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) throws IOException {
+            while (memory[dataPointer] != 0) {
+                for (Closure closure : body)
+                    dataPointer = closure.execute(memory, dataPointer, console);
+            }
+            return dataPointer;
+        }
+    }
+
+    private static final class Add extends Closure {
+        private final int offset;
+        private final int delta;
+
+        Add(int offset, int delta) {
+            this.offset = offset;
+            this.delta = delta;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) {
+            memory[dataPointer + offset] += delta;
+            return dataPointer;
+        }
+    }
+
+    /**
+     * A run of INC and DEC and the pointer move that usually ends it
+     */
+    private static final class Adds extends Closure {
+        private final int[] offsets;
+        private final int[] deltas;
+        private final int move;
+
+        Adds(int[] offsets, int[] deltas, int move) {
+            this.offsets = offsets;
+            this.deltas = deltas;
+            this.move = move;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) {
+            for (int i = 0; i < offsets.length; i++)
+                memory[dataPointer + offsets[i]] += deltas[i];
+            return dataPointer + move;
+        }
+    }
+
+    private static final class Move extends Closure {
+        private final int by;
+
+        Move(int by) {
+            this.by = by;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) {
+            return dataPointer + by;
+        }
+    }
+
+    private static final class Print extends Closure {
+        private final int offset;
+        private final int times;
+
+        Print(int offset, int times) {
+            this.offset = offset;
+            this.times = times;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) throws IOException {
+            console.print(memory[dataPointer + offset], times);
+            return dataPointer;
+        }
+    }
+
+    private static final class Read extends Closure {
+        private final int offset;
+        private final int times;
+
+        Read(int offset, int times) {
+            this.offset = offset;
+            this.times = times;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) throws IOException {
+            memory[dataPointer + offset] = console.read(memory[dataPointer + offset], times);
+            return dataPointer;
+        }
+    }
+
+    private static final class SetZero extends Closure {
+        private final int offset;
+
+        SetZero(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) {
+            memory[dataPointer + offset] = 0;
+            return dataPointer;
+        }
+    }
+
+    private static final class ScanLeft extends Closure {
+        private final int step;
+
+        ScanLeft(int step) {
+            this.step = step;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) {
+            return Scans.left(memory, dataPointer, step);
+        }
+    }
+
+    private static final class ScanRight extends Closure {
+        private final int step;
+
+        ScanRight(int step) {
+            this.step = step;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) {
+            return Scans.right(memory, dataPointer, step);
+        }
+    }
+
+    private static final class MulAdd extends Closure {
+        private final int offset;
+        private final int factor;
+
+        MulAdd(int offset, int factor) {
+            this.offset = offset;
+            this.factor = factor;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) {
+            byte counter = memory[dataPointer];
+            if (counter != 0)
+                memory[dataPointer + offset] += counter * factor;
+            return dataPointer;
+        }
+    }
+
+    /**
+     * MUL_ADDs and the SET_ZERO of their counter, the whole of a rewritten multiplication loop
+     */
+    private static final class Multiply extends Closure {
+        private final int[] offsets;
+        private final int[] factors;
+
+        Multiply(int[] offsets, int[] factors) {
+            this.offsets = offsets;
+            this.factors = factors;
+        }
+
+        @Override
+        public int execute(byte[] memory, int dataPointer, Console console) {
+            byte counter = memory[dataPointer];
+            if (counter != 0) {
+                for (int i = 0; i < offsets.length; i++)
+                    memory[dataPointer + offsets[i]] += counter * factors[i];
+                memory[dataPointer] = 0;
+            }
+            return dataPointer;
+        }
+    }
+}
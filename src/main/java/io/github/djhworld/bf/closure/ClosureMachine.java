@@ -0,0 +1,54 @@
+package io.github.djhworld.bf.closure;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Engine;
+import io.github.djhworld.bf.vm.PrintStreamOutput;
+import io.github.djhworld.bf.vm.StreamInput;
+import io.github.djhworld.bf.vm.TapeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Engine that turns each program into closures with {@link ClosureCompiler} before running it
+ */
+public class ClosureMachine implements Engine {
+    private final ClosureCompiler compiler;
+    private final byte[] memory;
+    private final Console console;
+    private int dataPointer;
+
+    public ClosureMachine(InputStream in, PrintStream out, byte[] memory) {
+        this(new ClosureCompiler(), new Console(new StreamInput(in), new PrintStreamOutput(out)), memory);
+    }
+
+    public ClosureMachine(ClosureCompiler compiler, Console console, byte[] memory) {
+        this.compiler = compiler;
+        this.console = console;
+        this.memory = memory;
+        this.dataPointer = 0;
+    }
+
+    @Override
+    public void execute(List<Operation> operations) throws IllegalArgumentException, IOException {
+        execute(Program.of(operations));
+    }
+
+    public void execute(Program program) throws IllegalArgumentException, IOException {
+        try {
+            dataPointer = compiler.compile(program).execute(memory, dataPointer, console);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw TapeException.outside(e, memory.length);
+        } finally {
+            console.flush();
+        }
+    }
+
+    int getDataPointer() {
+        return dataPointer;
+    }
+}
@@ -0,0 +1,255 @@
+package io.github.djhworld.bf.compile;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.ProgramCodec;
+import io.github.djhworld.bf.ir.PassManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Compiler that remembers the programs it has compiled, keyed by a SHA-256 hash of the source, the compiler
+ * options and the {@link #COMPILER_VERSION}.
+ * <p>
+ * The most recently used programs are kept in memory, along with their {@link Program} form once
+ * {@link #compileToProgram(String)} has asked for it. When a cache directory is given every compiled program is
+ * also written there in the {@link ProgramCodec} format, and later read back through a memory mapping, so a new
+ * process running the same source skips parsing and optimisation altogether. Entries that cannot be read are
+ * compiled again, and failing to write an entry does not fail the compilation.
+ * <p>
+ * Every overload of compile uses the cache. The source is hashed as it streams in, but a copy of it is kept until
+ * the lookup is done, as a miss still has to compile it.
+ */
+public class CachingCompiler extends Compiler {
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    /**
+     * Part of every key, bump it whenever the compiler or a pass changes the operations it produces so entries
+     * written by an older release are compiled again rather than reused
+     */
+    public static final int COMPILER_VERSION = 1;
+
+    private static final String EXTENSION = ".bfc";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Map<String, Entry> entries;
+    private final Path directory;
+
+    public CachingCompiler(int maxEntries) {
+        this(true, maxEntries, null);
+    }
+
+    /**
+     * @param maxEntries the number of programs kept in memory
+     * @param directory  where compiled programs are kept between runs, or null to only cache in memory
+     */
+    public CachingCompiler(boolean wrappingCells, int maxEntries, Path directory) {
+        this(wrappingCells, PassManager.defaults(wrappingCells), null, maxEntries, directory);
+    }
+
+    /**
+     * Caches programs after partial evaluation, so the prefix of a program is only ever run once
+     */
+    public CachingCompiler(PartialEvaluator evaluator, int maxEntries, Path directory) {
+        this(true, PassManager.defaults(true), evaluator, maxEntries, directory);
+    }
+
+    /**
+     * Programs compiled with different passes enabled are cached apart, passes are told apart by name only
+     */
+    public CachingCompiler(boolean wrappingCells, PassManager passes, PartialEvaluator evaluator, int maxEntries,
+                           Path directory) {
+        super(wrappingCells, passes, evaluator);
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.directory = directory;
+    }
+
+    /**
+     * Hashes the source as it is read, keeping a single copy of it in case it has to be compiled. Every other
+     * overload reads through here, so they all share the same entries.
+     *
+     * @return an unmodifiable list, shared with everyone else compiling the same source
+     */
+    @Override
+    public List<Operation> compile(Reader input) throws CompileException, IOException {
+        return entry(input).operations;
+    }
+
+    /**
+     * @return a program packed once per entry, shared with everyone else compiling the same source
+     */
+    @Override
+    public Program compileToProgram(String input) throws CompileException {
+        if (input == null)
+            return super.compileToProgram(input);
+
+        try {
+            return entry(new StringReader(input)).program();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private Entry entry(Reader input) throws CompileException, IOException {
+        MessageDigest digest = digest();
+        char[] chars = new char[BUFFER_SIZE];
+        byte[] source = new byte[BUFFER_SIZE];
+        int length = 0;
+
+        int read;
+        while ((read = input.read(chars)) != -1) {
+            if (length + read > source.length)
+                source = Arrays.copyOf(source, Math.max(source.length * 2, length + read));
+            // as ISO-8859-1 would encode them, so a char outside it cannot pass for a command
+            for (int i = 0; i < read; i++)
+                source[length + i] = chars[i] > 0xFF ? (byte) '?' : (byte) chars[i];
+            digest.update(source, length, read);
+            length += read;
+        }
+
+        String key = hex(digest.digest());
+        Entry entry = lookup(key);
+        if (entry == null) {
+            Reader copy = new InputStreamReader(new ByteArrayInputStream(source, 0, length), StandardCharsets.ISO_8859_1);
+            entry = new Entry(Collections.unmodifiableList(super.compile(copy)));
+            store(key, entry);
+        }
+        return entry;
+    }
+
+    private Entry lookup(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+
+        if (entry == null && directory != null) {
+            List<Operation> operations = read(directory.resolve(key + EXTENSION));
+            if (operations != null) {
+                entry = new Entry(operations);
+                synchronized (this) {
+                    entries.put(key, entry);
+                }
+            }
+        }
+
+        return entry;
+    }
+
+    private void store(String key, Entry entry) {
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+
+        if (directory != null)
+            write(directory.resolve(key + EXTENSION), entry.operations);
+    }
+
+    private List<Operation> read(Path file) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            return ProgramCodec.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | IllegalArgumentException e) {
+            // missing, unreadable or corrupt, a corrupt entry is replaced once the program is compiled again
+            return null;
+        }
+    }
+
+    private void write(Path file, List<Operation> operations) {
+        try {
+            Files.createDirectories(directory);
+            // written next to the entry and moved into place so readers never see half an entry
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temporary, ProgramCodec.encode(operations));
+                Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // the program is still cached in memory, it will be written again by the next process
+        }
+    }
+
+    /**
+     * @return a digest primed with everything but the source that changes what the compiler produces
+     */
+    private MessageDigest digest() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        digest.update((byte) ProgramCodec.VERSION);
+        digest.update(ByteBuffer.allocate(4).putInt(COMPILER_VERSION).array());
+        digest.update((byte) (isWrappingCells() ? 1 : 0));
+        digest.update(String.join(",", getPasses().getEnabledPasses()).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update((byte) (getEvaluator() != null ? 1 : 0));
+        if (getEvaluator() != null) {
+            digest.update(ByteBuffer.allocate(16)
+                    .putLong(getEvaluator().getMaxOperations())
+                    .putInt(getEvaluator().getMaxOutput())
+                    .putInt(getEvaluator().getTapeSize())
+                    .array());
+        }
+        return digest;
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder key = new StringBuilder(hash.length * 2);
+        for (byte b : hash)
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return key.toString();
+    }
+
+    private static final class Entry {
+        final List<Operation> operations;
+        private Program program;
+
+        Entry(List<Operation> operations) {
+            this.operations = operations;
+        }
+
+        /**
+         * Packed the first time it is asked for, as callers only after the operations never need it
+         */
+        synchronized Program program() {
+            if (program == null)
+                program = Program.of(operations);
+            return program;
+        }
+    }
+}
@@ -1,7 +1,34 @@
 package io.github.djhworld.bf.compile;
 
 public class CompileException extends Exception {
+    private final int line;
+    private final int column;
+
     public CompileException(String message) {
-        super(message);
+        this(message, -1, -1);
+    }
+
+    /**
+     * @param line   line of the offending token, counting from 1
+     * @param column column of the offending token, counting from 1
+     */
+    public CompileException(String message, int line, int column) {
+        super(line == -1 ? message : message + " at line " + line + ", column " + column);
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * @return the line of the offending token, or -1 when the error is not about a single token
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return the column of the offending token, or -1 when the error is not about a single token
+     */
+    public int getColumn() {
+        return column;
     }
 }
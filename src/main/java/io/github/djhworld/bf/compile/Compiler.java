@@ -1,156 +1,228 @@
 package io.github.djhworld.bf.compile;
 
+import io.github.djhworld.bf.Instruction;
 import io.github.djhworld.bf.Operation;
-
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.ir.Node;
+import io.github.djhworld.bf.ir.Nodes;
+import io.github.djhworld.bf.ir.PassManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static io.github.djhworld.bf.Instruction.*;
 import static java.lang.Integer.MIN_VALUE;
 
 public class Compiler {
-    public List<Operation> compile(String input) throws CompileException {
-        if(input == null || "".equals(input))
-            throw new CompileException("No input provided");
+    private static final int BUFFER_SIZE = 8192;
+    private static final int NO_RUN = -1;
 
-        char[] tokens = input.toCharArray();
+    private final boolean wrappingCells;
+    private final PassManager passes;
+    private final PartialEvaluator evaluator;
 
-        List<Operation> operations = compileAndFoldTokens(tokens);
-        optimiseJumps(operations);
-        return operations;
+    public Compiler() {
+        this(true);
     }
 
-    private List<Operation> compileAndFoldTokens(char[] tokens) {
-        List<Operation> operations = new ArrayList<>();
-        int instructionPointer = 0;
-
-        while (instructionPointer < tokens.length) {
-            int count = 1;
-            switch (tokens[instructionPointer]) {
-                case '<':
-                    count = foldToken('<', tokens, instructionPointer);
-                    operations.add(new Operation(DEC_DP, count));
-                    break;
-                case '>':
-                    count = foldToken('>', tokens, instructionPointer);
-                    operations.add(new Operation(INC_DP, count));
-                    break;
-                case '-':
-                    count = foldToken('-', tokens, instructionPointer);
-                    operations.add(new Operation(DEC, count));
-                    break;
-                case '+':
-                    count = foldToken('+', tokens, instructionPointer);
-                    operations.add(new Operation(INC, count));
-                    break;
-                case '.':
-                    count = foldToken('.', tokens, instructionPointer);
-                    operations.add(new Operation(PRINT, count));
-                    break;
-                case ',':
-                    count = foldToken(',', tokens, instructionPointer);
-                    operations.add(new Operation(READ, count));
-                    break;
-                case '[':
-                    operations.add(new Operation(JUMP_IF_ZERO, MIN_VALUE));
-                    break;
-                case ']':
-                    operations.add(new Operation(JUMP_IF_NOT_ZERO, MIN_VALUE));
-                    break;
-            }
-            instructionPointer += count;
-        }
+    /**
+     * @param wrappingCells false when cells saturate or raise an error on overflow, which limits the idioms
+     *                      rewritten to loops that count down to zero one step at a time
+     */
+    public Compiler(boolean wrappingCells) {
+        this(wrappingCells, PassManager.defaults(wrappingCells), null);
+    }
 
-        return operations;
+    /**
+     * Compiles for 8-bit wrapping cells, running the part of each program before its first input ahead of time
+     */
+    public Compiler(PartialEvaluator evaluator) {
+        this(true, PassManager.defaults(true), evaluator);
     }
 
     /**
-     * For start loop ([) , find the position of the end of the loop and set it as the operation argument
-     * For end loop (]), find the position of the start of the loop and set it as the operation argument
-     *
-     * @param operations
-     * @throws CompileException
+     * @param passes    the optimisations to run, which must suit the cells, see {@link PassManager#defaults}
+     * @param evaluator runs the part of each program before its first input ahead of time, or null
      */
-    private void optimiseJumps(List<Operation> operations) throws CompileException {
-        int instructionPointer = 0;
-        while (instructionPointer < operations.size()) {
-            Operation operation = operations.get(instructionPointer);
-
-            switch (operation.instruction) {
-                case JUMP_IF_ZERO:
-                    if (operation.argument == MIN_VALUE) {
-                        int endLoopPos = findEndOfLoop(instructionPointer, operations);
-                        operations.set(instructionPointer, new Operation(operation.instruction, endLoopPos));
-                    }
-                    break;
-                case JUMP_IF_NOT_ZERO:
-                    if (operation.argument == MIN_VALUE) {
-                        int startLoopPos = findStartOfLoop(instructionPointer, operations);
-                        operations.set(instructionPointer, new Operation(operation.instruction, startLoopPos));
-                    }
-                    break;
-            }
-            instructionPointer++;
-        }
+    public Compiler(boolean wrappingCells, PassManager passes, PartialEvaluator evaluator) {
+        if (evaluator != null && !wrappingCells)
+            throw new IllegalArgumentException("Partial evaluation needs wrapping cells");
+
+        this.wrappingCells = wrappingCells;
+        this.passes = passes;
+        this.evaluator = evaluator;
     }
 
-    private int foldToken(char token, char[] tokens, int currentPos) {
-        int count = 1;
+    boolean isWrappingCells() {
+        return wrappingCells;
+    }
 
-        if (currentPos == tokens.length-1)
-            return count;
+    PassManager getPasses() {
+        return passes;
+    }
+
+    PartialEvaluator getEvaluator() {
+        return evaluator;
+    }
+
+    public List<Operation> compile(String input) throws CompileException {
+        if(input == null)
+            throw new CompileException("No input provided");
 
-        for (int i = currentPos + 1; i < tokens.length; i++) {
-            if (tokens[i] == token)
-                count++;
-            else
-                break;
+        try {
+            return compile(new StringReader(input));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
-        return count;
+    /**
+     * Compiles source read from the stream, bytes are taken as ISO-8859-1 so columns in errors count bytes
+     */
+    public List<Operation> compile(InputStream input) throws CompileException, IOException {
+        return compile(new InputStreamReader(input, StandardCharsets.ISO_8859_1));
     }
 
-    private int findEndOfLoop(int currentPosition, List<Operation> operations) throws CompileException {
-        int depth = 1;
+    /**
+     * Compiles source read from the channel, bytes are taken as ISO-8859-1 so columns in errors count bytes
+     */
+    public List<Operation> compile(ReadableByteChannel input) throws CompileException, IOException {
+        return compile(Channels.newReader(input, StandardCharsets.ISO_8859_1.newDecoder(), -1));
+    }
 
-        while (depth != 0) {
-            currentPosition++;
+    /**
+     * Compiles the source in a single pass over the reader, the source is never held in memory as a whole.
+     * The reader is not closed.
+     * <p>
+     * The folded tokens are turned into a tree of blocks and loops, see {@link Node}, which
+     * goes through the passes before being flattened into operations with their jumps resolved.
+     */
+    public List<Operation> compile(Reader input) throws CompileException, IOException {
+        List<Operation> operations = Nodes.lower(passes.run(Nodes.of(compileAndFoldTokens(input))));
+        return evaluator == null ? operations : evaluator.evaluate(operations);
+    }
 
-            if (currentPosition == operations.size())
-                throw new CompileException("Invalid syntax, no ] found for start-loop");
+    /**
+     * Compiles the input into the packed array form executed by {@link io.github.djhworld.bf.vm.Machine#execute(Program)}
+     */
+    public Program compileToProgram(String input) throws CompileException {
+        return Program.of(compile(input));
+    }
 
-            switch (operations.get(currentPosition).instruction) {
-                case JUMP_IF_ZERO:
-                    depth++;
-                    break;
-                case JUMP_IF_NOT_ZERO:
-                    depth--;
-                    break;
+    /**
+     * Reads the source a block at a time, folding runs of the same token into one operation and checking that
+     * brackets are balanced. Brackets are added as placeholders carrying their line and column, their targets are
+     * only known once the passes have run.
+     *
+     * @param input
+     * @return the folded operations
+     * @throws CompileException if no input is provided or a bracket is unmatched
+     */
+    private List<Operation> compileAndFoldTokens(Reader input) throws CompileException, IOException {
+        List<Operation> operations = new ArrayList<>();
+        char[] buffer = new char[BUFFER_SIZE];
+        // line and column of every [ still waiting for its ]
+        int[] openLines = new int[16];
+        int[] openColumns = new int[16];
+        int depth = 0;
+        // the token being folded, NO_RUN lies outside the range of a char so no token can match it
+        int pending = NO_RUN;
+        int count = 0;
+        int line = 1;
+        int column = 0;
+        boolean empty = true;
+
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            empty &= read == 0;
+
+            for (int i = 0; i < read; i++) {
+                char token = buffer[i];
+                column++;
+
+                if (token == pending) {
+                    count++;
+                    continue;
+                }
+
+                if (count > 0) {
+                    operations.add(new Operation(foldable(pending), count));
+                    pending = NO_RUN;
+                    count = 0;
+                }
+
+                switch (token) {
+                    case '\n':
+                        line++;
+                        column = 0;
+                        break;
+                    case '<':
+                    case '>':
+                    case '-':
+                    case '+':
+                    case '.':
+                    case ',':
+                        pending = token;
+                        count = 1;
+                        break;
+                    case '[':
+                        if (depth == openLines.length) {
+                            openLines = Arrays.copyOf(openLines, depth * 2);
+                            openColumns = Arrays.copyOf(openColumns, depth * 2);
+                        }
+                        openLines[depth] = line;
+                        openColumns[depth] = column;
+                        depth++;
+                        operations.add(new Operation(JUMP_IF_ZERO, MIN_VALUE, 0, line, column));
+                        break;
+                    case ']':
+                        if (depth == 0)
+                            throw new CompileException("Invalid syntax, no [ found for end-loop", line, column);
+                        depth--;
+                        operations.add(new Operation(JUMP_IF_NOT_ZERO, MIN_VALUE, 0, line, column));
+                        break;
+                }
             }
         }
 
-        return currentPosition;
-    }
+        if (empty)
+            throw new CompileException("No input provided");
 
-    private int findStartOfLoop(int currentPosition, List<Operation> operations) throws CompileException {
-        int depth = 1;
+        if (depth > 0)
+            throw new CompileException("Invalid syntax, no ] found for start-loop", openLines[depth - 1], openColumns[depth - 1]);
 
-        while (depth != 0) {
-            currentPosition--;
+        if (count > 0)
+            operations.add(new Operation(foldable(pending), count));
 
-            if (currentPosition == -1)
-                throw new CompileException("Invalid syntax, no [ found for end-loop");
+        return operations;
+    }
 
-            switch (operations.get(currentPosition).instruction) {
-                case JUMP_IF_NOT_ZERO:
-                    depth++;
-                    break;
-                case JUMP_IF_ZERO:
-                    depth--;
-                    break;
-            }
+    private Instruction foldable(int token) {
+        switch (token) {
+            case '<':
+                return DEC_DP;
+            case '>':
+                return INC_DP;
+            case '-':
+                return DEC;
+            case '+':
+                return INC;
+            case '.':
+                return PRINT;
+            case ',':
+                return READ;
+            default:
+                throw new IllegalStateException("Cannot fold " + token);
         }
-
-        return currentPosition;
     }
-}
\ No newline at end of file
+}
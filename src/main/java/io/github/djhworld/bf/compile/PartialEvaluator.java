@@ -0,0 +1,225 @@
+package io.github.djhworld.bf.compile;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.vm.Budget;
+import io.github.djhworld.bf.vm.BudgetExceededException;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Input;
+import io.github.djhworld.bf.vm.Machine;
+import io.github.djhworld.bf.vm.Output;
+import io.github.djhworld.bf.vm.Tape;
+import io.github.djhworld.bf.vm.TapeException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.github.djhworld.bf.Instruction.*;
+
+/**
+ * Runs the part of a program that comes before its first input at compile time, and replaces it with
+ * operations that print what it printed and set the tape to the state it left behind.
+ * <p>
+ * The program is split at the top level, into operations and whole loops outside of any other loop, and the
+ * units before the first one holding a READ are run on an 8-bit wrapping {@link Machine} with a fixed tape. If
+ * that runs past the budget, or prints more than the output limit, only the units that finished within them are
+ * replaced. A prefix that leaves the tape is left alone, so the error still happens when the program runs.
+ * <p>
+ * The cells the prefix leaves non-zero are set rather than added to, but the prefix itself was run on a fresh
+ * tape, so the result only does what the program does when it starts on a fresh tape at cell 0. It also assumes
+ * 8-bit wrapping cells, so it must only be run by engines with those.
+ */
+public class PartialEvaluator {
+    public static final long DEFAULT_MAX_OPERATIONS = 100_000_000;
+    public static final int DEFAULT_MAX_OUTPUT = 1 << 16;
+
+    private static final Input NO_INPUT = () -> {
+        throw new IllegalStateException("The prefix of a program must not read input");
+    };
+
+    private final long maxOperations;
+    private final int maxOutput;
+    private final int tapeSize;
+
+    public PartialEvaluator() {
+        this(DEFAULT_MAX_OPERATIONS, Tape.DEFAULT_SIZE);
+    }
+
+    public PartialEvaluator(long maxOperations, int tapeSize) {
+        this(maxOperations, DEFAULT_MAX_OUTPUT, tapeSize);
+    }
+
+    /**
+     * @param maxOperations the budget for running the prefix, counted as described by {@link Budget}
+     * @param maxOutput     the most bytes the prefix may print, as all of it ends up in the compiled program
+     * @param tapeSize      the size of the tape the program will run on
+     */
+    public PartialEvaluator(long maxOperations, int maxOutput, int tapeSize) {
+        if (maxOperations < 0)
+            throw new IllegalArgumentException("maxOperations must not be negative");
+        if (maxOutput < 0)
+            throw new IllegalArgumentException("maxOutput must not be negative");
+        if (tapeSize < 1)
+            throw new IllegalArgumentException("tapeSize must be at least 1");
+
+        this.maxOperations = maxOperations;
+        this.maxOutput = maxOutput;
+        this.tapeSize = tapeSize;
+    }
+
+    public long getMaxOperations() {
+        return maxOperations;
+    }
+
+    public int getMaxOutput() {
+        return maxOutput;
+    }
+
+    public int getTapeSize() {
+        return tapeSize;
+    }
+
+    /**
+     * @param operations a compiled program with its jumps resolved
+     * @return the program starting from the state its input free prefix leaves behind, or the same operations
+     * if nothing could be run ahead of time
+     */
+    public List<Operation> evaluate(List<Operation> operations) {
+        Program program = Program.of(operations);
+        int end = firstUnitReading(program);
+
+        while (end > 0) {
+            Tape tape = Tape.fixed(tapeSize);
+            CollectedOutput output = new CollectedOutput(maxOutput);
+            Machine machine = new Machine(new Console(NO_INPUT, output), tape);
+            machine.setBudget(Budget.UNLIMITED.withMaxOperations(maxOperations));
+
+            try {
+                machine.execute(slice(program, end));
+                return residual(operations, end, tape, output, machine.getDataPointer());
+            } catch (BudgetExceededException e) {
+                // the units before the one that ran out are known to finish within the budget
+                end = unitStart(program, e.getInstructionPointer());
+            } catch (OutputLimitException e) {
+                end = unitStart(program, machine.getInstructionPointer());
+            } catch (TapeException e) {
+                return operations;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return operations;
+    }
+
+    /**
+     * @return the start of the first top level operation or loop holding a READ, or the program's size
+     */
+    private static int firstUnitReading(Program program) {
+        for (int unit = 0; unit < program.size(); unit = unitEnd(program, unit)) {
+            for (int i = unit; i < unitEnd(program, unit); i++) {
+                if (program.opcodes[i] == Program.READ)
+                    return unit;
+            }
+        }
+        return program.size();
+    }
+
+    /**
+     * @return the start of the top level operation or loop the position is part of
+     */
+    private static int unitStart(Program program, int position) {
+        int unit = 0;
+        while (unitEnd(program, unit) <= position)
+            unit = unitEnd(program, unit);
+        return unit;
+    }
+
+    private static int unitEnd(Program program, int unit) {
+        return program.opcodes[unit] == Program.JUMP_IF_ZERO ? program.arguments[unit] + 1 : unit + 1;
+    }
+
+    private static Program slice(Program program, int end) {
+        return new Program(
+                Arrays.copyOf(program.opcodes, end),
+                Arrays.copyOf(program.arguments, end),
+                Arrays.copyOf(program.offsets, end));
+    }
+
+    private static List<Operation> residual(List<Operation> operations, int end, Tape tape, CollectedOutput output,
+                                            int dataPointer) {
+        List<Operation> residual = new ArrayList<>();
+
+        // cell 0 is the scratch cell for the output and set to its proper value afterwards
+        for (int i = 0; i < output.length; ) {
+            int run = i;
+            while (run < output.length && output.bytes[run] == output.bytes[i])
+                run++;
+
+            residual.add(new Operation(SET_ZERO, 0));
+            if (output.bytes[i] != 0)
+                residual.add(new Operation(INC, output.bytes[i] & 0xFF));
+            residual.add(new Operation(PRINT, run - i));
+            i = run;
+        }
+
+        // once the program has finished the tape is never looked at again
+        if (end < operations.size()) {
+            if (output.length > 0)
+                residual.add(new Operation(SET_ZERO, 0));
+
+            byte[] cells = tape.cells();
+            for (int i = 0; i < tape.highWater(); i++) {
+                if (cells[i] != 0) {
+                    residual.add(new Operation(SET_ZERO, 0, i));
+                    residual.add(new Operation(INC, cells[i] & 0xFF, i));
+                }
+            }
+            if (dataPointer > 0)
+                residual.add(new Operation(INC_DP, dataPointer));
+        }
+
+        int shift = residual.size() - end;
+        for (Operation operation : operations.subList(end, operations.size())) {
+            if (operation.instruction == JUMP_IF_ZERO || operation.instruction == JUMP_IF_NOT_ZERO)
+                residual.add(new Operation(operation.instruction, operation.argument + shift, 0, operation.line, operation.column));
+            else
+                residual.add(operation);
+        }
+
+        return residual;
+    }
+
+    private static class CollectedOutput implements Output {
+        private final int limit;
+        private byte[] bytes = new byte[256];
+        private int length;
+
+        CollectedOutput(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(byte value, int times) throws OutputLimitException {
+            if (times > limit - length)
+                throw new OutputLimitException();
+            if (length + times > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + times));
+            Arrays.fill(bytes, length, length + times, value);
+            length += times;
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+
+    private static class OutputLimitException extends IOException {
+        OutputLimitException() {
+            super("The prefix printed more than the output limit");
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.djhworld.bf.ir;
+
+import io.github.djhworld.bf.Operation;
+
+import java.util.List;
+
+/**
+ * Operations run one after another with no loop in between. Loops rewritten into a single operation, such as
+ * SET_ZERO or MUL_ADD, are part of blocks too.
+ */
+public final class Block implements Node {
+    public final List<Operation> operations;
+
+    public Block(List<Operation> operations) {
+        this.operations = operations;
+    }
+}
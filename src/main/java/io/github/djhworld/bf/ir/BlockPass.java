@@ -0,0 +1,21 @@
+package io.github.djhworld.bf.ir;
+
+import io.github.djhworld.bf.Operation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pass that looks at each block on its own
+ */
+public abstract class BlockPass implements Pass {
+    @Override
+    public List<Node> apply(List<Node> sequence) {
+        List<Node> result = new ArrayList<>(sequence.size());
+        for (Node node : sequence)
+            result.add(node instanceof Block ? new Block(applyToBlock(((Block) node).operations)) : node);
+        return result;
+    }
+
+    protected abstract List<Operation> applyToBlock(List<Operation> operations);
+}
@@ -0,0 +1,77 @@
+package io.github.djhworld.bf.ir;
+
+import io.github.djhworld.bf.Operation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static io.github.djhworld.bf.Instruction.DEC;
+import static io.github.djhworld.bf.Instruction.INC;
+
+/**
+ * Adds up the changes made to a cell within a block into one INC or DEC, as long as nothing looks at the cell or
+ * moves the data pointer in between, so +>-<- becomes a single DEC at offset 1. Changes that cancel out are
+ * dropped.
+ * <p>
+ * Only valid for wrapping cells, on other cells the intermediate values could overflow.
+ */
+public class ConstantFoldingPass extends BlockPass {
+    public static final String NAME = "constant-folding";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    protected List<Operation> applyToBlock(List<Operation> operations) {
+        List<Operation> folded = new ArrayList<>(operations.size());
+        // where in folded the last change to each cell is, while it can still be added to
+        Map<Integer, Integer> changes = new HashMap<>();
+
+        for (Operation operation : operations) {
+            switch (operation.instruction) {
+                case INC:
+                case DEC:
+                    int delta = operation.instruction == INC ? operation.argument : -operation.argument;
+                    Integer position = changes.get(operation.offset);
+                    if (position == null) {
+                        changes.put(operation.offset, folded.size());
+                        folded.add(operation);
+                    } else {
+                        Operation change = folded.get(position);
+                        int total = (change.instruction == INC ? change.argument : -change.argument) + delta;
+                        folded.set(position, total == 0 ? null : change(total, operation.offset));
+                        if (total == 0)
+                            changes.remove(operation.offset);
+                    }
+                    break;
+                case PRINT:
+                case READ:
+                case SET_ZERO:
+                    changes.remove(operation.offset);
+                    folded.add(operation);
+                    break;
+                case MUL_ADD:
+                    changes.remove(0);
+                    changes.remove(operation.offset);
+                    folded.add(operation);
+                    break;
+                default:
+                    changes.clear();
+                    folded.add(operation);
+                    break;
+            }
+        }
+
+        folded.removeIf(Objects::isNull);
+        return folded;
+    }
+
+    private static Operation change(int delta, int offset) {
+        return delta > 0 ? new Operation(INC, delta, offset) : new Operation(DEC, -delta, offset);
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.djhworld.bf.ir;
+
+import io.github.djhworld.bf.Operation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static io.github.djhworld.bf.Instruction.DEC_DP;
+
+/**
+ * Drops loops that start on a cell known to be zero, as they never run. A cell is known to be zero right after a
+ * loop or scan ends on it or a SET_ZERO, until something changes it, which takes out [-] in [-][-] and the
+ * second loop in [>][<]. Loops rewritten into SCAN_LEFT, SCAN_RIGHT, MUL_ADD or SET_ZERO are dropped the same
+ * way.
+ * <p>
+ * Nothing is assumed about the tape at the start of the program, a machine carries its tape over from one call
+ * of execute to the next.
+ */
+public class DeadLoopPass implements Pass {
+    public static final String NAME = "dead-loops";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<Node> apply(List<Node> sequence) {
+        List<Node> live = new ArrayList<>(sequence.size());
+        // offsets from the data pointer of the cells known to be zero
+        Set<Integer> zeros = new HashSet<>();
+
+        for (Node node : sequence) {
+            if (node instanceof Loop) {
+                if (zeros.contains(0))
+                    continue;
+                zeros.clear();
+                zeros.add(0);
+                live.add(node);
+            } else {
+                live.add(new Block(apply(((Block) node).operations, zeros)));
+            }
+        }
+
+        return live;
+    }
+
+    private List<Operation> apply(List<Operation> operations, Set<Integer> zeros) {
+        List<Operation> live = new ArrayList<>(operations.size());
+
+        for (Operation operation : operations) {
+            switch (operation.instruction) {
+                case SET_ZERO:
+                    if (!zeros.add(operation.offset))
+                        continue;
+                    break;
+                case INC:
+                case DEC:
+                case READ:
+                    zeros.remove(operation.offset);
+                    break;
+                case MUL_ADD:
+                    if (zeros.contains(0))
+                        continue;
+                    zeros.remove(operation.offset);
+                    break;
+                case SCAN_LEFT:
+                case SCAN_RIGHT:
+                    if (zeros.contains(0))
+                        continue;
+                    zeros.clear();
+                    zeros.add(0);
+                    break;
+                case INC_DP:
+                case DEC_DP:
+                    int move = operation.instruction == DEC_DP ? -operation.argument : operation.argument;
+                    Set<Integer> moved = new HashSet<>();
+                    for (int zero : zeros)
+                        moved.add(zero - move);
+                    zeros.clear();
+                    zeros.addAll(moved);
+                    break;
+            }
+            live.add(operation);
+        }
+
+        return live;
+    }
+}
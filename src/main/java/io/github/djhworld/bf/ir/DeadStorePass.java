@@ -0,0 +1,63 @@
+package io.github.djhworld.bf.ir;
+
+import io.github.djhworld.bf.Operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Drops changes to a cell that are wiped out by a later SET_ZERO in the same block before anything reads the
+ * cell, including the earlier SET_ZERO in [-]>+<[-].
+ * <p>
+ * Only valid for wrapping cells, on other cells a dropped change could have overflowed.
+ */
+public class DeadStorePass extends BlockPass {
+    public static final String NAME = "dead-stores";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    protected List<Operation> applyToBlock(List<Operation> operations) {
+        List<Operation> live = new ArrayList<>(operations.size());
+        // cells that are set to zero further on without being read first, nothing is known past the block
+        Set<Integer> zeroed = new HashSet<>();
+
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            Operation operation = operations.get(i);
+            switch (operation.instruction) {
+                case SET_ZERO:
+                    if (!zeroed.add(operation.offset))
+                        continue;
+                    break;
+                case INC:
+                case DEC:
+                    if (zeroed.contains(operation.offset))
+                        continue;
+                    break;
+                case MUL_ADD:
+                    if (zeroed.contains(operation.offset))
+                        continue;
+                    zeroed.remove(0);
+                    break;
+                case PRINT:
+                case READ:
+                    zeroed.remove(operation.offset);
+                    break;
+                default:
+                    // the offsets before a pointer move refer to other cells
+                    zeroed.clear();
+                    break;
+            }
+            live.add(operation);
+        }
+
+        Collections.reverse(live);
+        return live;
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.djhworld.bf.ir;
+
+import io.github.djhworld.bf.Operation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static io.github.djhworld.bf.Instruction.*;
+import static java.util.Collections.singletonList;
+
+/**
+ * Rewrites innermost loops that match a well known idiom into a single operation
+ * <ul>
+ * <li>[-] and [+] become SET_ZERO</li>
+ * <li>[>] and [<] become SCAN_RIGHT and SCAN_LEFT, the argument being the step size</li>
+ * <li>balanced loops that only add to cells and decrement the current cell by one, e.g. [->+>++<<],
+ * become a MUL_ADD per target cell followed by SET_ZERO</li>
+ * </ul>
+ */
+public class IdiomPass implements Pass {
+    public static final String NAME = "idioms";
+
+    private final boolean wrappingCells;
+
+    /**
+     * @param wrappingCells false when cells saturate or raise an error on overflow, which limits the idioms
+     *                      rewritten to loops that count down to zero one step at a time
+     */
+    public IdiomPass(boolean wrappingCells) {
+        this.wrappingCells = wrappingCells;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<Node> apply(List<Node> sequence) {
+        List<Node> result = new ArrayList<>(sequence.size());
+        for (Node node : sequence) {
+            List<Operation> replacement = node instanceof Loop ? rewrite((Loop) node) : null;
+            result.add(replacement == null ? node : new Block(replacement));
+        }
+        return result;
+    }
+
+    /**
+     * @return the operations doing the same as the loop, or null if it is not an idiom
+     */
+    List<Operation> rewrite(Loop loop) {
+        if (loop.body.size() != 1 || !(loop.body.get(0) instanceof Block))
+            return null;
+        List<Operation> body = ((Block) loop.body.get(0)).operations;
+
+        if (body.size() == 1) {
+            Operation operation = body.get(0);
+            switch (operation.instruction) {
+                case INC_DP:
+                    return singletonList(new Operation(SCAN_RIGHT, operation.argument));
+                case DEC_DP:
+                    return singletonList(new Operation(SCAN_LEFT, operation.argument));
+            }
+        }
+
+        Map<Integer, Integer> deltas = new TreeMap<>();
+        // whether any cell is moved both up and down, its intermediate values could then leave the cell's range
+        boolean mixed = false;
+        int offset = 0;
+        for (Operation operation : body) {
+            switch (operation.instruction) {
+                case INC_DP:
+                    offset += operation.argument;
+                    break;
+                case DEC_DP:
+                    offset -= operation.argument;
+                    break;
+                case INC:
+                    mixed |= addDelta(deltas, offset + operation.offset, operation.argument);
+                    break;
+                case DEC:
+                    mixed |= addDelta(deltas, offset + operation.offset, -operation.argument);
+                    break;
+                default:
+                    return null;
+            }
+        }
+
+        Integer counterDelta = deltas.remove(0);
+        if (offset != 0 || counterDelta == null)
+            return null;
+
+        if (!wrappingCells && (counterDelta != -1 || mixed))
+            return null;
+
+        List<Operation> replacement = new ArrayList<>();
+        if (deltas.isEmpty()) {
+            // the loop only touches the counter, it reaches zero through wrap around as long as the step is odd
+            if (counterDelta % 2 == 0)
+                return null;
+        } else {
+            // with a counter step of +1 the loop runs -n times, so the factors flip sign
+            if (counterDelta != 1 && counterDelta != -1)
+                return null;
+
+            for (Map.Entry<Integer, Integer> delta : deltas.entrySet()) {
+                if (delta.getValue() != 0)
+                    replacement.add(new Operation(MUL_ADD, delta.getValue() * -counterDelta, delta.getKey()));
+            }
+        }
+
+        replacement.add(new Operation(SET_ZERO, 0));
+        return replacement;
+    }
+
+    /**
+     * @return true when the delta goes the opposite way to changes already made to the cell
+     */
+    private boolean addDelta(Map<Integer, Integer> deltas, int offset, int delta) {
+        Integer current = deltas.get(offset);
+        deltas.put(offset, current == null ? delta : current + delta);
+        return current != null && (current < 0) != (delta < 0);
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.djhworld.bf.ir;
+
+import java.util.List;
+
+/**
+ * A loop running its body for as long as the current cell is not zero, with the source positions of its brackets
+ */
+public final class Loop implements Node {
+    public final List<Node> body;
+    public final int line;
+    public final int column;
+    public final int endLine;
+    public final int endColumn;
+
+    public Loop(List<Node> body) {
+        this(body, -1, -1, -1, -1);
+    }
+
+    public Loop(List<Node> body, int line, int column, int endLine, int endColumn) {
+        this.body = body;
+        this.line = line;
+        this.column = column;
+        this.endLine = endLine;
+        this.endColumn = endColumn;
+    }
+
+    public Loop withBody(List<Node> body) {
+        return new Loop(body, line, column, endLine, endColumn);
+    }
+}
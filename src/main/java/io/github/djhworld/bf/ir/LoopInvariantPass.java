@@ -0,0 +1,85 @@
+package io.github.djhworld.bf.ir;
+
+import io.github.djhworld.bf.Operation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.github.djhworld.bf.Instruction.*;
+import static java.util.Collections.singletonList;
+
+/**
+ * Moves SET_ZERO out of loops that do not move the data pointer, when nothing else in the loop touches the cell
+ * being cleared. Clearing the cell on every pass only matters the first time round, so [>[-]<-] becomes
+ * [>[-]<[-]], the loop left inside being rewritten as an idiom where it is one. The outer loop runs at most once.
+ */
+public class LoopInvariantPass implements Pass {
+    public static final String NAME = "loop-invariants";
+
+    private final IdiomPass idioms;
+
+    /**
+     * @param wrappingCells passed on to the {@link IdiomPass} rewriting the loops left behind
+     */
+    public LoopInvariantPass(boolean wrappingCells) {
+        this.idioms = new IdiomPass(wrappingCells);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<Node> apply(List<Node> sequence) {
+        List<Node> result = new ArrayList<>(sequence.size());
+        for (Node node : sequence)
+            result.add(node instanceof Loop ? hoist((Loop) node) : node);
+        return result;
+    }
+
+    private Node hoist(Loop loop) {
+        if (loop.body.size() != 1 || !(loop.body.get(0) instanceof Block))
+            return loop;
+        List<Operation> body = ((Block) loop.body.get(0)).operations;
+
+        List<Operation> invariants = new ArrayList<>();
+        List<Operation> rest = new ArrayList<>();
+        for (Operation operation : body) {
+            switch (operation.instruction) {
+                case INC_DP:
+                case DEC_DP:
+                case SCAN_LEFT:
+                case SCAN_RIGHT:
+                    return loop;
+            }
+            if (operation.instruction == SET_ZERO && operation.offset != 0 && touchedOnce(body, operation.offset))
+                invariants.add(operation);
+            else
+                rest.add(operation);
+        }
+
+        if (invariants.isEmpty())
+            return loop;
+
+        Loop inner = new Loop(singletonList(new Block(rest)), loop.line, loop.column, loop.endLine, loop.endColumn);
+        List<Operation> rewritten = idioms.rewrite(inner);
+        if (rewritten != null)
+            invariants.addAll(rewritten);
+
+        List<Node> hoisted = new ArrayList<>();
+        hoisted.add(new Block(invariants));
+        if (rewritten == null)
+            hoisted.add(inner);
+        return loop.withBody(hoisted);
+    }
+
+    private static boolean touchedOnce(List<Operation> body, int offset) {
+        int touched = 0;
+        for (Operation operation : body) {
+            if (operation.offset == offset)
+                touched++;
+        }
+        return touched == 1;
+    }
+}
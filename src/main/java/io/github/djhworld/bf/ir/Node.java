@@ -0,0 +1,7 @@
+package io.github.djhworld.bf.ir;
+
+/**
+ * A node of the intermediate representation, either a {@link Block} of straight line operations or a {@link Loop}
+ */
+public interface Node {
+}
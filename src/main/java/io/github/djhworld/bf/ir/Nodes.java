@@ -0,0 +1,188 @@
+package io.github.djhworld.bf.ir;
+
+import io.github.djhworld.bf.Operation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static io.github.djhworld.bf.Instruction.JUMP_IF_NOT_ZERO;
+import static io.github.djhworld.bf.Instruction.JUMP_IF_ZERO;
+
+/**
+ * Moves programs in and out of the intermediate representation.
+ * <p>
+ * Loops can be nested as deep as the source likes, so none of these recurse into loop bodies and keep their own
+ * stack instead.
+ */
+public final class Nodes {
+    private Nodes() {
+    }
+
+    /**
+     * Builds the tree for a flat list of operations, in which only the kind of jump matters and not its target
+     *
+     * @param operations a list with balanced brackets
+     */
+    public static List<Node> of(List<Operation> operations) {
+        Deque<List<Node>> sequences = new ArrayDeque<>();
+        Deque<Operation> starts = new ArrayDeque<>();
+        List<Node> sequence = new ArrayList<>();
+        List<Operation> block = new ArrayList<>();
+
+        for (Operation operation : operations) {
+            switch (operation.instruction) {
+                case JUMP_IF_ZERO:
+                    block = addBlock(sequence, block);
+                    sequences.push(sequence);
+                    starts.push(operation);
+                    sequence = new ArrayList<>();
+                    break;
+                case JUMP_IF_NOT_ZERO:
+                    if (starts.isEmpty())
+                        throw new IllegalArgumentException("Unbalanced loop end");
+                    block = addBlock(sequence, block);
+                    Operation start = starts.pop();
+                    Loop loop = new Loop(sequence, start.line, start.column, operation.line, operation.column);
+                    sequence = sequences.pop();
+                    sequence.add(loop);
+                    break;
+                default:
+                    block.add(operation);
+                    break;
+            }
+        }
+
+        if (!starts.isEmpty())
+            throw new IllegalArgumentException("Unbalanced loop start");
+
+        addBlock(sequence, block);
+        return sequence;
+    }
+
+    private static List<Operation> addBlock(List<Node> sequence, List<Operation> block) {
+        if (block.isEmpty())
+            return block;
+        sequence.add(new Block(block));
+        return new ArrayList<>();
+    }
+
+    /**
+     * Flattens the tree back into operations, with the targets of all jumps resolved
+     */
+    public static List<Operation> lower(List<Node> nodes) {
+        List<Operation> operations = new ArrayList<>();
+        // the loops being written out, their position in the parent sequence and where their [ went
+        Deque<Loop> loops = new ArrayDeque<>();
+        Deque<List<Node>> sequences = new ArrayDeque<>();
+        int[] positions = new int[16];
+        int[] starts = new int[16];
+        List<Node> sequence = nodes;
+        int position = 0;
+
+        while (true) {
+            if (position < sequence.size()) {
+                Node node = sequence.get(position++);
+                if (node instanceof Block) {
+                    operations.addAll(((Block) node).operations);
+                    continue;
+                }
+
+                Loop loop = (Loop) node;
+                int depth = loops.size();
+                if (depth == positions.length) {
+                    positions = Arrays.copyOf(positions, depth * 2);
+                    starts = Arrays.copyOf(starts, depth * 2);
+                }
+                positions[depth] = position;
+                starts[depth] = operations.size();
+                operations.add(null);
+                loops.push(loop);
+                sequences.push(sequence);
+                sequence = loop.body;
+                position = 0;
+            } else if (loops.isEmpty()) {
+                return operations;
+            } else {
+                Loop loop = loops.pop();
+                int depth = loops.size();
+                int start = starts[depth];
+                int end = operations.size();
+                operations.set(start, new Operation(JUMP_IF_ZERO, end, 0, loop.line, loop.column));
+                operations.add(new Operation(JUMP_IF_NOT_ZERO, start, 0, loop.endLine, loop.endColumn));
+                sequence = sequences.pop();
+                position = positions[depth];
+            }
+        }
+    }
+
+    /**
+     * Replaces every sequence in the tree with what the rewrite makes of it, the body of a loop is rewritten
+     * before the sequence holding the loop. Adjacent blocks in a rewritten sequence are merged and empty ones
+     * dropped.
+     */
+    public static List<Node> rewrite(List<Node> nodes, UnaryOperator<List<Node>> rewrite) {
+        Deque<Frame> frames = new ArrayDeque<>();
+        Frame frame = new Frame(nodes, null);
+
+        while (true) {
+            if (frame.position < frame.sequence.size()) {
+                Node node = frame.sequence.get(frame.position++);
+                if (node instanceof Loop) {
+                    frames.push(frame);
+                    frame = new Frame(((Loop) node).body, (Loop) node);
+                } else {
+                    frame.rewritten.add(node);
+                }
+            } else {
+                List<Node> rewritten = merge(rewrite.apply(merge(frame.rewritten)));
+                if (frames.isEmpty())
+                    return rewritten;
+
+                Loop loop = frame.loop;
+                frame = frames.pop();
+                frame.rewritten.add(loop.withBody(rewritten));
+            }
+        }
+    }
+
+    /**
+     * @return the sequence with adjacent blocks joined up and empty blocks left out
+     */
+    public static List<Node> merge(List<Node> sequence) {
+        List<Node> merged = new ArrayList<>(sequence.size());
+        List<Operation> block = null;
+
+        for (Node node : sequence) {
+            if (node instanceof Block) {
+                if (block == null)
+                    block = new ArrayList<>();
+                block.addAll(((Block) node).operations);
+            } else {
+                if (block != null && !block.isEmpty())
+                    merged.add(new Block(block));
+                block = null;
+                merged.add(node);
+            }
+        }
+
+        if (block != null && !block.isEmpty())
+            merged.add(new Block(block));
+        return merged;
+    }
+
+    private static class Frame {
+        private final List<Node> sequence;
+        private final Loop loop;
+        private final List<Node> rewritten = new ArrayList<>();
+        private int position;
+
+        Frame(List<Node> sequence, Loop loop) {
+            this.sequence = sequence;
+            this.loop = loop;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.djhworld.bf.ir;
+
+import io.github.djhworld.bf.Operation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.github.djhworld.bf.Instruction.DEC_DP;
+import static io.github.djhworld.bf.Instruction.INC_DP;
+
+/**
+ * Folds data pointer moves into the offset of the cell operations that follow them, so a run such as
+ * >+>++<<- becomes "add 1 at +1, add 2 at +2, subtract 1 at 0" with no pointer updates at all.
+ * The accumulated move is emitted as a single INC_DP/DEC_DP before any operation that depends on the
+ * real position of the data pointer (scans and MUL_ADD) and at the end of each block.
+ */
+public class OffsetPass extends BlockPass {
+    public static final String NAME = "offsets";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    protected List<Operation> applyToBlock(List<Operation> operations) {
+        List<Operation> optimised = new ArrayList<>(operations.size());
+        int offset = 0;
+
+        for (Operation operation : operations) {
+            switch (operation.instruction) {
+                case INC_DP:
+                    offset += operation.argument;
+                    break;
+                case DEC_DP:
+                    offset -= operation.argument;
+                    break;
+                case INC:
+                case DEC:
+                case PRINT:
+                case READ:
+                case SET_ZERO:
+                    optimised.add(new Operation(operation.instruction, operation.argument, operation.offset + offset));
+                    break;
+                default:
+                    addPointerMove(optimised, offset);
+                    offset = 0;
+                    optimised.add(operation);
+                    break;
+            }
+        }
+
+        addPointerMove(optimised, offset);
+        return optimised;
+    }
+
+    static void addPointerMove(List<Operation> operations, int offset) {
+        if (offset > 0)
+            operations.add(new Operation(INC_DP, offset));
+        else if (offset < 0)
+            operations.add(new Operation(DEC_DP, -offset));
+    }
+}
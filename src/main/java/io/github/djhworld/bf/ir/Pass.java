@@ -0,0 +1,19 @@
+package io.github.djhworld.bf.ir;
+
+import java.util.List;
+
+/**
+ * An optimisation over the intermediate representation.
+ * <p>
+ * A pass is given one sequence of nodes at a time, the body of every loop and finally the program itself, inner
+ * sequences before the ones holding them. It returns the sequence to put in its place, adjacent blocks in the
+ * result are merged afterwards.
+ */
+public interface Pass {
+    /**
+     * @return the name the pass is registered and toggled under
+     */
+    String name();
+
+    List<Node> apply(List<Node> sequence);
+}
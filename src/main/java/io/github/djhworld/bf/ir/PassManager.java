@@ -0,0 +1,129 @@
+package io.github.djhworld.bf.ir;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The passes a program goes through on its way from source to operations, in the order they run. Passes are
+ * known by name, and can be added anywhere in the order and switched off and on again.
+ */
+public class PassManager {
+    private final List<Pass> passes = new ArrayList<>();
+    private final Set<String> disabled = new HashSet<>();
+
+    /**
+     * The passes run by default: {@link IdiomPass}, {@link OffsetPass}, {@link LoopInvariantPass},
+     * {@link ConstantFoldingPass}, {@link DeadStorePass} and {@link DeadLoopPass}, leaving out the ones that
+     * need wrapping cells
+     *
+     * @param wrappingCells false when cells saturate or raise an error on overflow
+     */
+    public static PassManager defaults(boolean wrappingCells) {
+        PassManager passes = new PassManager()
+                .add(new IdiomPass(wrappingCells))
+                .add(new OffsetPass())
+                .add(new LoopInvariantPass(wrappingCells));
+        if (wrappingCells) {
+            passes.add(new ConstantFoldingPass())
+                    .add(new DeadStorePass());
+        }
+        return passes.add(new DeadLoopPass());
+    }
+
+    /**
+     * Adds a pass to run after all the others
+     *
+     * @throws IllegalArgumentException if there already is a pass of the same name
+     */
+    public PassManager add(Pass pass) {
+        return insert(passes.size(), pass);
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no pass called next or already one of the same name
+     */
+    public PassManager addBefore(String next, Pass pass) {
+        return insert(indexOf(next), pass);
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no pass called previous or already one of the same name
+     */
+    public PassManager addAfter(String previous, Pass pass) {
+        return insert(indexOf(previous) + 1, pass);
+    }
+
+    public PassManager remove(String name) {
+        passes.remove(indexOf(name));
+        disabled.remove(name);
+        return this;
+    }
+
+    /**
+     * Keeps the pass in place but stops it running
+     *
+     * @throws IllegalArgumentException if there is no such pass
+     */
+    public PassManager disable(String name) {
+        indexOf(name);
+        disabled.add(name);
+        return this;
+    }
+
+    public PassManager enable(String name) {
+        indexOf(name);
+        disabled.remove(name);
+        return this;
+    }
+
+    public boolean isEnabled(String name) {
+        return !disabled.contains(name);
+    }
+
+    /**
+     * @return the names of all passes in the order they run, including disabled ones
+     */
+    public List<String> getPasses() {
+        List<String> names = new ArrayList<>(passes.size());
+        for (Pass pass : passes)
+            names.add(pass.name());
+        return names;
+    }
+
+    /**
+     * @return the names of the passes that will run, in the order they run
+     */
+    public List<String> getEnabledPasses() {
+        List<String> names = getPasses();
+        names.removeAll(disabled);
+        return names;
+    }
+
+    /**
+     * Runs every enabled pass over the whole program in turn
+     */
+    public List<Node> run(List<Node> nodes) {
+        for (Pass pass : passes) {
+            if (isEnabled(pass.name()))
+                nodes = Nodes.rewrite(nodes, pass::apply);
+        }
+        return nodes;
+    }
+
+    private PassManager insert(int index, Pass pass) {
+        if (getPasses().contains(pass.name()))
+            throw new IllegalArgumentException("There already is a pass called " + pass.name());
+        passes.add(index, pass);
+        return this;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < passes.size(); i++) {
+            if (passes.get(i).name().equals(name))
+                return i;
+        }
+        throw new IllegalArgumentException("No pass called " + name);
+    }
+}
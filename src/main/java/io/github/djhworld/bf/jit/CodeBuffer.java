@@ -0,0 +1,151 @@
+package io.github.djhworld.bf.jit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable buffer of JVM bytecode with support for forward and backward branches.
+ */
+class CodeBuffer {
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int BALOAD = 0x33;
+    static final int ISTORE = 0x36;
+    static final int BASTORE = 0x54;
+    static final int DUP2 = 0x5C;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IINC = 0x84;
+    static final int I2B = 0x91;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int GOTO = 0xA7;
+    static final int IRETURN = 0xAC;
+    static final int RETURN = 0xB1;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC = 0xB8;
+    static final int WIDE = 0xC4;
+
+    private final int maxStack;
+    private final int maxLocals;
+    private byte[] code = new byte[256];
+    private int length;
+
+    CodeBuffer(int maxStack, int maxLocals) {
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+    }
+
+    int maxStack() {
+        return maxStack;
+    }
+
+    int maxLocals() {
+        return maxLocals;
+    }
+
+    int length() {
+        return length;
+    }
+
+    CodeBuffer op(int opcode) {
+        return u1(opcode);
+    }
+
+    CodeBuffer op(int opcode, int operand) {
+        return u1(opcode).u1(operand);
+    }
+
+    CodeBuffer opWithIndex(int opcode, int index) {
+        return u1(opcode).u2(index);
+    }
+
+    CodeBuffer load(int opcode, int local) {
+        if (local <= 3)
+            return u1((opcode == ILOAD ? 0x1A : 0x2A) + local);
+        return op(opcode, local);
+    }
+
+    CodeBuffer store(int local) {
+        if (local <= 3)
+            return u1(0x3B + local);
+        return op(ISTORE, local);
+    }
+
+    CodeBuffer pushInt(ClassFileWriter classFile, int value) {
+        if (value >= -1 && value <= 5)
+            return u1(ICONST_0 + value);
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+            return op(BIPUSH, value);
+        if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+            return u1(SIPUSH).u2(value);
+        return opWithIndex(LDC_W, classFile.integerConstant(value));
+    }
+
+    CodeBuffer iinc(int local, int by) {
+        if (by >= Byte.MIN_VALUE && by <= Byte.MAX_VALUE)
+            return u1(IINC).u1(local).u1(by);
+        if (by >= Short.MIN_VALUE && by <= Short.MAX_VALUE)
+            return u1(WIDE).u1(IINC).u2(local).u2(by);
+        throw new IllegalArgumentException("Increment out of range: " + by);
+    }
+
+    CodeBuffer branch(int opcode, Label target) {
+        int position = length;
+        u1(opcode);
+        if (target.position >= 0) {
+            u2(checkOffset(target.position - position));
+        } else {
+            target.fixups.add(position);
+            u2(0);
+        }
+        return this;
+    }
+
+    CodeBuffer mark(Label label) {
+        label.position = length;
+        for (int branch : label.fixups)
+            patch(branch + 1, length - branch);
+        label.fixups.clear();
+        return this;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(code, length);
+    }
+
+    private void patch(int at, int offset) {
+        checkOffset(offset);
+        code[at] = (byte) (offset >> 8);
+        code[at + 1] = (byte) offset;
+    }
+
+    private int checkOffset(int offset) {
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+            throw new IllegalStateException("Branch offset out of range: " + offset);
+        return offset;
+    }
+
+    private CodeBuffer u1(int value) {
+        if (length == code.length)
+            code = Arrays.copyOf(code, code.length * 2);
+        code[length++] = (byte) value;
+        return this;
+    }
+
+    private CodeBuffer u2(int value) {
+        return u1(value >> 8).u1(value);
+    }
+
+    static class Label {
+        private final List<Integer> fixups = new ArrayList<>();
+        private int position = -1;
+    }
+}
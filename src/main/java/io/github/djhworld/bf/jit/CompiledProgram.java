@@ -0,0 +1,15 @@
+package io.github.djhworld.bf.jit;
+
+import io.github.djhworld.bf.vm.Console;
+
+import java.io.IOException;
+
+/**
+ * Implemented by the classes that {@link JitCompiler} generates
+ */
+public interface CompiledProgram {
+    /**
+     * @return the data pointer once the program has finished
+     */
+    int execute(byte[] memory, int dataPointer, Console console) throws IOException;
+}
@@ -0,0 +1,264 @@
+package io.github.djhworld.bf.jit;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.Program;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.github.djhworld.bf.Program.*;
+import static io.github.djhworld.bf.jit.ClassFileWriter.*;
+import static io.github.djhworld.bf.jit.CodeBuffer.*;
+
+/**
+ * Translates a compiled program into a JVM class implementing {@link CompiledProgram}.
+ * <p>
+ * Every loop becomes a real JVM loop over the tape, with the data pointer held in a local variable.
+ * HotSpot refuses to compile methods over 8000 bytes of bytecode and only inlines small ones, so once a range
+ * holds more than {@link #MAX_METHOD_OPERATIONS} operations it is split at loop boundaries into static helper
+ * methods that take and return the data pointer.
+ */
+public class JitCompiler {
+    static final int MAX_METHOD_OPERATIONS = 50;
+
+    private static final String PACKAGE = "io/github/djhworld/bf/jit/generated/";
+    private static final String COMPILED_PROGRAM = "io/github/djhworld/bf/jit/CompiledProgram";
+    private static final String CONSOLE = "io/github/djhworld/bf/vm/Console";
+    private static final String SCANS = "io/github/djhworld/bf/vm/Scans";
+    private static final String EXECUTE_DESCRIPTOR = "([BIL" + CONSOLE + ";)I";
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    // locals of the generated static methods
+    private static final int MEMORY = 0;
+    private static final int DATA_POINTER = 1;
+    private static final int CONSOLE_LOCAL = 2;
+    private static final int TEMP = 3;
+
+    public CompiledProgram compile(List<Operation> operations) {
+        return compile(Program.of(operations));
+    }
+
+    public CompiledProgram compile(Program program) {
+        return compile(program, 0, program.size());
+    }
+
+    /**
+     * Compiles the operations between from (inclusive) and to (exclusive), which must not cut through a loop
+     */
+    public CompiledProgram compile(Program program, int from, int to) {
+        String className = PACKAGE + "Program" + classCounter.incrementAndGet();
+        byte[] classFile = generate(className, program, from, to);
+
+        try {
+            Class<?> compiled = new ProgramClassLoader(JitCompiler.class.getClassLoader())
+                    .define(className.replace('/', '.'), classFile);
+            return (CompiledProgram) compiled.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to load compiled program " + className, e);
+        }
+    }
+
+    /**
+     * @param className the internal name (using / as separator) of the class to generate
+     * @return the class file bytes
+     */
+    public byte[] generate(String className, Program program, int from, int to) {
+        return new Generator(className, program).generate(from, to);
+    }
+
+    private static class Generator {
+        private final ClassFileWriter classFile;
+        private final String className;
+        private final int[] opcodes;
+        private final int[] arguments;
+        private final int[] offsets;
+        private int methodCount;
+
+        Generator(String className, Program program) {
+            this.classFile = new ClassFileWriter(className, "java/lang/Object", COMPILED_PROGRAM);
+            this.className = className;
+            this.opcodes = program.opcodes;
+            this.arguments = program.arguments;
+            this.offsets = program.offsets;
+        }
+
+        byte[] generate(int from, int to) {
+            CodeBuffer constructor = new CodeBuffer(1, 1)
+                    .load(ALOAD, 0)
+                    .opWithIndex(INVOKESPECIAL, classFile.methodConstant("java/lang/Object", "<init>", "()V"))
+                    .op(RETURN);
+            classFile.addMethod(ACC_PUBLIC, "<init>", "()V", constructor);
+
+            String body = newMethod(from, to);
+            CodeBuffer execute = new CodeBuffer(3, 4)
+                    .load(ALOAD, 1)
+                    .load(ILOAD, 2)
+                    .load(ALOAD, 3)
+                    .opWithIndex(INVOKESTATIC, classFile.methodConstant(className, body, EXECUTE_DESCRIPTOR))
+                    .op(IRETURN);
+            classFile.addMethod(ACC_PUBLIC, "execute", EXECUTE_DESCRIPTOR, execute);
+
+            return classFile.toByteArray();
+        }
+
+        private String newMethod(int from, int to) {
+            String name = "m" + methodCount++;
+            CodeBuffer code = new CodeBuffer(8, 4);
+            emitRange(code, from, to);
+            code.load(ILOAD, DATA_POINTER).op(IRETURN);
+            classFile.addMethod(ACC_PRIVATE | ACC_STATIC, name, EXECUTE_DESCRIPTOR, code);
+            return name;
+        }
+
+        private void emitCall(CodeBuffer code, String method) {
+            code.load(ALOAD, MEMORY)
+                    .load(ILOAD, DATA_POINTER)
+                    .load(ALOAD, CONSOLE_LOCAL)
+                    .opWithIndex(INVOKESTATIC, classFile.methodConstant(className, method, EXECUTE_DESCRIPTOR))
+                    .store(DATA_POINTER);
+        }
+
+        private void emitRange(CodeBuffer code, int from, int to) {
+            if (to - from <= MAX_METHOD_OPERATIONS) {
+                emitInline(code, from, to);
+                return;
+            }
+
+            int middle = -1;
+            int target = from + (to - from) / 2;
+            for (int i = endOf(from); i < to; i = endOf(i)) {
+                if (middle == -1 || Math.abs(i - target) < Math.abs(middle - target))
+                    middle = i;
+            }
+
+            if (middle == -1) {
+                // a single loop, only its body has to move out
+                int end = endOf(from) - 1;
+                emitLoop(code, () -> emitCall(code, newMethod(from + 1, end)));
+            } else {
+                emitCall(code, newMethod(from, middle));
+                emitCall(code, newMethod(middle, to));
+            }
+        }
+
+        private void emitInline(CodeBuffer code, int from, int to) {
+            int i = from;
+            while (i < to) {
+                if (opcodes[i] == JUMP_IF_ZERO) {
+                    int start = i + 1;
+                    int end = arguments[i];
+                    emitLoop(code, () -> emitInline(code, start, end));
+                    i = end + 1;
+                } else {
+                    emitOperation(code, i);
+                    i++;
+                }
+            }
+        }
+
+        private int endOf(int position) {
+            return opcodes[position] == JUMP_IF_ZERO ? arguments[position] + 1 : position + 1;
+        }
+
+        private void emitLoop(CodeBuffer code, Runnable body) {
+            Label start = new Label();
+            Label exit = new Label();
+
+            loadCell(code, 0);
+            code.branch(IFEQ, exit);
+            code.mark(start);
+            body.run();
+            loadCell(code, 0);
+            code.branch(IFNE, start);
+            code.mark(exit);
+        }
+
+        private void emitOperation(CodeBuffer code, int position) {
+            int argument = arguments[position];
+            int offset = offsets[position];
+
+            switch (opcodes[position]) {
+                case INC:
+                case DEC:
+                    cellAddress(code, offset);
+                    code.op(DUP2).op(BALOAD);
+                    code.pushInt(classFile, argument);
+                    code.op(opcodes[position] == INC ? IADD : ISUB).op(BASTORE);
+                    break;
+                case INC_DP:
+                    moveDataPointer(code, argument);
+                    break;
+                case DEC_DP:
+                    moveDataPointer(code, -argument);
+                    break;
+                case PRINT:
+                    code.load(ALOAD, CONSOLE_LOCAL);
+                    loadCell(code, offset);
+                    code.pushInt(classFile, argument);
+                    code.opWithIndex(INVOKEVIRTUAL, classFile.methodConstant(CONSOLE, "print", "(BI)V"));
+                    break;
+                case READ:
+                    cellAddress(code, offset);
+                    code.load(ALOAD, CONSOLE_LOCAL);
+                    loadCell(code, offset);
+                    code.pushInt(classFile, argument);
+                    code.opWithIndex(INVOKEVIRTUAL, classFile.methodConstant(CONSOLE, "read", "(BI)B"));
+                    code.op(BASTORE);
+                    break;
+                case SET_ZERO:
+                    cellAddress(code, offset);
+                    code.op(ICONST_0).op(BASTORE);
+                    break;
+                case SCAN_LEFT:
+                case SCAN_RIGHT:
+                    code.load(ALOAD, MEMORY).load(ILOAD, DATA_POINTER);
+                    code.pushInt(classFile, argument);
+                    code.opWithIndex(INVOKESTATIC, classFile.methodConstant(SCANS,
+                            opcodes[position] == SCAN_RIGHT ? "right" : "left", "([BII)I"));
+                    code.store(DATA_POINTER);
+                    break;
+                case MUL_ADD:
+                    Label skip = new Label();
+                    loadCell(code, 0);
+                    code.store(TEMP).load(ILOAD, TEMP).branch(IFEQ, skip);
+                    cellAddress(code, offset);
+                    code.op(DUP2).op(BALOAD).load(ILOAD, TEMP);
+                    code.pushInt(classFile, argument);
+                    code.op(IMUL).op(IADD).op(BASTORE);
+                    code.mark(skip);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unbalanced loop at operation " + position);
+            }
+        }
+
+        private void cellAddress(CodeBuffer code, int offset) {
+            code.load(ALOAD, MEMORY).load(ILOAD, DATA_POINTER);
+            if (offset != 0)
+                code.pushInt(classFile, offset).op(IADD);
+        }
+
+        private void loadCell(CodeBuffer code, int offset) {
+            cellAddress(code, offset);
+            code.op(BALOAD);
+        }
+
+        private void moveDataPointer(CodeBuffer code, int by) {
+            if (by >= Short.MIN_VALUE && by <= Short.MAX_VALUE) {
+                code.iinc(DATA_POINTER, by);
+            } else {
+                code.load(ILOAD, DATA_POINTER).pushInt(classFile, by).op(IADD).store(DATA_POINTER);
+            }
+        }
+    }
+
+    private static class ProgramClassLoader extends ClassLoader {
+        ProgramClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+}
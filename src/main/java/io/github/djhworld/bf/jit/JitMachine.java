@@ -0,0 +1,49 @@
+package io.github.djhworld.bf.jit;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Engine;
+import io.github.djhworld.bf.vm.PrintStreamOutput;
+import io.github.djhworld.bf.vm.StreamInput;
+import io.github.djhworld.bf.vm.TapeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Engine that compiles each program to JVM bytecode with {@link JitCompiler} before running it
+ */
+public class JitMachine implements Engine {
+    private final JitCompiler compiler;
+    private final byte[] memory;
+    private final Console console;
+    private int dataPointer;
+
+    public JitMachine(InputStream in, PrintStream out, byte[] memory) {
+        this(new JitCompiler(), new Console(new StreamInput(in), new PrintStreamOutput(out)), memory);
+    }
+
+    public JitMachine(JitCompiler compiler, Console console, byte[] memory) {
+        this.compiler = compiler;
+        this.console = console;
+        this.memory = memory;
+        this.dataPointer = 0;
+    }
+
+    @Override
+    public void execute(List<Operation> operations) throws IllegalArgumentException, IOException {
+        try {
+            dataPointer = compiler.compile(operations).execute(memory, dataPointer, console);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw TapeException.outside(e, memory.length);
+        } finally {
+            console.flush();
+        }
+    }
+
+    int getDataPointer() {
+        return dataPointer;
+    }
+}
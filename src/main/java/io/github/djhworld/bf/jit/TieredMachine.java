@@ -0,0 +1,148 @@
+package io.github.djhworld.bf.jit;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Engine;
+import io.github.djhworld.bf.vm.PrintStreamOutput;
+import io.github.djhworld.bf.vm.Scans;
+import io.github.djhworld.bf.vm.StreamInput;
+import io.github.djhworld.bf.vm.TapeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static io.github.djhworld.bf.Program.*;
+
+/**
+ * Engine that starts out interpreting a program and hands individual loops over to {@link JitCompiler}
+ * once they have gone round their back-edge more than a threshold number of times.
+ * <p>
+ * Compiled loops run against the same tape and are given the live data pointer, so the hand-off can
+ * happen in the middle of a loop. Loops are compiled synchronously on the executing thread.
+ */
+public class TieredMachine implements Engine {
+    public static final int DEFAULT_THRESHOLD = 10000;
+
+    private final JitCompiler compiler;
+    private final byte[] memory;
+    private final Console console;
+    private final int threshold;
+    private int dataPointer;
+    private int instructionPointer;
+    private int compiledLoops;
+
+    public TieredMachine(InputStream in, PrintStream out, byte[] memory) {
+        this(new JitCompiler(), new Console(new StreamInput(in), new PrintStreamOutput(out)), memory, DEFAULT_THRESHOLD);
+    }
+
+    public TieredMachine(JitCompiler compiler, Console console, byte[] memory, int threshold) {
+        if (threshold < 1)
+            throw new IllegalArgumentException("threshold must be at least 1");
+
+        this.compiler = compiler;
+        this.console = console;
+        this.memory = memory;
+        this.threshold = threshold;
+        this.dataPointer = 0;
+        this.instructionPointer = 0;
+    }
+
+    @Override
+    public void execute(List<Operation> operations) throws IllegalArgumentException, IOException {
+        execute(Program.of(operations));
+    }
+
+    public void execute(Program program) throws IllegalArgumentException, IOException {
+        final int[] opcodes = program.opcodes;
+        final int[] arguments = program.arguments;
+        final int[] offsets = program.offsets;
+        final byte[] memory = this.memory;
+        final Console console = this.console;
+        // both indexed by the position of the loop's JUMP_IF_ZERO
+        final int[] backEdges = new int[opcodes.length];
+        final CompiledProgram[] loops = new CompiledProgram[opcodes.length];
+        int ip = instructionPointer;
+        int dp = dataPointer;
+
+        try {
+            while (ip < opcodes.length) {
+                switch (opcodes[ip]) {
+                    case INC_DP:
+                        dp += arguments[ip];
+                        break;
+                    case DEC_DP:
+                        dp -= arguments[ip];
+                        break;
+                    case INC:
+                        memory[dp + offsets[ip]] += arguments[ip];
+                        break;
+                    case DEC:
+                        memory[dp + offsets[ip]] -= arguments[ip];
+                        break;
+                    case PRINT:
+                        console.print(memory[dp + offsets[ip]], arguments[ip]);
+                        break;
+                    case READ:
+                        memory[dp + offsets[ip]] = console.read(memory[dp + offsets[ip]], arguments[ip]);
+                        break;
+                    case JUMP_IF_ZERO:
+                        if (loops[ip] != null) {
+                            dp = loops[ip].execute(memory, dp, console);
+                            ip = arguments[ip];
+                        } else if (memory[dp] == 0) {
+                            ip = arguments[ip];
+                        }
+                        break;
+                    case JUMP_IF_NOT_ZERO:
+                        if (memory[dp] != 0) {
+                            int start = arguments[ip];
+                            if (++backEdges[start] == threshold) {
+                                loops[start] = compiler.compile(program, start, ip + 1);
+                                compiledLoops++;
+                            }
+
+                            // the compiled loop carries on from the current iteration and leaves us after the ]
+                            if (loops[start] != null)
+                                dp = loops[start].execute(memory, dp, console);
+                            else
+                                ip = start;
+                        }
+                        break;
+                    case SET_ZERO:
+                        memory[dp + offsets[ip]] = 0;
+                        break;
+                    case SCAN_LEFT:
+                        dp = Scans.left(memory, dp, arguments[ip]);
+                        break;
+                    case SCAN_RIGHT:
+                        dp = Scans.right(memory, dp, arguments[ip]);
+                        break;
+                    case MUL_ADD:
+                        byte counter = memory[dp];
+                        if (counter != 0) memory[dp + offsets[ip]] += counter * arguments[ip];
+                        break;
+                }
+
+                ip++;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // a compiled loop does not hand back where it stopped
+            throw TapeException.outside(e, memory.length);
+        } finally {
+            this.instructionPointer = ip;
+            this.dataPointer = dp;
+            console.flush();
+        }
+    }
+
+    int getDataPointer() {
+        return dataPointer;
+    }
+
+    int getCompiledLoops() {
+        return compiledLoops;
+    }
+}
@@ -0,0 +1,12 @@
+package io.github.djhworld.bf.pipeline;
+
+import java.io.IOException;
+
+/**
+ * Raised when writing to a {@link RingBuffer} whose reader has stopped reading
+ */
+public class BrokenPipeException extends IOException {
+    public BrokenPipeException() {
+        super("The next stage of the pipeline has stopped reading");
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.djhworld.bf.pipeline;
+
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Input;
+import io.github.djhworld.bf.vm.Machine;
+import io.github.djhworld.bf.vm.Output;
+import io.github.djhworld.bf.vm.Tape;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs programs one after the other in the same way as a shell pipeline, each stage reading what the one before it
+ * printed. The first stage reads the pipeline's input and the last one prints to its output.
+ * <p>
+ * Every stage runs on its own thread with its own interpreter and tape, handing its output to the next through a
+ * {@link RingBuffer}. A stage that gets ahead of the next waits once the buffer between them is full, and one that
+ * runs out of input waits for more.
+ * <p>
+ * A stage that finishes ends the input of the next. A stage that stops early, by finishing or failing, makes the
+ * stage before it stop at its next PRINT, which is not counted as a failure.
+ */
+public class Pipeline {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final List<Program> stages;
+    private final int tapeSize;
+    private final int bufferSize;
+
+    public Pipeline(List<Program> stages) {
+        this(stages, Tape.DEFAULT_SIZE, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param tapeSize   the size of each stage's fixed tape
+     * @param bufferSize the number of bytes a stage can print ahead of the next, a power of two
+     */
+    public Pipeline(List<Program> stages, int tapeSize, int bufferSize) {
+        if (stages.isEmpty())
+            throw new IllegalArgumentException("A pipeline needs at least one stage");
+        if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1)
+            throw new IllegalArgumentException("bufferSize must be a power of two");
+
+        this.stages = new ArrayList<>(stages);
+        this.tapeSize = tapeSize;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Runs every stage and waits for all of them to finish
+     *
+     * @throws IOException as thrown by the earliest stage that failed, or any other exception it threw
+     */
+    public void run(Input in, Output out) throws IOException, InterruptedException {
+        int last = stages.size() - 1;
+        RingBuffer[] buffers = new RingBuffer[last];
+        for (int i = 0; i < last; i++)
+            buffers[i] = new RingBuffer(bufferSize);
+
+        Throwable[] failures = new Throwable[stages.size()];
+        Thread[] threads = new Thread[stages.size()];
+        for (int i = 0; i <= last; i++) {
+            int stage = i;
+            Input input = stage == 0 ? in : buffers[stage - 1].input();
+            Output output = stage == last ? out : buffers[stage].output();
+
+            threads[stage] = new Thread(() -> {
+                try {
+                    new Machine(new Console(input, output), Tape.fixed(tapeSize)).execute(stages.get(stage));
+                } catch (BrokenPipeException e) {
+                    // the next stage has stopped, as a program writing to a closed pipe would
+                } catch (Throwable e) {
+                    failures[stage] = e;
+                } finally {
+                    if (stage > 0)
+                        buffers[stage - 1].closeInput();
+                    if (stage < last)
+                        buffers[stage].closeOutput();
+                }
+            }, "bf-pipeline-stage-" + stage);
+            threads[stage].setDaemon(true);
+            threads[stage].start();
+        }
+
+        try {
+            for (Thread thread : threads)
+                thread.join();
+        } catch (InterruptedException e) {
+            for (Thread thread : threads)
+                thread.interrupt();
+            throw e;
+        }
+
+        for (Throwable failure : failures) {
+            if (failure instanceof IOException)
+                throw (IOException) failure;
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            if (failure instanceof Error)
+                throw (Error) failure;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package io.github.djhworld.bf.pipeline;
+
+import io.github.djhworld.bf.vm.Input;
+import io.github.djhworld.bf.vm.Output;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded buffer of bytes handed from one thread, writing to {@link #output()}, to another, reading from
+ * {@link #input()}.
+ * <p>
+ * Both sides work on the buffer's array directly and keep their position to themselves, only publishing it to the
+ * other side once a quarter of the buffer has gone by, on {@link Output#flush()} and before they wait. So most
+ * bytes cost a plain array access and nothing else. A writer finding the buffer full waits for the reader to make
+ * room, and a reader finding it empty waits for the writer.
+ * <p>
+ * The writer ends the stream with {@link #closeOutput()}, after which the reader gets -1 once it has read what was
+ * left. The reader gives up on the stream with {@link #closeInput()}, after which writes fail with a
+ * {@link BrokenPipeException}.
+ */
+public final class RingBuffer {
+    // looking again a few times before parking pays off only when the other side can run at the same time
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+
+    private final byte[] buffer;
+    private final int mask;
+    private final int batch;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong read = new AtomicLong();
+    private volatile boolean outputClosed;
+    private volatile boolean inputClosed;
+    private volatile Thread waitingWriter;
+    private volatile Thread waitingReader;
+
+    private final Writer writer;
+    private final Reader reader;
+
+    /**
+     * @param capacity the number of bytes that can be written ahead of the reader, a power of two
+     */
+    public RingBuffer(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two");
+
+        this.buffer = new byte[capacity];
+        this.mask = capacity - 1;
+        this.batch = Math.max(capacity / 4, 1);
+        this.writer = new Writer();
+        this.reader = new Reader();
+    }
+
+    /**
+     * @return the writing side, to be used by a single thread
+     */
+    public Output output() {
+        return writer;
+    }
+
+    /**
+     * @return the reading side, to be used by a single thread
+     */
+    public Input input() {
+        return reader;
+    }
+
+    /**
+     * Publishes what has been written and ends the stream, called by the writing thread
+     */
+    public void closeOutput() {
+        writer.publish();
+        outputClosed = true;
+        LockSupport.unpark(waitingReader);
+    }
+
+    /**
+     * Tells the writer nothing more will be read, called by the reading thread
+     */
+    public void closeInput() {
+        inputClosed = true;
+        LockSupport.unpark(waitingWriter);
+    }
+
+    private final class Writer implements Output {
+        private long position;
+        private long published;
+        // the position the writer can go up to without looking at the reader again
+        private long limit = buffer.length;
+
+        @Override
+        public void write(byte value, int times) throws IOException {
+            while (times > 0) {
+                if (position == limit && (limit = read.get() + buffer.length) == position)
+                    awaitSpace();
+
+                int index = (int) position & mask;
+                int count = (int) Math.min(Math.min(times, limit - position), buffer.length - index);
+                if (count == 1) {
+                    buffer[index] = value;
+                } else {
+                    Arrays.fill(buffer, index, index + count, value);
+                }
+                position += count;
+                times -= count;
+
+                if (position - published >= batch)
+                    publish();
+            }
+        }
+
+        @Override
+        public void flush() {
+            publish();
+        }
+
+        private void publish() {
+            if (position == published)
+                return;
+
+            written.set(position);
+            published = position;
+            LockSupport.unpark(waitingReader);
+        }
+
+        private void awaitSpace() throws IOException {
+            publish();
+            for (int spin = 0; spin < SPINS && !inputClosed; spin++) {
+                if ((limit = read.get() + buffer.length) != position)
+                    return;
+            }
+
+            waitingWriter = Thread.currentThread();
+            try {
+                while ((limit = read.get() + buffer.length) == position) {
+                    if (inputClosed)
+                        throw new BrokenPipeException();
+                    LockSupport.park(this);
+                    if (Thread.interrupted())
+                        throw new InterruptedIOException("Interrupted waiting for the reader");
+                }
+            } finally {
+                waitingWriter = null;
+            }
+        }
+    }
+
+    private final class Reader implements Input {
+        private long position;
+        private long published;
+        // the position the reader can go up to without looking at the writer again
+        private long limit;
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && (limit = written.get()) == position && !awaitData())
+                return -1;
+
+            int value = buffer[(int) position & mask] & 0xFF;
+            if (++position - published >= batch)
+                publish();
+            return value;
+        }
+
+        @Override
+        public boolean wouldBlock() {
+            return position == limit && (limit = written.get()) == position;
+        }
+
+        private void publish() {
+            read.set(position);
+            published = position;
+            LockSupport.unpark(waitingWriter);
+        }
+
+        /**
+         * @return false once the writer has closed the stream and everything has been read
+         */
+        private boolean awaitData() throws IOException {
+            publish();
+            for (int spin = 0; spin < SPINS && !outputClosed; spin++) {
+                if ((limit = written.get()) != position)
+                    return true;
+            }
+
+            waitingReader = Thread.currentThread();
+            try {
+                while ((limit = written.get()) == position) {
+                    // anything written before closing is published first, so it is seen by the check above
+                    if (outputClosed && (limit = written.get()) == position)
+                        return false;
+                    LockSupport.park(this);
+                    if (Thread.interrupted())
+                        throw new InterruptedIOException("Interrupted waiting for the writer");
+                }
+                return true;
+            } finally {
+                waitingReader = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package io.github.djhworld.bf.service;
+
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.vm.Budget;
+import io.github.djhworld.bf.vm.BudgetExceededException;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Input;
+import io.github.djhworld.bf.vm.Machine;
+import io.github.djhworld.bf.vm.Output;
+import io.github.djhworld.bf.vm.Tape;
+import io.github.djhworld.bf.vm.TapePool;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * Runs one compiled program over a stream of independent records, each record being the whole input of one run
+ * and the output of that run becoming the matching output record.
+ * <p>
+ * Records are read in chunks of {@link #CHUNK_SIZE} and every chunk is run as one task on a work stealing
+ * ForkJoinPool, on a tape taken from a pool and cleared between records, so a worker keeps reusing the same tape.
+ * Outputs are written in the order of the records. Only a few chunks per worker are read ahead, so the memory
+ * used does not depend on the number of records.
+ * <p>
+ * Every record runs on a budget of its own, so one record that never finishes cannot hold up the ones after it.
+ * A record running past its budget gets an empty output and is reported as failed, the batch carries on.
+ */
+public class BatchRunner implements AutoCloseable {
+    public static final int CHUNK_SIZE = 256;
+
+    // chunks read ahead of the one being written, per worker
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final Program program;
+    private final ForkJoinPool pool;
+    private final TapePool tapes;
+    private final Supplier<Budget> budgets;
+
+    public BatchRunner(Program program) {
+        this(program, Tape.DEFAULT_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchRunner(Program program, int tapeSize, int parallelism) {
+        this(program, tapeSize, parallelism, () -> Budget.UNLIMITED);
+    }
+
+    /**
+     * @param tapeSize    the size of each worker's fixed tape
+     * @param parallelism the number of workers
+     * @param budgets     asked for a budget as each record starts, so a deadline can be set from then
+     */
+    public BatchRunner(Program program, int tapeSize, int parallelism, Supplier<Budget> budgets) {
+        this.program = program;
+        this.pool = new ForkJoinPool(parallelism);
+        this.tapes = new TapePool(tapeSize, parallelism);
+        this.budgets = budgets;
+    }
+
+    /**
+     * Reads records from the stream until it is exhausted and writes an output record for each, the streams are
+     * not closed
+     *
+     * @return the numbers of the records that ran past their budget, counting from 0
+     * @throws IOException or the exception a run failed with, once the outputs of the chunks before the failing
+     *                     record's chunk are written
+     */
+    public List<Long> run(InputStream in, OutputStream out, RecordFormat format) throws IOException, InterruptedException {
+        InputStream records = in instanceof BufferedInputStream ? in : new BufferedInputStream(in);
+        ArrayDeque<ForkJoinTask<Chunk>> pending = new ArrayDeque<>();
+        int readAhead = pool.getParallelism() * CHUNKS_PER_WORKER;
+        List<Long> failed = new ArrayList<>();
+        long written = 0;
+
+        try {
+            List<byte[]> chunk;
+            while (!(chunk = readChunk(records, format)).isEmpty()) {
+                if (pending.size() == readAhead)
+                    written = write(await(pending.removeFirst()), written, out, failed);
+                List<byte[]> inputs = chunk;
+                pending.addLast(pool.submit(() -> runChunk(inputs, format)));
+            }
+            while (!pending.isEmpty())
+                written = write(await(pending.removeFirst()), written, out, failed);
+        } finally {
+            for (ForkJoinTask<Chunk> task : pending)
+                task.cancel(false);
+        }
+        return failed;
+    }
+
+    /**
+     * @return the number of records written so far, including the chunk's
+     */
+    private static long write(Chunk chunk, long written, OutputStream out, List<Long> failed) throws IOException {
+        out.write(chunk.framed);
+        for (int record : chunk.failed)
+            failed.add(written + record);
+        return written + chunk.size;
+    }
+
+    /**
+     * @return the output of each input in the same order, null for those that ran past their budget
+     */
+    public List<byte[]> run(List<byte[]> inputs) throws IOException, InterruptedException {
+        List<ForkJoinTask<List<byte[]>>> chunks = new ArrayList<>();
+        for (int start = 0; start < inputs.size(); start += CHUNK_SIZE) {
+            List<byte[]> chunk = inputs.subList(start, Math.min(start + CHUNK_SIZE, inputs.size()));
+            chunks.add(pool.submit(() -> runChunk(chunk)));
+        }
+
+        List<byte[]> outputs = new ArrayList<>(inputs.size());
+        for (ForkJoinTask<List<byte[]>> chunk : chunks)
+            outputs.addAll(await(chunk));
+        return outputs;
+    }
+
+    private static List<byte[]> readChunk(InputStream in, RecordFormat format) throws IOException {
+        List<byte[]> chunk = new ArrayList<>(CHUNK_SIZE);
+        byte[] record;
+        while (chunk.size() < CHUNK_SIZE && (record = format.read(in)) != null)
+            chunk.add(record);
+        return chunk;
+    }
+
+    private Chunk runChunk(List<byte[]> inputs, RecordFormat format) throws IOException {
+        ByteArrayOutputStream framed = new ByteArrayOutputStream(inputs.size() * 16);
+        List<Integer> failed = new ArrayList<>();
+        run(inputs, (record, output, length) -> {
+            if (output == null) {
+                failed.add(record);
+                format.write(framed, new byte[0], 0);
+            } else {
+                format.write(framed, output, length);
+            }
+        });
+        return new Chunk(framed.toByteArray(), inputs.size(), failed);
+    }
+
+    private List<byte[]> runChunk(List<byte[]> inputs) throws IOException {
+        List<byte[]> outputs = new ArrayList<>(inputs.size());
+        run(inputs, (record, output, length) -> outputs.add(output == null ? null : Arrays.copyOf(output, length)));
+        return outputs;
+    }
+
+    private void run(List<byte[]> inputs, Collector collector) throws IOException {
+        RecordInput input = new RecordInput();
+        RecordOutput output = new RecordOutput();
+        Console console = new Console(input, output);
+        Tape tape = tapes.acquire();
+        try {
+            Machine machine = new Machine(console, tape);
+            for (int i = 0; i < inputs.size(); i++) {
+                input.record = inputs.get(i);
+                input.position = 0;
+                output.length = 0;
+                tape.clear();
+                machine.reset();
+                machine.setBudget(budgets.get());
+
+                try {
+                    machine.execute(program);
+                    collector.collect(i, output.bytes, output.length);
+                } catch (BudgetExceededException e) {
+                    collector.collect(i, null, 0);
+                }
+            }
+        } finally {
+            tapes.release(tape);
+        }
+    }
+
+    private static <T> T await(ForkJoinTask<T> task) throws IOException, InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Stops the workers, a batch still running fails
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private interface Collector {
+        /**
+         * @param output null if the record ran past its budget
+         */
+        void collect(int record, byte[] output, int length);
+    }
+
+    private static class Chunk {
+        private final byte[] framed;
+        private final int size;
+        // the records within the chunk that ran past their budget
+        private final List<Integer> failed;
+
+        Chunk(byte[] framed, int size, List<Integer> failed) {
+            this.framed = framed;
+            this.size = size;
+            this.failed = failed;
+        }
+    }
+
+    private static class RecordInput implements Input {
+        private byte[] record;
+        private int position;
+
+        @Override
+        public int read() {
+            return position < record.length ? record[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public boolean wouldBlock() {
+            return false;
+        }
+    }
+
+    private static class RecordOutput implements Output {
+        private byte[] bytes = new byte[256];
+        private int length;
+
+        @Override
+        public void write(byte value, int times) {
+            if (length + times > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + times));
+            Arrays.fill(bytes, length, length + times, value);
+            length += times;
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.djhworld.bf.service;
+
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.compile.CachingCompiler;
+import io.github.djhworld.bf.compile.Compiler;
+import io.github.djhworld.bf.vm.Budget;
+import io.github.djhworld.bf.vm.BufferedInput;
+import io.github.djhworld.bf.vm.BufferedOutput;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Machine;
+import io.github.djhworld.bf.vm.Tape;
+import io.github.djhworld.bf.vm.TapePool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs many (program, input) jobs concurrently, each on its own interpreter with a tape taken from a shared pool.
+ * <p>
+ * Sources are compiled through a {@link CachingCompiler} by default, so jobs running the same source share a
+ * single compiled program. Jobs can also be given an already compiled {@link Program}, which is never modified
+ * and can be shared freely.
+ * <p>
+ * The default executor runs every job on its own virtual thread when the JVM supports them, and otherwise on a
+ * ForkJoinPool with one thread per processor.
+ */
+public class ExecutionService implements AutoCloseable {
+    public static final int DEFAULT_MAX_IDLE_TAPES = 1024;
+
+    private final Compiler compiler;
+    private final ExecutorService executor;
+    private final TapePool tapes;
+
+    public ExecutionService() {
+        this(new CachingCompiler(CachingCompiler.DEFAULT_MAX_ENTRIES), defaultExecutor(),
+                new TapePool(Tape.DEFAULT_SIZE, DEFAULT_MAX_IDLE_TAPES));
+    }
+
+    public ExecutionService(Compiler compiler, ExecutorService executor, TapePool tapes) {
+        this.compiler = compiler;
+        this.executor = executor;
+        this.tapes = tapes;
+    }
+
+    /**
+     * @return an executor starting a virtual thread per job where available (Java 21 onwards), otherwise a
+     * ForkJoinPool bounded to the number of processors
+     */
+    public static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Compiles and runs the source, the future fails with the CompileException if it does not compile
+     */
+    public CompletableFuture<JobResult> submit(String source, byte[] input) {
+        return submit(source, input, Budget.UNLIMITED);
+    }
+
+    public CompletableFuture<JobResult> submit(Program program, byte[] input) {
+        return submit(program, input, Budget.UNLIMITED);
+    }
+
+    /**
+     * Like {@link #submit(String, byte[])}, the future fails with a BudgetExceededException if the program runs
+     * past the budget
+     */
+    public CompletableFuture<JobResult> submit(String source, byte[] input, Budget budget) {
+        return submit(source, null, input, budget);
+    }
+
+    public CompletableFuture<JobResult> submit(Program program, byte[] input, Budget budget) {
+        return submit(null, program, input, budget);
+    }
+
+    private CompletableFuture<JobResult> submit(String source, Program program, byte[] input, Budget budget) {
+        CompletableFuture<JobResult> result = new CompletableFuture<>();
+        long submitted = System.nanoTime();
+
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(run(source, program, input, budget, submitted));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+
+    private JobResult run(String source, Program program, byte[] input, Budget budget, long submitted) throws Exception {
+        long started = System.nanoTime();
+        long compiled = started;
+        if (program == null) {
+            program = compiler.compileToProgram(source);
+            compiled = System.nanoTime();
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Console console = new Console(new BufferedInput(new ByteArrayInputStream(input)), new BufferedOutput(output));
+        Tape tape = tapes.acquire();
+        try {
+            Machine machine = new Machine(console, tape);
+            machine.setBudget(budget);
+            machine.execute(program);
+        } finally {
+            tapes.release(tape);
+        }
+        long finished = System.nanoTime();
+
+        return new JobResult(output.toByteArray(), started - submitted, compiled - started, finished - compiled);
+    }
+
+    /**
+     * Stops accepting jobs, the ones already submitted still run
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
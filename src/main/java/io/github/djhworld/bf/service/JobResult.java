@@ -0,0 +1,44 @@
+package io.github.djhworld.bf.service;
+
+/**
+ * Output and timings of a job run by {@link ExecutionService}, all times are in nanoseconds
+ */
+public final class JobResult {
+    private final byte[] output;
+    private final long queueTime;
+    private final long compileTime;
+    private final long executionTime;
+
+    JobResult(byte[] output, long queueTime, long compileTime, long executionTime) {
+        this.output = output;
+        this.queueTime = queueTime;
+        this.compileTime = compileTime;
+        this.executionTime = executionTime;
+    }
+
+    public byte[] getOutput() {
+        return output.clone();
+    }
+
+    public int getOutputLength() {
+        return output.length;
+    }
+
+    /**
+     * @return the time between submitting the job and a thread starting on it
+     */
+    public long getQueueTime() {
+        return queueTime;
+    }
+
+    /**
+     * @return the time taken to compile the source, zero for jobs submitted with a compiled program
+     */
+    public long getCompileTime() {
+        return compileTime;
+    }
+
+    public long getExecutionTime() {
+        return executionTime;
+    }
+}
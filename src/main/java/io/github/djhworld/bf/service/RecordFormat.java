@@ -0,0 +1,92 @@
+package io.github.djhworld.bf.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * How the records read and written by {@link BatchRunner} are told apart in a stream of bytes
+ */
+public enum RecordFormat {
+    /**
+     * Every record ends with a newline, which is not part of it. The last record can leave it out.
+     * <p>
+     * Outputs are not escaped, so they only line up with their records when the program never prints a newline.
+     * Use {@link #LENGTH_PREFIXED} for anything else.
+     */
+    LINES {
+        @Override
+        public byte[] read(InputStream in) throws IOException {
+            ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+            int b;
+            while ((b = in.read()) != -1 && b != '\n')
+                record.write(b);
+            return b == -1 && record.size() == 0 ? null : record.toByteArray();
+        }
+
+        @Override
+        void write(ByteArrayOutputStream out, byte[] record, int length) {
+            out.write(record, 0, length);
+            out.write('\n');
+        }
+    },
+
+    /**
+     * Every record is preceded by its length as a four byte big endian int
+     */
+    LENGTH_PREFIXED {
+        @Override
+        public byte[] read(InputStream in) throws IOException {
+            int first = in.read();
+            if (first == -1)
+                return null;
+
+            int length = first << 24 | readByte(in) << 16 | readByte(in) << 8 | readByte(in);
+            if (length < 0)
+                throw new IOException("Invalid record length " + length);
+
+            // the length is not trusted, the record only grows as its bytes arrive
+            byte[] record = new byte[Math.min(length, INITIAL_RECORD_SIZE)];
+            for (int read = 0; read < length; ) {
+                if (read == record.length)
+                    record = Arrays.copyOf(record, (int) Math.min(record.length * 2L, length));
+                int count = in.read(record, read, record.length - read);
+                if (count == -1)
+                    throw new EOFException("Truncated record, expected " + length + " bytes but the input ended after "
+                            + read + ", is it length prefixed?");
+                read += count;
+            }
+            return record;
+        }
+
+        @Override
+        void write(ByteArrayOutputStream out, byte[] record, int length) {
+            out.write(length >>> 24);
+            out.write(length >>> 16);
+            out.write(length >>> 8);
+            out.write(length);
+            out.write(record, 0, length);
+        }
+
+        private int readByte(InputStream in) throws IOException {
+            int b = in.read();
+            if (b == -1)
+                throw new EOFException("Truncated record length");
+            return b;
+        }
+    };
+
+    private static final int INITIAL_RECORD_SIZE = 1 << 16;
+
+    /**
+     * @return the next record, or null once the stream is exhausted
+     */
+    public abstract byte[] read(InputStream in) throws IOException;
+
+    /**
+     * Writes the first length bytes of the record along with whatever marks its end
+     */
+    abstract void write(ByteArrayOutputStream out, byte[] record, int length);
+}
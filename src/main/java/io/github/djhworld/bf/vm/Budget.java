@@ -0,0 +1,76 @@
+package io.github.djhworld.bf.vm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on how much a program may do before the machine gives up on it with a {@link BudgetExceededException}.
+ * <p>
+ * Budgets are immutable, each with method returns a new budget. Operations are counted at loop back-edges:
+ * every time a loop goes round, the number of operations in one pass of its body is charged. The last pass of
+ * each loop and code outside of loops are not charged, so the count bounds the work a program does rather than
+ * measuring it exactly. The deadline and cancellation token are looked at every {@link #CHECK_INTERVAL} charged
+ * operations.
+ */
+public final class Budget {
+    public static final long CHECK_INTERVAL = 1 << 16;
+    public static final Budget UNLIMITED = new Budget(Long.MAX_VALUE, Long.MAX_VALUE, false, null);
+
+    private final long maxOperations;
+    private final long deadline;
+    private final boolean hasDeadline;
+    private final CancellationToken cancellation;
+
+    private Budget(long maxOperations, long deadline, boolean hasDeadline, CancellationToken cancellation) {
+        this.maxOperations = maxOperations;
+        this.deadline = deadline;
+        this.hasDeadline = hasDeadline;
+        this.cancellation = cancellation;
+    }
+
+    public Budget withMaxOperations(long maxOperations) {
+        if (maxOperations < 0)
+            throw new IllegalArgumentException("maxOperations must not be negative");
+
+        return new Budget(maxOperations, deadline, hasDeadline, cancellation);
+    }
+
+    /**
+     * @param deadline a time as returned by {@link System#nanoTime()}
+     */
+    public Budget withDeadline(long deadline) {
+        return new Budget(maxOperations, deadline, true, cancellation);
+    }
+
+    /**
+     * Sets the deadline to the given time from now
+     */
+    public Budget withTimeout(long timeout, TimeUnit unit) {
+        return withDeadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    public Budget withCancellation(CancellationToken cancellation) {
+        return new Budget(maxOperations, deadline, hasDeadline, cancellation);
+    }
+
+    public long maxOperations() {
+        return maxOperations;
+    }
+
+    /**
+     * @return true when the deadline or the cancellation token have to be looked at while running
+     */
+    boolean isPolled() {
+        return hasDeadline || cancellation != null;
+    }
+
+    BudgetExceededException.Reason check(long operations) {
+        if (operations > maxOperations)
+            return BudgetExceededException.Reason.OPERATIONS;
+        if (cancellation != null && cancellation.isCancelled())
+            return BudgetExceededException.Reason.CANCELLED;
+        // compared as a difference as nanoTime may wrap around
+        if (hasDeadline && System.nanoTime() - deadline >= 0)
+            return BudgetExceededException.Reason.DEADLINE;
+        return null;
+    }
+}
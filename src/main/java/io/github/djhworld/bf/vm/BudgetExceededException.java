@@ -0,0 +1,48 @@
+package io.github.djhworld.bf.vm;
+
+/**
+ * Raised when a program runs past its {@link Budget}.
+ * <p>
+ * The machine keeps its state, so the program can be carried on from where it stopped by calling execute again
+ * with a larger budget.
+ */
+public class BudgetExceededException extends RuntimeException {
+    public enum Reason {
+        OPERATIONS,
+        DEADLINE,
+        CANCELLED
+    }
+
+    private final Reason reason;
+    private final int instructionPointer;
+    private final int dataPointer;
+    private final long operations;
+
+    public BudgetExceededException(Reason reason, int instructionPointer, int dataPointer, long operations) {
+        super("Budget exceeded (" + reason + ") after " + operations + " operations at instruction " + instructionPointer
+                + ", data pointer " + dataPointer);
+        this.reason = reason;
+        this.instructionPointer = instructionPointer;
+        this.dataPointer = dataPointer;
+        this.operations = operations;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public int getInstructionPointer() {
+        return instructionPointer;
+    }
+
+    public int getDataPointer() {
+        return dataPointer;
+    }
+
+    /**
+     * @return the operations charged up to the back-edge that was refused, see {@link Budget}
+     */
+    public long getOperations() {
+        return operations;
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.djhworld.bf.vm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads from a stream or channel in blocks and hands the bytes out one at a time
+ */
+public class BufferedInput implements Input {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final ReadableByteChannel channel;
+    private final InputStream stream;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+
+    public BufferedInput(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BufferedInput(InputStream in, int bufferSize) {
+        this(null, in, bufferSize);
+    }
+
+    public BufferedInput(ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BufferedInput(ReadableByteChannel channel, int bufferSize) {
+        this(channel, null, bufferSize);
+    }
+
+    private BufferedInput(ReadableByteChannel channel, InputStream stream, int bufferSize) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be at least 1");
+
+        this.channel = channel;
+        this.stream = stream;
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !fill())
+            return -1;
+
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * @return whether nothing is left in the buffer, so the next read goes to the stream or channel
+     */
+    @Override
+    public boolean wouldBlock() {
+        return position == limit;
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = stream != null
+                    ? stream.read(buffer, 0, buffer.length)
+                    : channel.read(ByteBuffer.wrap(buffer));
+        } while (read == 0);
+
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+}
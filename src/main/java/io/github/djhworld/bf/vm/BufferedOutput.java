@@ -0,0 +1,80 @@
+package io.github.djhworld.bf.vm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Collects output in a buffer and hands it to a channel in blocks, either when the buffer
+ * is full or when {@link #flush()} is called.
+ */
+public class BufferedOutput implements Output {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final WritableByteChannel channel;
+    private final OutputStream stream;
+    private final byte[] buffer;
+    private int position;
+
+    public BufferedOutput(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BufferedOutput(OutputStream out, int bufferSize) {
+        this(null, out, bufferSize);
+    }
+
+    public BufferedOutput(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BufferedOutput(WritableByteChannel channel, int bufferSize) {
+        this(channel, null, bufferSize);
+    }
+
+    private BufferedOutput(WritableByteChannel channel, OutputStream stream, int bufferSize) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be at least 1");
+
+        this.channel = channel;
+        this.stream = stream;
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public void write(byte value, int times) throws IOException {
+        while (times > 0) {
+            if (position == buffer.length)
+                drain();
+
+            int count = Math.min(times, buffer.length - position);
+            if (count == 1) {
+                buffer[position] = value;
+            } else {
+                Arrays.fill(buffer, position, position + count, value);
+            }
+            position += count;
+            times -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (stream != null)
+            stream.flush();
+    }
+
+    private void drain() throws IOException {
+        if (stream != null) {
+            stream.write(buffer, 0, position);
+        } else {
+            ByteBuffer pending = ByteBuffer.wrap(buffer, 0, position);
+            while (pending.hasRemaining())
+                channel.write(pending);
+        }
+        position = 0;
+    }
+}
@@ -0,0 +1,16 @@
+package io.github.djhworld.bf.vm;
+
+/**
+ * Lets another thread stop a running program, the machine notices at its next budget check
+ */
+public final class CancellationToken {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
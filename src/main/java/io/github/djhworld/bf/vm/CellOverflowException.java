@@ -0,0 +1,17 @@
+package io.github.djhworld.bf.vm;
+
+/**
+ * Raised by a machine using {@link OverflowPolicy#ERROR} when a cell is taken out of its range
+ */
+public class CellOverflowException extends RuntimeException {
+    private final int position;
+
+    public CellOverflowException(String message, int position) {
+        super(message);
+        this.position = position;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+}
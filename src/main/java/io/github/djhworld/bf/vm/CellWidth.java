@@ -0,0 +1,26 @@
+package io.github.djhworld.bf.vm;
+
+/**
+ * Number of bits held by each cell of the tape, cells are treated as unsigned
+ */
+public enum CellWidth {
+    EIGHT(8),
+    SIXTEEN(16),
+    THIRTY_TWO(32);
+
+    public final int bits;
+    public final long maxValue;
+
+    CellWidth(int bits) {
+        this.bits = bits;
+        this.maxValue = (1L << bits) - 1;
+    }
+
+    public static CellWidth ofBits(int bits) {
+        for (CellWidth width : values()) {
+            if (width.bits == bits)
+                return width;
+        }
+        throw new IllegalArgumentException("Unsupported cell width: " + bits);
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.djhworld.bf.vm;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.Program;
+
+import java.io.IOException;
+import java.util.List;
+
+import static io.github.djhworld.bf.Program.*;
+
+/**
+ * Machine for the {@link OverflowPolicy#SATURATE} and {@link OverflowPolicy#ERROR} policies, at any {@link CellWidth}.
+ * <p>
+ * Cells are held in an int[] and every change to a cell is range checked, so this is slower than the wrapping
+ * machines. Programs must be compiled without relying on wrap around, see
+ * {@link io.github.djhworld.bf.compile.Compiler#Compiler(boolean)}.
+ */
+public class CheckedMachine implements Engine {
+    private final int[] memory;
+    private final Console console;
+    private final CellWidth width;
+    private final boolean saturate;
+    private int dataPointer;
+    private int instructionPointer;
+
+    public CheckedMachine(Console console, int[] memory, CellWidth width, OverflowPolicy policy) {
+        if (policy == OverflowPolicy.WRAP)
+            throw new IllegalArgumentException("Use a wrapping machine for " + policy);
+
+        this.console = console;
+        this.memory = memory;
+        this.width = width;
+        this.saturate = policy == OverflowPolicy.SATURATE;
+        this.dataPointer = 0;
+        this.instructionPointer = 0;
+    }
+
+    @Override
+    public void execute(List<Operation> operations) throws IllegalArgumentException, IOException {
+        execute(Program.of(operations));
+    }
+
+    public void execute(Program program) throws IllegalArgumentException, IOException {
+        final int[] opcodes = program.opcodes;
+        final int[] arguments = program.arguments;
+        final int[] offsets = program.offsets;
+        final int[] memory = this.memory;
+        final Console console = this.console;
+        int ip = instructionPointer;
+        int dp = dataPointer;
+        int position;
+
+        try {
+            while (ip < opcodes.length) {
+                switch (opcodes[ip]) {
+                    case INC_DP:
+                        dp += arguments[ip];
+                        break;
+                    case DEC_DP:
+                        dp -= arguments[ip];
+                        break;
+                    case INC:
+                        position = dp + offsets[ip];
+                        memory[position] = check(position, unsigned(memory[position]) + arguments[ip]);
+                        break;
+                    case DEC:
+                        position = dp + offsets[ip];
+                        memory[position] = check(position, unsigned(memory[position]) - arguments[ip]);
+                        break;
+                    case PRINT:
+                        console.print((byte) memory[dp + offsets[ip]], arguments[ip]);
+                        break;
+                    case READ:
+                        memory[dp + offsets[ip]] = console.read(memory[dp + offsets[ip]], arguments[ip]);
+                        break;
+                    case JUMP_IF_ZERO:
+                        if (memory[dp] == 0) ip = arguments[ip];
+                        break;
+                    case JUMP_IF_NOT_ZERO:
+                        if (memory[dp] != 0) ip = arguments[ip];
+                        break;
+                    case SET_ZERO:
+                        memory[dp + offsets[ip]] = 0;
+                        break;
+                    case SCAN_LEFT:
+                        while (memory[dp] != 0) dp -= arguments[ip];
+                        break;
+                    case SCAN_RIGHT:
+                        while (memory[dp] != 0) dp += arguments[ip];
+                        break;
+                    case MUL_ADD:
+                        // the loop this replaces only ever moved the target one way, so checking the end result is enough
+                        long counter = unsigned(memory[dp]);
+                        if (counter != 0) {
+                            position = dp + offsets[ip];
+                            memory[position] = check(position, unsigned(memory[position]) + counter * arguments[ip]);
+                        }
+                        break;
+                }
+
+                ip++;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw TapeException.outside(program, ip, dp, memory.length);
+        } finally {
+            this.instructionPointer = ip;
+            this.dataPointer = dp;
+            console.flush();
+        }
+    }
+
+    private static long unsigned(int cell) {
+        return cell & 0xFFFFFFFFL;
+    }
+
+    private int check(int position, long value) {
+        if (value >= 0 && value <= width.maxValue)
+            return (int) value;
+
+        if (!saturate)
+            throw new CellOverflowException("Cell " + position + " overflowed " + width.bits + " bits with value " + value, position);
+
+        return value < 0 ? 0 : (int) width.maxValue;
+    }
+
+    int getDataPointer() {
+        return dataPointer;
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.djhworld.bf.vm;
+
+import java.io.IOException;
+
+/**
+ * Carries out the PRINT and READ instructions for an engine.
+ * <p>
+ * Pending output is flushed before a read that may have to wait for input, so a prompt is visible before the
+ * program blocks. Reads of input already buffered leave the output alone.
+ */
+public final class Console {
+    private final Input in;
+    private final Output out;
+
+    public Console(Input in, Output out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    public void print(byte value, int times) throws IOException {
+        out.write(value, times);
+    }
+
+    /**
+     * @return the new value of the cell, which is the current value if there was nothing to read
+     */
+    public byte read(byte current, int times) throws IOException {
+        for (int i = 0; i < times; i++) {
+            if (in.wouldBlock())
+                out.flush();
+            int read = in.read();
+            if (read != -1) {
+                current = (byte) read;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * The same as {@link #read(byte, int)} for cells wider than a byte, a value read is between 0 and 255
+     */
+    public int read(int current, int times) throws IOException {
+        for (int i = 0; i < times; i++) {
+            if (in.wouldBlock())
+                out.flush();
+            int read = in.read();
+            if (read != -1) {
+                current = read;
+            }
+        }
+        return current;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.djhworld.bf.vm;
+
+import io.github.djhworld.bf.Operation;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Something that can execute the operations produced by {@link io.github.djhworld.bf.compile.Compiler}
+ */
+public interface Engine {
+    void execute(List<Operation> operations) throws IllegalArgumentException, IOException;
+}
@@ -0,0 +1,20 @@
+package io.github.djhworld.bf.vm;
+
+import java.io.IOException;
+
+/**
+ * Source of the bytes consumed by the READ instruction
+ */
+public interface Input {
+    /**
+     * @return the next byte as an int between 0 and 255, or -1 once the input is exhausted
+     */
+    int read() throws IOException;
+
+    /**
+     * @return whether the next read may have to wait for more input, which is assumed unless the input knows better
+     */
+    default boolean wouldBlock() {
+        return true;
+    }
+}
@@ -1,98 +1,617 @@
 package io.github.djhworld.bf.vm;
 
 import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.ProgramImage;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 
-public class Machine {
-    private final byte[] memory;
-    private final InputStream in;
-    private final PrintStream out;
+import static io.github.djhworld.bf.Program.*;
+
+/**
+ * The interpreter.
+ * <p>
+ * A machine carries its data and instruction pointers over from one call of execute to the next, so a program
+ * can be run in parts. Use {@link #reset()} to start over on the same tape, or {@link #reset(Console, Tape)}
+ * to reuse the machine for another run altogether.
+ * <p>
+ * A {@link Budget} set with {@link #setBudget(Budget)} is charged at loop back-edges only. Running past it stops
+ * the program with a {@link BudgetExceededException}, leaving the machine where it stopped so that it can carry on
+ * under a new budget.
+ */
+public class Machine implements Engine {
+    private Tape tape;
+    private Console console;
     private int dataPointer;
     private int instructionPointer;
+    private Budget budget = Budget.UNLIMITED;
+    private long operations;
+    // charged at back-edges, a checkpoint is due once it drops below zero
+    private long fuel;
+    private long armedFuel;
 
     public Machine(InputStream in, PrintStream out, byte[] memory) {
-        this.in = in;
-        this.out = out;
-        this.memory = memory;
+        this(new StreamInput(in), new PrintStreamOutput(out), memory);
+    }
+
+    public Machine(Input in, Output out, byte[] memory) {
+        this(new Console(in, out), memory);
+    }
+
+    public Machine(Console console, byte[] memory) {
+        this(console, new Tape(memory, TapePolicy.FIXED));
+    }
+
+    public Machine(Console console, Tape tape) {
+        this.console = console;
+        this.tape = tape;
+        this.dataPointer = 0;
+        this.instructionPointer = 0;
+    }
+
+    /**
+     * Moves both pointers back to the start and forgets the operations charged so far, the tape is left as it is
+     */
+    public void reset() {
         this.dataPointer = 0;
         this.instructionPointer = 0;
+        this.operations = 0;
+    }
+
+    /**
+     * Sets the budget for the following calls of execute, operations already charged count towards it
+     */
+    public void setBudget(Budget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return the operations charged against the budget since the machine was created or last reset
+     */
+    public long getOperations() {
+        return operations;
+    }
+
+    /**
+     * Binds the machine to another console and tape and moves both pointers back to the start
+     */
+    public void reset(Console console, Tape tape) {
+        this.console = console;
+        this.tape = tape;
+        reset();
+    }
+
+    /**
+     * Takes a copy of the machine's state, to be put back later with {@link #restore(Program, Snapshot)}.
+     * <p>
+     * Only the machine is captured, not the console, so input already consumed is not part of the snapshot.
+     * It should be taken between calls of execute, for instance once a {@link BudgetExceededException} has
+     * stopped the program.
+     *
+     * @param program the program being run, the snapshot can only be restored for the same program
+     * @throws IllegalStateException if the machine runs on a {@link PagedTape}, which would have to be copied out
+     *                               into one array up to its last page
+     */
+    public Snapshot snapshot(Program program) {
+        if (tape instanceof PagedTape)
+            throw new IllegalStateException("Snapshots need a flat tape, not a paged one");
+
+        byte[] cells = tape.cells();
+        int length = Math.min(tape.highWater(), cells.length);
+        while (length > 0 && cells[length - 1] == 0)
+            length--;
+
+        return new Snapshot(program.digest(), instructionPointer, dataPointer, operations, Arrays.copyOf(cells, length));
     }
 
+    /**
+     * Puts the machine back in the state of the snapshot, the tape is cleared and the snapshot's cells written
+     * through its policy, so a fixed tape must be large enough to hold them
+     *
+     * @throws IllegalArgumentException if the snapshot was taken while running another program
+     */
+    public void restore(Program program, Snapshot snapshot) {
+        if (!snapshot.belongsTo(program.digest()))
+            throw new IllegalArgumentException("Snapshot was taken from a different program");
+
+        byte[] cells = snapshot.cells();
+        tape.clear();
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != 0)
+                tape.set(i, cells[i]);
+        }
+
+        this.instructionPointer = snapshot.getInstructionPointer();
+        this.dataPointer = snapshot.getDataPointer();
+        this.operations = snapshot.getOperations();
+    }
+
+    @Override
     public void execute(List<Operation> operations) throws IllegalArgumentException, IOException {
-        while (instructionPointer < operations.size()) {
-            Operation operation = operations.get(instructionPointer);
+        execute(Program.of(operations));
+    }
+
+    /**
+     * Executes the packed form of a program, flushing any buffered output once it exits.
+     * <p>
+     * The main loop works on the tape's array without any checks of its own. When an operation addresses
+     * a cell outside the array that single operation is carried out through the tape's policy instead, the tape
+     * is asked to cover the data pointer with its array, see {@link Tape#focus(int)}, and the main loop picks up
+     * again from the next one.
+     * <p>
+     * Afterwards the tape is told how far into it the program may have written, see {@link #reach(Program)}.
+     */
+    public void execute(Program program) throws IllegalArgumentException, IOException {
+        int reach = instructionPointer == 0 ? reach(program) : -1;
+        long touched = reach == -1 ? Integer.MAX_VALUE : (long) dataPointer + reach;
+        boolean budgeted = budget != Budget.UNLIMITED;
+        int[] costs = budgeted ? costs(program) : null;
+        arm();
+
+        try {
+            while (!(budgeted ? runWithinBudget(program, costs) : run(program))) {
+                int ip = instructionPointer;
+                executeOutsideTape(program.opcodes[ip], program.arguments[ip], program.offsets[ip]);
+            }
+        } finally {
+            if (budgeted)
+                operations += armedFuel - Math.max(fuel, 0);
+            tape.touch((int) Math.min(touched, Integer.MAX_VALUE));
+            console.flush();
+        }
+    }
+
+    /**
+     * Executes a program image where it lies, reading each operation from the image's buffer as it goes, so a
+     * mapped image is never copied onto the heap.
+     * <p>
+     * Out of the tape's array this behaves as {@link #execute(Program)} does. Since nothing is worked out ahead
+     * of running, the tape is told the program may have written anywhere. Operations with a wide offset always take
+     * the slow path. A budget needs the array form, which the image is copied into first.
+     */
+    public void execute(ProgramImage image) throws IllegalArgumentException, IOException {
+        if (budget != Budget.UNLIMITED) {
+            execute(image.toProgram());
+            return;
+        }
+
+        try {
+            while (!run(image)) {
+                long operation = image.operation(instructionPointer);
+                executeOutsideTape(ProgramImage.opcode(operation), ProgramImage.argument(operation),
+                        image.offset(instructionPointer));
+            }
+        } finally {
+            tape.touch(Integer.MAX_VALUE);
+            console.flush();
+        }
+    }
+
+    /**
+     * Works out ahead of running a program how many cells past the starting data pointer it can write to.
+     * <p>
+     * Tracking the data pointer while running would slow down the main loop, but when every loop leaves the data
+     * pointer where it found it, the data pointer at each operation is known without running anything.
+     *
+     * @return the number of cells, or -1 when it depends on the data, because of a scan, a loop that moves the
+     * data pointer or a write to the left of the start
+     */
+    static int reach(Program program) {
+        final int[] opcodes = program.opcodes;
+        final int[] arguments = program.arguments;
+        final int[] offsets = program.offsets;
+        long[] loopStarts = new long[opcodes.length];
+        long dp = 0;
+        long reach = 0;
 
-            switch (operation.instruction) {
+        for (int i = 0; i < opcodes.length; i++) {
+            switch (opcodes[i]) {
                 case INC_DP:
-                    dataPointer += operation.argument;
+                    dp += arguments[i];
                     break;
                 case DEC_DP:
-                    dataPointer -= operation.argument;
+                    dp -= arguments[i];
                     break;
                 case INC:
-                    increment(operation.argument);
-                    break;
                 case DEC:
-                    decrement(operation.argument);
-                    break;
-                case PRINT:
-                    putChar(operation.argument);
-                    break;
                 case READ:
-                    readChar(operation.argument);
+                case SET_ZERO:
+                case MUL_ADD:
+                    long position = dp + offsets[i];
+                    if (position < 0)
+                        return -1;
+                    reach = Math.max(reach, position + 1);
                     break;
                 case JUMP_IF_ZERO:
-                    if (read() == 0) jump(operation.argument);
+                    loopStarts[i] = dp;
                     break;
                 case JUMP_IF_NOT_ZERO:
-                    if (read() != 0) jump(operation.argument);
+                    if (loopStarts[arguments[i]] != dp)
+                        return -1;
                     break;
+                case SCAN_LEFT:
+                case SCAN_RIGHT:
+                    return -1;
             }
+        }
+
+        return (int) Math.min(reach, Integer.MAX_VALUE);
+    }
 
-            instructionPointer++;
+    /**
+     * Works out what one pass of each loop costs, that is the operations of its body outside of any inner loop,
+     * counting the JUMP_IF_ZERO of each inner loop and its own JUMP_IF_NOT_ZERO.
+     *
+     * @return the costs indexed by the position of each loop's JUMP_IF_NOT_ZERO
+     */
+    static int[] costs(Program program) {
+        final int[] opcodes = program.opcodes;
+        int[] costs = new int[opcodes.length];
+        // operations counted so far for each loop open at the current position, innermost last
+        int[] counts = new int[opcodes.length];
+        int depth = 0;
+
+        for (int i = 0; i < opcodes.length; i++) {
+            if (depth > 0)
+                counts[depth - 1]++;
+
+            if (opcodes[i] == JUMP_IF_ZERO)
+                counts[depth++] = 0;
+            else if (opcodes[i] == JUMP_IF_NOT_ZERO && depth > 0)
+                costs[i] = counts[--depth];
         }
+        return costs;
     }
 
-    int getDataPointer() {
-        return dataPointer;
+    private void arm() {
+        long left = Math.max(budget.maxOperations() - operations, 0);
+        this.armedFuel = budget.isPolled() ? Math.min(left, Budget.CHECK_INTERVAL) : left;
+        this.fuel = armedFuel;
+    }
+
+    /**
+     * Called from a back-edge once the fuel has run out, either throws or arms the fuel for the next stretch.
+     * <p>
+     * A back-edge that is refused isn't counted, it is taken and charged again when the program carries on.
+     *
+     * @param fuel the fuel left after charging the back-edge
+     * @return the fuel for the next stretch
+     */
+    private long checkpoint(int ip, int dp, long fuel, int cost) {
+        long charged = operations + armedFuel - fuel;
+        BudgetExceededException.Reason reason = budget.check(charged);
+        if (reason != null) {
+            this.operations = charged - cost;
+            // the fuel is spent, nothing more to add to the operations when execute exits
+            this.armedFuel = 0;
+            throw new BudgetExceededException(reason, ip, dp, operations);
+        }
+
+        this.operations = charged;
+        arm();
+        return this.fuel;
+    }
+
+    /**
+     * The pointers are kept in locals for the duration of the loop and written back once it exits.
+     *
+     * @return true when the program has finished, false when the current operation left the tape's array
+     */
+    private boolean run(Program program) throws IOException {
+        final int[] opcodes = program.opcodes;
+        final int[] arguments = program.arguments;
+        final int[] offsets = program.offsets;
+        final byte[] memory = tape.cells();
+        final Console console = this.console;
+        int ip = instructionPointer;
+        int dp = dataPointer - tape.base();
+
+        try {
+            while (ip < opcodes.length) {
+                switch (opcodes[ip]) {
+                    case INC_DP:
+                        dp += arguments[ip];
+                        break;
+                    case DEC_DP:
+                        dp -= arguments[ip];
+                        break;
+                    case INC:
+                        memory[dp + offsets[ip]] += arguments[ip];
+                        break;
+                    case DEC:
+                        memory[dp + offsets[ip]] -= arguments[ip];
+                        break;
+                    case PRINT:
+                        console.print(memory[dp + offsets[ip]], arguments[ip]);
+                        break;
+                    case READ:
+                        memory[dp + offsets[ip]] = console.read(memory[dp + offsets[ip]], arguments[ip]);
+                        break;
+                    case JUMP_IF_ZERO:
+                        if (memory[dp] == 0) ip = arguments[ip];
+                        break;
+                    case JUMP_IF_NOT_ZERO:
+                        if (memory[dp] != 0) ip = arguments[ip];
+                        break;
+                    case SET_ZERO:
+                        memory[dp + offsets[ip]] = 0;
+                        break;
+                    case SCAN_LEFT:
+                        dp = Scans.left(memory, dp, arguments[ip]);
+                        break;
+                    case SCAN_RIGHT:
+                        dp = Scans.right(memory, dp, arguments[ip]);
+                        break;
+                    case MUL_ADD:
+                        // a zero counter means the original loop never ran, so the target cell is left untouched
+                        byte counter = memory[dp];
+                        if (counter != 0) memory[dp + offsets[ip]] += counter * arguments[ip];
+                        break;
+                }
+
+                ip++;
+            }
+            return true;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // every operation reads the cells it uses before writing, so nothing has changed yet
+            return false;
+        } finally {
+            this.instructionPointer = ip;
+            this.dataPointer = dp + tape.base();
+        }
     }
 
-    private void readChar(int times) throws IOException {
-        for (int i = 0; i < times; i++) {
-            int read = in.read();
-            if (read != -1) {
-                write((byte) read);
+    /**
+     * A copy of {@link #run(Program)} that charges the budget at back-edges, kept apart so that unbudgeted runs
+     * don't pay for it.
+     */
+    private boolean runWithinBudget(Program program, int[] costs) throws IOException {
+        final int[] opcodes = program.opcodes;
+        final int[] arguments = program.arguments;
+        final int[] offsets = program.offsets;
+        final byte[] memory = tape.cells();
+        final Console console = this.console;
+        int ip = instructionPointer;
+        int dp = dataPointer - tape.base();
+        long fuel = this.fuel;
+
+        try {
+            while (ip < opcodes.length) {
+                switch (opcodes[ip]) {
+                    case INC_DP:
+                        dp += arguments[ip];
+                        break;
+                    case DEC_DP:
+                        dp -= arguments[ip];
+                        break;
+                    case INC:
+                        memory[dp + offsets[ip]] += arguments[ip];
+                        break;
+                    case DEC:
+                        memory[dp + offsets[ip]] -= arguments[ip];
+                        break;
+                    case PRINT:
+                        console.print(memory[dp + offsets[ip]], arguments[ip]);
+                        break;
+                    case READ:
+                        memory[dp + offsets[ip]] = console.read(memory[dp + offsets[ip]], arguments[ip]);
+                        break;
+                    case JUMP_IF_ZERO:
+                        if (memory[dp] == 0) ip = arguments[ip];
+                        break;
+                    case JUMP_IF_NOT_ZERO:
+                        if (memory[dp] != 0) {
+                            // stopping here leaves the back-edge to be taken again when carrying on
+                            if ((fuel -= costs[ip]) < 0) fuel = checkpoint(ip, dp + tape.base(), fuel, costs[ip]);
+                            ip = arguments[ip];
+                        }
+                        break;
+                    case SET_ZERO:
+                        memory[dp + offsets[ip]] = 0;
+                        break;
+                    case SCAN_LEFT:
+                        dp = Scans.left(memory, dp, arguments[ip]);
+                        break;
+                    case SCAN_RIGHT:
+                        dp = Scans.right(memory, dp, arguments[ip]);
+                        break;
+                    case MUL_ADD:
+                        // a zero counter means the original loop never ran, so the target cell is left untouched
+                        byte counter = memory[dp];
+                        if (counter != 0) memory[dp + offsets[ip]] += counter * arguments[ip];
+                        break;
+                }
+
+                ip++;
             }
+            return true;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // every operation reads the cells it uses before writing, so nothing has changed yet
+            return false;
+        } finally {
+            this.instructionPointer = ip;
+            this.dataPointer = dp + tape.base();
+            this.fuel = fuel;
         }
     }
 
-    private void putChar(int times) {
-        for (int i = 0; i < times; i++) {
-            out.print((char) read());
+    /**
+     * A copy of {@link #run(Program)} reading each operation from an image in one go, kept apart so that the array
+     * form doesn't pay for it. See {@link ProgramImage} for how an operation is packed.
+     */
+    private boolean run(ProgramImage image) throws IOException {
+        final ByteBuffer operations = image.operations();
+        final int size = image.size();
+        final byte[] memory = tape.cells();
+        final Console console = this.console;
+        int ip = instructionPointer;
+        int dp = dataPointer - tape.base();
+
+        try {
+            while (ip < size) {
+                long operation = operations.getLong(ip << 3);
+                int argument = (int) (operation >> 32);
+                int offset = (int) operation >> 8;
+
+                switch ((int) operation & 0xFF) {
+                    case INC_DP:
+                        dp += argument;
+                        break;
+                    case DEC_DP:
+                        dp -= argument;
+                        break;
+                    case INC:
+                        memory[dp + offset] += argument;
+                        break;
+                    case DEC:
+                        memory[dp + offset] -= argument;
+                        break;
+                    case PRINT:
+                        console.print(memory[dp + offset], argument);
+                        break;
+                    case READ:
+                        memory[dp + offset] = console.read(memory[dp + offset], argument);
+                        break;
+                    case JUMP_IF_ZERO:
+                        if (memory[dp] == 0) ip = argument;
+                        break;
+                    case JUMP_IF_NOT_ZERO:
+                        if (memory[dp] != 0) ip = argument;
+                        break;
+                    case SET_ZERO:
+                        memory[dp + offset] = 0;
+                        break;
+                    case SCAN_LEFT:
+                        dp = Scans.left(memory, dp, argument);
+                        break;
+                    case SCAN_RIGHT:
+                        dp = Scans.right(memory, dp, argument);
+                        break;
+                    case MUL_ADD:
+                        // a zero counter means the original loop never ran, so the target cell is left untouched
+                        byte counter = memory[dp];
+                        if (counter != 0) memory[dp + offset] += counter * argument;
+                        break;
+                    default:
+                        // a wide offset, left to the slow path
+                        return false;
+                }
+
+                ip++;
+            }
+            return true;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // every operation reads the cells it uses before writing, so nothing has changed yet
+            return false;
+        } finally {
+            this.instructionPointer = ip;
+            this.dataPointer = dp + tape.base();
         }
     }
 
-    private void write(byte value) {
-        memory[dataPointer] = value;
+    private void executeOutsideTape(int opcode, int argument, int offset) throws IOException {
+        int ip = instructionPointer;
+        int dp = dataPointer;
+        int position = dp + offset;
+
+        switch (opcode) {
+            case INC:
+                tape.set(position, (byte) (tape.get(position) + argument));
+                break;
+            case DEC:
+                tape.set(position, (byte) (tape.get(position) - argument));
+                break;
+            case PRINT:
+                console.print(tape.get(position), argument);
+                break;
+            case READ:
+                tape.set(position, console.read(tape.get(position), argument));
+                break;
+            case JUMP_IF_ZERO:
+                if (tape.get(dp) == 0) ip = argument;
+                break;
+            case JUMP_IF_NOT_ZERO:
+                if (tape.get(dp) != 0) ip = argument;
+                break;
+            case SET_ZERO:
+                tape.set(position, (byte) 0);
+                break;
+            case SCAN_LEFT:
+                dp = scanOutsideTape(ip, dp, -argument);
+                break;
+            case SCAN_RIGHT:
+                dp = scanOutsideTape(ip, dp, argument);
+                break;
+            case MUL_ADD:
+                byte counter = tape.get(dp);
+                if (counter != 0) tape.set(position, (byte) (tape.get(position) + counter * argument));
+                break;
+        }
+
+        this.instructionPointer = ip + 1;
+        this.dataPointer = tape.normalise(dp);
+        tape.focus(dataPointer);
     }
 
-    private byte read() {
-        return memory[dataPointer];
+    /**
+     * Scans through the tape's policy, which on a wrapping tape without a zero cell never ends, so under a budget
+     * every cell visited is charged as one operation. Stopping leaves the data pointer where the scan had got to,
+     * carrying on picks the scan up from there.
+     */
+    private int scanOutsideTape(int ip, int dp, int step) {
+        while (true) {
+            // every page the scan reaches goes through the same word at a time scan as the main loop
+            tape.focus(dp);
+            byte[] cells = tape.cells();
+            int start = dp - tape.base();
+            if (start >= 0 && start < cells.length) {
+                int end = step > 0 ? Scans.rightWithin(cells, start, step) : Scans.leftWithin(cells, start, -step);
+                charge(ip, dp, (end - start) / step, step);
+                dp = tape.normalise(tape.base() + end);
+                if (end >= 0 && end < cells.length)
+                    return dp;
+            } else {
+                if (tape.get(dp) == 0)
+                    return dp;
+                charge(ip, dp, 1, step);
+                dp = tape.normalise(dp + step);
+            }
+        }
     }
 
-    private void increment(int by) {
-        memory[dataPointer] += by;
+    /**
+     * Charges a scan off the tape's array one operation per step against the budget, stopping it at the cell
+     * where the budget ran out as though it went one cell at a time
+     */
+    private void charge(int ip, int dp, int steps, int step) {
+        if (budget == Budget.UNLIMITED)
+            return;
+
+        while (steps > fuel) {
+            steps -= fuel + 1;
+            dp = tape.normalise(dp + (int) (fuel + 1) * step);
+            this.dataPointer = dp;
+            fuel = checkpoint(ip, dp, -1, 1);
+        }
+        fuel -= steps;
     }
 
-    private void decrement(int by) {
-        memory[dataPointer] -= by;
+    /**
+     * @return the operation the next execute carries on from, the one that failed if the last execute did
+     */
+    public int getInstructionPointer() {
+        return instructionPointer;
     }
 
-    private void jump(int to) {
-        instructionPointer = to;
+    /**
+     * @return the position of the data pointer on the tape, where the next execute carries on from
+     */
+    public int getDataPointer() {
+        return dataPointer;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,15 @@
+package io.github.djhworld.bf.vm;
+
+import java.io.IOException;
+
+/**
+ * Destination of the bytes produced by the PRINT instruction
+ */
+public interface Output {
+    /**
+     * Writes the same value the given number of times
+     */
+    void write(byte value, int times) throws IOException;
+
+    void flush() throws IOException;
+}
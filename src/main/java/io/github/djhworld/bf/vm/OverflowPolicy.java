@@ -0,0 +1,21 @@
+package io.github.djhworld.bf.vm;
+
+/**
+ * What happens when INC or DEC take a cell past the range of its {@link CellWidth}
+ */
+public enum OverflowPolicy {
+    /**
+     * Arithmetic is modulo the cell size, the usual behaviour of brainfuck implementations
+     */
+    WRAP,
+
+    /**
+     * The cell sticks at zero or at its maximum value
+     */
+    SATURATE,
+
+    /**
+     * A {@link CellOverflowException} is raised
+     */
+    ERROR
+}
@@ -0,0 +1,161 @@
+package io.github.djhworld.bf.vm;
+
+import java.util.Arrays;
+
+/**
+ * A tape split into pages of a fixed size, which are only allocated once a cell on them is set to something other
+ * than zero. Cells on pages that were never written read as zero, so a program can move millions of cells out
+ * and only pay for the regions it actually uses.
+ * <p>
+ * {@link #cells()} is the page the data pointer was last on, starting at {@link #base()}, so the interpreter's main
+ * loop works on it exactly as it would on a flat tape. Leaving the page, or working on a page not allocated yet,
+ * goes through {@link #get(int)} and {@link #set(int, byte)} for that operation, after which
+ * {@link #focus(int)} moves on to the data pointer's page. A page not allocated yet is handed out as an empty
+ * array, so everything on it takes the slow path until it is first written.
+ * <p>
+ * Pages do not overlap, so this is only as cheap as a flat tape while a loop stays on one page. A loop whose cells
+ * straddle a page boundary pays for an exception and a refocus on every access across it, and runs several times
+ * slower than on a flat tape. Pages larger than the region a program works in keep that rare.
+ * <p>
+ * Only the {@link TapePolicy#FIXED} and {@link TapePolicy#WRAP} policies apply, a paged tape has no need to grow.
+ */
+public class PagedTape extends Tape {
+    public static final int DEFAULT_PAGE_SIZE = 1 << 16;
+
+    private static final byte[] NOT_ALLOCATED = new byte[0];
+
+    private final int size;
+    private final int pageShift;
+    private final byte[][] pages;
+    // one past the last page allocated
+    private int pageCount;
+    private byte[] current = NOT_ALLOCATED;
+    private int currentBase;
+
+    public PagedTape(int size, TapePolicy policy) {
+        this(size, policy, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param pageSize the number of cells per page, a power of two
+     */
+    public PagedTape(int size, TapePolicy policy, int pageSize) {
+        super(policy);
+        if (policy == TapePolicy.GROW)
+            throw new IllegalArgumentException("A paged tape cannot grow, give it the largest size needed instead");
+        if (size < 1 || size > MAX_SIZE)
+            throw new IllegalArgumentException("size must be between 1 and " + MAX_SIZE);
+        if (pageSize < 1 || Integer.bitCount(pageSize) != 1)
+            throw new IllegalArgumentException("pageSize must be a power of two");
+
+        this.size = size;
+        this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+        this.pages = new byte[(int) (((long) size + pageSize - 1) >> pageShift)][];
+    }
+
+    @Override
+    public byte[] cells() {
+        return current;
+    }
+
+    @Override
+    public int base() {
+        return currentBase;
+    }
+
+    @Override
+    public void focus(int position) {
+        if (position < 0 || position >= size) {
+            current = NOT_ALLOCATED;
+            currentBase = 0;
+            return;
+        }
+
+        int page = position >>> pageShift;
+        current = pages[page] == null ? NOT_ALLOCATED : pages[page];
+        currentBase = page << pageShift;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public byte get(int position) {
+        int index = locate(position);
+        byte[] page = pages[index >>> pageShift];
+        return page == null ? 0 : page[index - (index >>> pageShift << pageShift)];
+    }
+
+    @Override
+    public void set(int position, byte value) {
+        int index = locate(position);
+        int page = index >>> pageShift;
+        if (pages[page] == null) {
+            if (value == 0)
+                return;
+            allocate(page);
+        }
+        pages[page][index - (page << pageShift)] = value;
+    }
+
+    /**
+     * Only whole pages are tracked, so this does nothing
+     */
+    @Override
+    public void touch(int end) {
+    }
+
+    /**
+     * @return the end of the last page allocated
+     */
+    @Override
+    public int highWater() {
+        return (int) Math.min((long) pageCount << pageShift, size);
+    }
+
+    /**
+     * Drops every page, leaving them to be collected
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(pages, 0, pageCount, null);
+        pageCount = 0;
+        current = NOT_ALLOCATED;
+    }
+
+    /**
+     * @return the number of pages allocated
+     */
+    public int pages() {
+        int allocated = 0;
+        for (int i = 0; i < pageCount; i++) {
+            if (pages[i] != null)
+                allocated++;
+        }
+        return allocated;
+    }
+
+    @Override
+    public int normalise(int position) {
+        if (policy() == TapePolicy.WRAP && (position < 0 || position >= size))
+            return Math.floorMod(position, size);
+        return position;
+    }
+
+    private int locate(int position) {
+        if (position >= 0 && position < size)
+            return position;
+        if (policy() == TapePolicy.WRAP)
+            return Math.floorMod(position, size);
+        throw TapeException.outside(position, size);
+    }
+
+    private void allocate(int page) {
+        // the last page stops at the end of the tape, so running off it is noticed by the main loop
+        int start = page << pageShift;
+        pages[page] = new byte[Math.min(1 << pageShift, size - start)];
+        pageCount = Math.max(pageCount, page + 1);
+    }
+}
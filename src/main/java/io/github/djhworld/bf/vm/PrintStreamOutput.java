@@ -0,0 +1,25 @@
+package io.github.djhworld.bf.vm;
+
+import java.io.PrintStream;
+
+/**
+ * Prints every byte as a char on a {@link PrintStream}, leaving any buffering and flushing to the stream itself
+ */
+public class PrintStreamOutput implements Output {
+    private final PrintStream out;
+
+    public PrintStreamOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(byte value, int times) {
+        for (int i = 0; i < times; i++) {
+            out.print((char) value);
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+}
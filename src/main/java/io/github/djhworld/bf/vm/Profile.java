@@ -0,0 +1,215 @@
+package io.github.djhworld.bf.vm;
+
+import io.github.djhworld.bf.Instruction;
+import io.github.djhworld.bf.Program;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.github.djhworld.bf.Program.JUMP_IF_ZERO;
+
+/**
+ * What a {@link ProfilingMachine} saw while running a program.
+ * <p>
+ * Only the number of times each operation ran is recorded, everything else is worked out from those counts
+ * when asked for, so a profile can be read while the program is still running. Counts are of operations,
+ * a run of +++ folded into one operation counts once per execution.
+ */
+public final class Profile implements ProfileMXBean {
+    private static final Instruction[] INSTRUCTIONS = Instruction.values();
+
+    private final Program program;
+    private final int[] lines;
+    private final int[] columns;
+    // written by the machine as it runs
+    final long[] counts;
+    int tapeHighWater;
+    long bytesRead;
+    long bytesWritten;
+
+    /**
+     * @param lines   the source line of each operation, -1 where not known
+     * @param columns the source column of each operation, -1 where not known
+     */
+    Profile(Program program, int[] lines, int[] columns) {
+        this.program = program;
+        this.lines = lines;
+        this.columns = columns;
+        this.counts = new long[program.size()];
+    }
+
+    @Override
+    public long getOperations() {
+        long operations = 0;
+        for (long count : counts)
+            operations += count;
+        return operations;
+    }
+
+    public long getCount(Instruction instruction) {
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (program.opcodes[i] == instruction.ordinal())
+                count += counts[i];
+        }
+        return count;
+    }
+
+    @Override
+    public Map<String, Long> getInstructionCounts() {
+        Map<String, Long> instructionCounts = new LinkedHashMap<>();
+        for (Instruction instruction : INSTRUCTIONS)
+            instructionCounts.put(instruction.name(), getCount(instruction));
+        return instructionCounts;
+    }
+
+    /**
+     * @return the loops that have run, the ones that executed the most operations first
+     */
+    public List<LoopProfile> getLoops() {
+        List<LoopProfile> loops = new ArrayList<>();
+        for (int start = 0; start < counts.length; start++) {
+            if (program.opcodes[start] != JUMP_IF_ZERO || counts[start] == 0)
+                continue;
+
+            int end = program.arguments[start];
+            long operations = 0;
+            for (int i = start; i <= end; i++)
+                operations += counts[i];
+
+            loops.add(new LoopProfile(start, end, lines[start], columns[start], counts[start], counts[end], operations));
+        }
+
+        loops.sort(Comparator.comparingLong(LoopProfile::getOperations).reversed());
+        return loops;
+    }
+
+    @Override
+    public String[] getHotLoops() {
+        return getLoops().stream().map(LoopProfile::toString).toArray(String[]::new);
+    }
+
+    /**
+     * @return the number of cells up to and including the furthest one the program read or wrote
+     */
+    @Override
+    public int getTapeHighWater() {
+        return tapeHighWater;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Registers the profile with the platform MBean server so it can be watched with JMX tools
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * @param loops the number of hot loops to list
+     * @return a human readable summary
+     */
+    public String report(int loops) {
+        StringBuilder report = new StringBuilder();
+        report.append("operations: ").append(getOperations()).append('\n');
+        for (Map.Entry<String, Long> entry : getInstructionCounts().entrySet()) {
+            if (entry.getValue() > 0)
+                report.append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        report.append("tape high water: ").append(tapeHighWater).append('\n');
+        report.append("bytes read: ").append(bytesRead).append(", written: ").append(bytesWritten).append('\n');
+        report.append("hot loops:\n");
+        List<LoopProfile> hotLoops = getLoops();
+        for (LoopProfile loop : hotLoops.subList(0, Math.min(loops, hotLoops.size())))
+            report.append("  ").append(loop).append('\n');
+        return report.toString();
+    }
+
+    public static final class LoopProfile {
+        private final int start;
+        private final int end;
+        private final int line;
+        private final int column;
+        private final long entries;
+        private final long iterations;
+        private final long operations;
+
+        LoopProfile(int start, int end, int line, int column, long entries, long iterations, long operations) {
+            this.start = start;
+            this.end = end;
+            this.line = line;
+            this.column = column;
+            this.entries = entries;
+            this.iterations = iterations;
+            this.operations = operations;
+        }
+
+        /**
+         * @return the position of the loop's JUMP_IF_ZERO in the program
+         */
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * @return the line of the loop's [ in the source, -1 if not known
+         */
+        public int getLine() {
+            return line;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        /**
+         * @return how many times the loop was reached, whether or not its body ran
+         */
+        public long getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return how many times the loop's body ran
+         */
+        public long getIterations() {
+            return iterations;
+        }
+
+        /**
+         * @return the operations executed inside the loop, including those of inner loops
+         */
+        public long getOperations() {
+            return operations;
+        }
+
+        @Override
+        public String toString() {
+            String where = line == -1
+                    ? "operations " + start + "-" + end
+                    : "line " + line + ", column " + column + " (operations " + start + "-" + end + ")";
+            return "loop at " + where + ": " + iterations + " iterations, " + operations + " operations";
+        }
+    }
+}
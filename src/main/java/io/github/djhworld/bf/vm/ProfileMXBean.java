@@ -0,0 +1,26 @@
+package io.github.djhworld.bf.vm;
+
+import java.util.Map;
+
+/**
+ * What a {@link Profile} exposes over JMX, the values are read live while the program runs
+ */
+public interface ProfileMXBean {
+    long getOperations();
+
+    /**
+     * @return the operations executed per instruction name
+     */
+    Map<String, Long> getInstructionCounts();
+
+    /**
+     * @return a line per loop, the loops that executed the most operations first
+     */
+    String[] getHotLoops();
+
+    int getTapeHighWater();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+}
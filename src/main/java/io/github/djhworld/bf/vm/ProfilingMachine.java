@@ -0,0 +1,139 @@
+package io.github.djhworld.bf.vm;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.Program;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.github.djhworld.bf.Program.*;
+
+/**
+ * An instrumented copy of the interpreter that records a {@link Profile} of each program it runs.
+ * <p>
+ * Profiling is kept out of {@link Machine} altogether so that it costs nothing when not wanted, this machine
+ * is several times slower. The tape is fixed in size, leaving it raises a {@link TapeException}.
+ */
+public class ProfilingMachine implements Engine {
+    private final byte[] memory;
+    private final Console console;
+    private int dataPointer;
+    private int instructionPointer;
+    private Profile profile;
+
+    public ProfilingMachine(Console console, byte[] memory) {
+        this.console = console;
+        this.memory = memory;
+        this.dataPointer = 0;
+        this.instructionPointer = 0;
+    }
+
+    /**
+     * Loops in the profile are given the source positions carried by the operations
+     */
+    @Override
+    public void execute(List<Operation> operations) throws IllegalArgumentException, IOException {
+        int[] lines = new int[operations.size()];
+        int[] columns = new int[operations.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = operations.get(i).line;
+            columns[i] = operations.get(i).column;
+        }
+
+        execute(Program.of(operations), lines, columns);
+    }
+
+    public void execute(Program program) throws IllegalArgumentException, IOException {
+        int[] unknown = new int[program.size()];
+        Arrays.fill(unknown, -1);
+
+        execute(program, unknown, unknown);
+    }
+
+    private void execute(Program program, int[] lines, int[] columns) throws IOException {
+        final int[] opcodes = program.opcodes;
+        final int[] arguments = program.arguments;
+        final int[] offsets = program.offsets;
+        final byte[] memory = this.memory;
+        final Console console = this.console;
+        final Profile profile = new Profile(program, lines, columns);
+        final long[] counts = profile.counts;
+        int ip = instructionPointer;
+        int dp = dataPointer;
+        int highWater = 0;
+        this.profile = profile;
+
+        try {
+            while (ip < opcodes.length) {
+                counts[ip]++;
+                // jumps, scans and the counter of MUL_ADD use the current cell, the offset of those is always 0
+                int cell = dp + offsets[ip];
+                if (cell >= highWater && opcodes[ip] != INC_DP && opcodes[ip] != DEC_DP)
+                    profile.tapeHighWater = highWater = cell + 1;
+
+                switch (opcodes[ip]) {
+                    case INC_DP:
+                        dp += arguments[ip];
+                        break;
+                    case DEC_DP:
+                        dp -= arguments[ip];
+                        break;
+                    case INC:
+                        memory[cell] += arguments[ip];
+                        break;
+                    case DEC:
+                        memory[cell] -= arguments[ip];
+                        break;
+                    case PRINT:
+                        console.print(memory[cell], arguments[ip]);
+                        profile.bytesWritten += arguments[ip];
+                        break;
+                    case READ:
+                        memory[cell] = console.read(memory[cell], arguments[ip]);
+                        profile.bytesRead += arguments[ip];
+                        break;
+                    case JUMP_IF_ZERO:
+                        if (memory[dp] == 0) ip = arguments[ip];
+                        break;
+                    case JUMP_IF_NOT_ZERO:
+                        if (memory[dp] != 0) ip = arguments[ip];
+                        break;
+                    case SET_ZERO:
+                        memory[cell] = 0;
+                        break;
+                    case SCAN_LEFT:
+                        dp = Scans.left(memory, dp, arguments[ip]);
+                        break;
+                    case SCAN_RIGHT:
+                        dp = Scans.right(memory, dp, arguments[ip]);
+                        if (dp >= highWater) profile.tapeHighWater = highWater = dp + 1;
+                        break;
+                    case MUL_ADD:
+                        byte counter = memory[dp];
+                        if (counter != 0) memory[cell] += counter * arguments[ip];
+                        break;
+                }
+
+                ip++;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw TapeException.outside(program, ip, dp, memory.length);
+        } finally {
+            this.instructionPointer = ip;
+            this.dataPointer = dp;
+            console.flush();
+        }
+    }
+
+    /**
+     * @return the profile of the program last run, null if nothing has been run yet
+     */
+    public Profile getProfile() {
+        return profile;
+    }
+
+    int getDataPointer() {
+        return dataPointer;
+    }
+}
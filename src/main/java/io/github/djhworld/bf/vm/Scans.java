@@ -0,0 +1,130 @@
+package io.github.djhworld.bf.vm;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds the cell SCAN_LEFT and SCAN_RIGHT stop at.
+ * <p>
+ * Steps of 1, 2 and 4 look at eight cells at a time: the tape is read a long at a time and every byte of it tested
+ * for zero at once, keeping only the bytes the step lands on. The words are read through a little endian view of
+ * the array, so the lowest byte of a word is always the leftmost cell. Other steps look at every cell in turn.
+ * <p>
+ * Only Java 9 onwards compiles a long read from a heap ByteBuffer into a single load. On Java 8 it is put together
+ * a byte at a time, which is slower than looking at every cell, so there every step is scanned cell by cell.
+ * <p>
+ * Like the plain loops these replace, they throw ArrayIndexOutOfBoundsException when the scan runs off the tape.
+ */
+public final class Scans {
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+    // the top bit of every byte a step of 1, 2 or 4 lands on, counting from the lowest byte
+    private static final long[] STEP_MASKS = {0, 0x8080808080808080L, 0x0080008000800080L, 0, 0x0000008000000080L};
+    private static final boolean WORD_AT_A_TIME = !System.getProperty("java.specification.version", "").startsWith("1.");
+
+    private Scans() {
+    }
+
+    /**
+     * @return the position of the first zero cell from dataPointer onwards, looking at every step-th cell
+     */
+    public static int right(byte[] memory, int dataPointer, int step) {
+        return right(memory, dataPointer, step, WORD_AT_A_TIME);
+    }
+
+    static int right(byte[] memory, int dataPointer, int step, boolean wordAtATime) {
+        if (wordAtATime)
+            dataPointer = skipRight(memory, dataPointer, step);
+        while (memory[dataPointer] != 0)
+            dataPointer += step;
+        return dataPointer;
+    }
+
+    /**
+     * Like {@link #right(byte[], int, int)} on a data pointer within the array, but stops at its end
+     *
+     * @return the position of the first zero cell, or the first position past the end of the array
+     */
+    static int rightWithin(byte[] memory, int dataPointer, int step) {
+        if (WORD_AT_A_TIME)
+            dataPointer = skipRight(memory, dataPointer, step);
+        while (dataPointer < memory.length && memory[dataPointer] != 0)
+            dataPointer += step;
+        return dataPointer;
+    }
+
+    /**
+     * @return the position of the first zero cell from dataPointer backwards, looking at every step-th cell
+     */
+    public static int left(byte[] memory, int dataPointer, int step) {
+        return left(memory, dataPointer, step, WORD_AT_A_TIME);
+    }
+
+    static int left(byte[] memory, int dataPointer, int step, boolean wordAtATime) {
+        if (wordAtATime)
+            dataPointer = skipLeft(memory, dataPointer, step);
+        while (memory[dataPointer] != 0)
+            dataPointer -= step;
+        return dataPointer;
+    }
+
+    /**
+     * Like {@link #left(byte[], int, int)} on a data pointer within the array, but stops at its start
+     *
+     * @return the position of the first zero cell, or the first position before the start of the array
+     */
+    static int leftWithin(byte[] memory, int dataPointer, int step) {
+        if (WORD_AT_A_TIME)
+            dataPointer = skipLeft(memory, dataPointer, step);
+        while (dataPointer >= 0 && memory[dataPointer] != 0)
+            dataPointer -= step;
+        return dataPointer;
+    }
+
+    /**
+     * @return the first zero cell within the words from dataPointer onwards, or where the last whole word ends
+     */
+    private static int skipRight(byte[] memory, int dataPointer, int step) {
+        if (memory[dataPointer] != 0 && step < STEP_MASKS.length && STEP_MASKS[step] != 0) {
+            ByteBuffer words = ByteBuffer.wrap(memory).order(ByteOrder.LITTLE_ENDIAN);
+            long mask = STEP_MASKS[step];
+            int last = memory.length - 8;
+            while (dataPointer <= last) {
+                long zeros = zeroBytes(words.getLong(dataPointer)) & mask;
+                if (zeros != 0)
+                    return dataPointer + (Long.numberOfTrailingZeros(zeros) >>> 3);
+                dataPointer += 8;
+            }
+        }
+        return dataPointer;
+    }
+
+    /**
+     * @return the first zero cell within the words from dataPointer backwards, or where the first whole word starts
+     */
+    private static int skipLeft(byte[] memory, int dataPointer, int step) {
+        if (memory[dataPointer] != 0 && step < STEP_MASKS.length && STEP_MASKS[step] != 0) {
+            ByteBuffer words = ByteBuffer.wrap(memory).order(ByteOrder.LITTLE_ENDIAN);
+            // the word ends at the data pointer, so the bytes to look at count down from the highest
+            long mask = Long.reverseBytes(STEP_MASKS[step]);
+            while (dataPointer >= 7) {
+                long zeros = zeroBytes(words.getLong(dataPointer - 7)) & mask;
+                if (zeros != 0)
+                    return dataPointer - 7 + ((63 - Long.numberOfLeadingZeros(zeros)) >>> 3);
+                dataPointer -= 8;
+            }
+        }
+        return dataPointer;
+    }
+
+    static boolean isWordAtATime() {
+        return WORD_AT_A_TIME;
+    }
+
+    /**
+     * @return the top bit set in exactly the bytes of the word that are zero, and nothing else
+     */
+    private static long zeroBytes(long word) {
+        long low = (word & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+        return ~(low | word | LOW_SEVEN_BITS);
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.djhworld.bf.vm;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.Program;
+
+import java.io.IOException;
+import java.util.List;
+
+import static io.github.djhworld.bf.Program.*;
+
+/**
+ * Machine with unsigned 16-bit cells that wrap around, held in a char[].
+ * <p>
+ * The tape is fixed in size, leaving it raises a {@link TapeException}.
+ */
+public class ShortMachine implements Engine {
+    private final char[] memory;
+    private final Console console;
+    private int dataPointer;
+    private int instructionPointer;
+
+    public ShortMachine(Console console, char[] memory) {
+        this.console = console;
+        this.memory = memory;
+        this.dataPointer = 0;
+        this.instructionPointer = 0;
+    }
+
+    @Override
+    public void execute(List<Operation> operations) throws IllegalArgumentException, IOException {
+        execute(Program.of(operations));
+    }
+
+    public void execute(Program program) throws IllegalArgumentException, IOException {
+        final int[] opcodes = program.opcodes;
+        final int[] arguments = program.arguments;
+        final int[] offsets = program.offsets;
+        final char[] memory = this.memory;
+        final Console console = this.console;
+        int ip = instructionPointer;
+        int dp = dataPointer;
+
+        try {
+            while (ip < opcodes.length) {
+                switch (opcodes[ip]) {
+                    case INC_DP:
+                        dp += arguments[ip];
+                        break;
+                    case DEC_DP:
+                        dp -= arguments[ip];
+                        break;
+                    case INC:
+                        memory[dp + offsets[ip]] += arguments[ip];
+                        break;
+                    case DEC:
+                        memory[dp + offsets[ip]] -= arguments[ip];
+                        break;
+                    case PRINT:
+                        console.print((byte) memory[dp + offsets[ip]], arguments[ip]);
+                        break;
+                    case READ:
+                        memory[dp + offsets[ip]] = (char) console.read(memory[dp + offsets[ip]], arguments[ip]);
+                        break;
+                    case JUMP_IF_ZERO:
+                        if (memory[dp] == 0) ip = arguments[ip];
+                        break;
+                    case JUMP_IF_NOT_ZERO:
+                        if (memory[dp] != 0) ip = arguments[ip];
+                        break;
+                    case SET_ZERO:
+                        memory[dp + offsets[ip]] = 0;
+                        break;
+                    case SCAN_LEFT:
+                        while (memory[dp] != 0) dp -= arguments[ip];
+                        break;
+                    case SCAN_RIGHT:
+                        while (memory[dp] != 0) dp += arguments[ip];
+                        break;
+                    case MUL_ADD:
+                        char counter = memory[dp];
+                        if (counter != 0) memory[dp + offsets[ip]] += counter * arguments[ip];
+                        break;
+                }
+
+                ip++;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw TapeException.outside(program, ip, dp, memory.length);
+        } finally {
+            this.instructionPointer = ip;
+            this.dataPointer = dp;
+            console.flush();
+        }
+    }
+
+    int getDataPointer() {
+        return dataPointer;
+    }
+}
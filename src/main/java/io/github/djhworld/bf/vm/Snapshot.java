@@ -0,0 +1,173 @@
+package io.github.djhworld.bf.vm;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The state of a {@link Machine} between two calls of execute, taken with {@link Machine#snapshot} and put back
+ * with {@link Machine#restore}.
+ * <p>
+ * The binary form starts with a magic number and format version, followed by the digest of the program the
+ * snapshot belongs to, both pointers and the operations charged so far. The cells come last, run-length encoded
+ * as alternating runs of zeros and literal bytes with each length a variable length integer, so a mostly empty
+ * tape takes a few bytes. Cells past the last non-zero one are left out altogether.
+ */
+public final class Snapshot {
+    public static final int MAGIC = 0x4246534E; // "BFSN"
+    public static final int VERSION = 1;
+
+    private static final int DIGEST_LENGTH = 32;
+
+    private final byte[] programDigest;
+    private final int instructionPointer;
+    private final int dataPointer;
+    private final long operations;
+    private final byte[] cells;
+
+    /**
+     * @param cells the tape from the first cell up to the last non-zero one, the rest of the tape is all zeros
+     */
+    Snapshot(byte[] programDigest, int instructionPointer, int dataPointer, long operations, byte[] cells) {
+        if (programDigest.length != DIGEST_LENGTH)
+            throw new IllegalArgumentException("Program digest must be " + DIGEST_LENGTH + " bytes");
+
+        this.programDigest = programDigest;
+        this.instructionPointer = instructionPointer;
+        this.dataPointer = dataPointer;
+        this.operations = operations;
+        this.cells = cells;
+    }
+
+    public byte[] getProgramDigest() {
+        return programDigest.clone();
+    }
+
+    public int getInstructionPointer() {
+        return instructionPointer;
+    }
+
+    public int getDataPointer() {
+        return dataPointer;
+    }
+
+    public long getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return the number of cells held, every cell from here on is zero
+     */
+    public int getLength() {
+        return cells.length;
+    }
+
+    public byte getCell(int position) {
+        return position < cells.length ? cells[position] : 0;
+    }
+
+    boolean belongsTo(byte[] digest) {
+        return Arrays.equals(programDigest, digest);
+    }
+
+    byte[] cells() {
+        return cells;
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + cells.length / 4);
+        writeInt(out, MAGIC);
+        out.write(VERSION);
+        out.write(programDigest, 0, programDigest.length);
+        writeInt(out, instructionPointer);
+        writeInt(out, dataPointer);
+        writeVarLong(out, operations);
+        writeVarLong(out, cells.length);
+
+        int position = 0;
+        while (position < cells.length) {
+            int zeros = position;
+            while (zeros < cells.length && cells[zeros] == 0)
+                zeros++;
+            int literals = zeros;
+            while (literals < cells.length && cells[literals] != 0)
+                literals++;
+
+            writeVarLong(out, zeros - position);
+            writeVarLong(out, literals - zeros);
+            out.write(cells, zeros, literals - zeros);
+            position = literals;
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a snapshot from the buffer's position onwards
+     *
+     * @throws IllegalArgumentException if the buffer does not hold a snapshot in this format
+     */
+    public static Snapshot decode(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IllegalArgumentException("Not a machine snapshot");
+
+            int version = buffer.get();
+            if (version != VERSION)
+                throw new IllegalArgumentException("Unsupported snapshot version " + version);
+
+            byte[] digest = new byte[DIGEST_LENGTH];
+            buffer.get(digest);
+            int instructionPointer = buffer.getInt();
+            int dataPointer = buffer.getInt();
+            long operations = readVarLong(buffer);
+            long length = readVarLong(buffer);
+            if (length < 0 || length > Tape.MAX_SIZE)
+                throw new IllegalArgumentException("Invalid tape length " + length);
+
+            byte[] cells = new byte[(int) length];
+            int position = 0;
+            while (position < cells.length) {
+                long zeros = readVarLong(buffer);
+                long literals = readVarLong(buffer);
+                if (zeros < 0 || literals < 0 || zeros + literals > cells.length - position)
+                    throw new IllegalArgumentException("Invalid run at cell " + position);
+
+                position += (int) zeros;
+                buffer.get(cells, position, (int) literals);
+                position += (int) literals;
+            }
+
+            return new Snapshot(digest, instructionPointer, dataPointer, operations, cells);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated snapshot", e);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Malformed variable length integer");
+    }
+}
@@ -0,0 +1,20 @@
+package io.github.djhworld.bf.vm;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads one byte at a time straight from an {@link InputStream}
+ */
+public class StreamInput implements Input {
+    private final InputStream in;
+
+    public StreamInput(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return in.read();
+    }
+}
@@ -0,0 +1,169 @@
+package io.github.djhworld.bf.vm;
+
+import java.util.Arrays;
+
+/**
+ * The cells a program works on, along with the policy for addressing cells outside of them.
+ * <p>
+ * Engines work on {@link #cells()} directly and leave the bounds checks to the JVM, which hoists or removes
+ * most of them. Only an access that actually lands outside the array needs to come through {@link #get(int)}
+ * and {@link #set(int, byte)}, which apply the policy.
+ * <p>
+ * The array need not start at the first cell of the tape, see {@link #base()}. A {@link PagedTape} only ever
+ * hands out the page the data pointer is on.
+ */
+public class Tape {
+    public static final int DEFAULT_SIZE = 30000;
+    public static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+    static final int CHUNK_SIZE = 4096;
+
+    private final TapePolicy policy;
+    private final int maxSize;
+    private byte[] cells;
+    // every cell from here on is known to be zero
+    private int highWater;
+
+    public Tape(int size, TapePolicy policy) {
+        this(new byte[size], policy, policy == TapePolicy.GROW ? MAX_SIZE : size, 0);
+    }
+
+    /**
+     * Wraps existing cells, a growing tape will start from them and grow up to {@link #MAX_SIZE}
+     */
+    public Tape(byte[] cells, TapePolicy policy) {
+        this(cells, policy, policy == TapePolicy.GROW ? MAX_SIZE : cells.length, cells.length);
+    }
+
+    private Tape(byte[] cells, TapePolicy policy, int maxSize, int highWater) {
+        if (cells.length == 0 && policy != TapePolicy.GROW)
+            throw new IllegalArgumentException("A " + policy + " tape needs at least one cell");
+
+        this.cells = cells;
+        this.policy = policy;
+        this.maxSize = maxSize;
+        this.highWater = highWater;
+    }
+
+    /**
+     * For tapes that keep their cells some other way and override everything looking at them
+     */
+    Tape(TapePolicy policy) {
+        this.policy = policy;
+        this.maxSize = 0;
+        this.cells = null;
+    }
+
+    public static Tape fixed(int size) {
+        return new Tape(size, TapePolicy.FIXED);
+    }
+
+    public static Tape wrapping(int size) {
+        return new Tape(size, TapePolicy.WRAP);
+    }
+
+    public static Tape growing(int maxSize) {
+        if (maxSize < 1 || maxSize > MAX_SIZE)
+            throw new IllegalArgumentException("maxSize must be between 1 and " + MAX_SIZE);
+
+        return new Tape(new byte[Math.min(CHUNK_SIZE, maxSize)], TapePolicy.GROW, maxSize, 0);
+    }
+
+    /**
+     * @return the array currently backing the tape, a growing tape replaces it as it grows. Anything writing to
+     * it directly must report how far it wrote through {@link #touch(int)}
+     */
+    public byte[] cells() {
+        return cells;
+    }
+
+    /**
+     * @return the position on the tape of the first element of {@link #cells()}
+     */
+    public int base() {
+        return 0;
+    }
+
+    /**
+     * Asks for {@link #cells()} to cover the position from now on, called once an engine has had to go through
+     * {@link #get(int)} or {@link #set(int, byte)}. The whole tape is always covered unless it is paged.
+     */
+    public void focus(int position) {
+    }
+
+    public int size() {
+        return cells.length;
+    }
+
+    public TapePolicy policy() {
+        return policy;
+    }
+
+    public byte get(int position) {
+        int index = locate(position);
+        return cells[index];
+    }
+
+    public void set(int position, byte value) {
+        int index = locate(position);
+        cells[index] = value;
+        touch(index + 1);
+    }
+
+    /**
+     * Records that cells below end may have been written
+     */
+    public void touch(int end) {
+        if (end > highWater)
+            highWater = Math.min(end, cells.length);
+    }
+
+    /**
+     * @return the number of cells from the start that may hold something other than zero
+     */
+    public int highWater() {
+        return highWater;
+    }
+
+    /**
+     * Zeroes the tape so it can be used for another run, only the cells below the high water mark are written
+     */
+    public void clear() {
+        Arrays.fill(cells, 0, highWater, (byte) 0);
+        highWater = 0;
+    }
+
+    /**
+     * @return the position a data pointer should be held at, only a wrapping tape moves it
+     */
+    public int normalise(int position) {
+        if (policy == TapePolicy.WRAP && (position < 0 || position >= cells.length))
+            return Math.floorMod(position, cells.length);
+        return position;
+    }
+
+    // may replace the cells, so callers must index the array only after calling it
+    private int locate(int position) {
+        if (position >= 0 && position < cells.length)
+            return position;
+
+        switch (policy) {
+            case WRAP:
+                return Math.floorMod(position, cells.length);
+            case GROW:
+                if (position >= 0 && position < maxSize) {
+                    grow(position);
+                    return position;
+                }
+                // fall through
+            default:
+                throw TapeException.outside(position, policy == TapePolicy.GROW ? maxSize : cells.length);
+        }
+    }
+
+    private void grow(int position) {
+        // at least double, rounded up to whole chunks, to keep the cost of copying amortised
+        long size = Math.max((long) position + 1, (long) cells.length * 2);
+        size = (size + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE;
+        cells = Arrays.copyOf(cells, (int) Math.min(size, maxSize));
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.djhworld.bf.vm;
+
+import io.github.djhworld.bf.Program;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Raised when a program addresses a cell that its {@link Tape} cannot provide
+ */
+public class TapeException extends RuntimeException {
+    /**
+     * The position of an exception raised where the cell that could not be reached is not known
+     */
+    public static final int UNKNOWN_POSITION = Integer.MIN_VALUE;
+
+    // the index in the message of an ArrayIndexOutOfBoundsException, given alone or as "Index 5 out of bounds..."
+    private static final Pattern INDEX = Pattern.compile("-?\\d+");
+
+    private final int position;
+
+    public TapeException(String message, int position) {
+        super(message);
+        this.position = position;
+    }
+
+    static TapeException outside(int position, int size) {
+        return new TapeException("Data pointer moved outside of the tape (position " + position + ", size " + size + ")", position);
+    }
+
+    /**
+     * For engines that run on a plain array, finds the cell the operation at ip failed to reach
+     */
+    static TapeException outside(Program program, int ip, int dp, int size) {
+        // jumps, scans and the counter of MUL_ADD use the current cell, everything else is at an offset from it
+        return outside(dp < 0 || dp >= size ? dp : dp + program.offsets[ip], size);
+    }
+
+    /**
+     * For engines running generated code, which cannot tell where they were when they ran off the array. The cell
+     * is taken from the exception's message, the JVM leaves the message out once it throws the same exception
+     * often enough, in which case the position is {@link #UNKNOWN_POSITION}.
+     */
+    public static TapeException outside(ArrayIndexOutOfBoundsException e, int size) {
+        Matcher index = INDEX.matcher(String.valueOf(e.getMessage()));
+        TapeException outside = index.find()
+                ? outside(Integer.parseInt(index.group()), size)
+                : new TapeException("Data pointer moved outside of the tape (size " + size + ")", UNKNOWN_POSITION);
+        outside.initCause(e);
+        return outside;
+    }
+
+    /**
+     * @return the cell the program failed to reach, or {@link #UNKNOWN_POSITION}
+     */
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.djhworld.bf.vm;
+
+/**
+ * What a {@link Tape} does when a program addresses a cell beyond its end
+ */
+public enum TapePolicy {
+    /**
+     * The tape has a fixed size and leaving it raises a {@link TapeException}
+     */
+    FIXED,
+
+    /**
+     * The tape starts small and grows to the right in chunks, up to a maximum size
+     */
+    GROW,
+
+    /**
+     * Moving off either end of the tape continues from the other end
+     */
+    WRAP
+}
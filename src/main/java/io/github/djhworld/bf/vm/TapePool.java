@@ -0,0 +1,62 @@
+package io.github.djhworld.bf.vm;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread safe pool of fixed tapes of the same size, so concurrent or repeated runs do not each allocate a fresh
+ * array.
+ * <p>
+ * Tapes are cleared as they are handed out, which only zeroes the cells below their high water mark, so a short
+ * run on a large tape costs next to nothing to recycle. At most maxIdle tapes are kept, any further ones are left
+ * to the garbage collector so a burst of jobs does not pin its memory forever.
+ */
+public class TapePool {
+    private final int tapeSize;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<Tape> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    public TapePool(int tapeSize, int maxIdle) {
+        if (tapeSize < 1)
+            throw new IllegalArgumentException("tapeSize must be at least 1");
+        if (maxIdle < 0)
+            throw new IllegalArgumentException("maxIdle must not be negative");
+
+        this.tapeSize = tapeSize;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return a zeroed tape
+     */
+    public Tape acquire() {
+        Tape tape = idle.poll();
+        if (tape == null)
+            return Tape.fixed(tapeSize);
+
+        idleCount.decrementAndGet();
+        tape.clear();
+        return tape;
+    }
+
+    public void release(Tape tape) {
+        if (tape.policy() != TapePolicy.FIXED || tape.size() != tapeSize)
+            throw new IllegalArgumentException("Tape of " + tape.size() + " cells does not belong to this pool");
+
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            return;
+        }
+
+        idle.offer(tape);
+    }
+
+    public int tapeSize() {
+        return tapeSize;
+    }
+
+    public int idle() {
+        return idleCount.get();
+    }
+}
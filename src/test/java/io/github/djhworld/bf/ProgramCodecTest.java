@@ -0,0 +1,68 @@
+package io.github.djhworld.bf;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static io.github.djhworld.bf.Instruction.*;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ProgramCodecTest {
+    @Test
+    public void shouldRoundTripOperations() throws Exception {
+        List<Operation> operations = newArrayList(
+                new Operation(INC, 1),
+                new Operation(DEC, 300, -2),
+                new Operation(MUL_ADD, -7, Integer.MIN_VALUE),
+                new Operation(JUMP_IF_ZERO, 6, Integer.MAX_VALUE, 12, 345),
+                new Operation(SCAN_LEFT, 1, 63),
+                new Operation(SET_ZERO, 0, -64),
+                new Operation(JUMP_IF_NOT_ZERO, 3, 0, 12, 400)
+        );
+
+        List<Operation> decoded = ProgramCodec.decode(ByteBuffer.wrap(ProgramCodec.encode(operations)));
+
+        assertThat(decoded.size(), is(operations.size()));
+        for (int i = 0; i < operations.size(); i++) {
+            assertThat(decoded.get(i).instruction, is(operations.get(i).instruction));
+            assertThat(decoded.get(i).argument, is(operations.get(i).argument));
+            assertThat(decoded.get(i).offset, is(operations.get(i).offset));
+            assertThat(decoded.get(i).line, is(operations.get(i).line));
+            assertThat(decoded.get(i).column, is(operations.get(i).column));
+        }
+    }
+
+    @Test
+    public void shouldUseOneByteForSmallValues() throws Exception {
+        byte[] encoded = ProgramCodec.encode(newArrayList(new Operation(INC, 5, -3), new Operation(PRINT, 1)));
+
+        assertThat(encoded.length, is(9 + 2 * 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownFormat() throws Exception {
+        ProgramCodec.decode(ByteBuffer.wrap("not a program".getBytes("US-ASCII")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTruncatedProgram() throws Exception {
+        byte[] encoded = ProgramCodec.encode(newArrayList(new Operation(INC, 1), new Operation(DEC, 1000)));
+
+        ProgramCodec.decode(ByteBuffer.wrap(encoded, 0, encoded.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectJumpOutOfProgram() throws Exception {
+        ProgramCodec.decode(ByteBuffer.wrap(ProgramCodec.encode(newArrayList(
+                new Operation(JUMP_IF_ZERO, 5, 0, 1, 1), new Operation(JUMP_IF_NOT_ZERO, 0, 0, 1, 2)))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectJumpToWrongPartner() throws Exception {
+        ProgramCodec.decode(ByteBuffer.wrap(ProgramCodec.encode(newArrayList(
+                new Operation(JUMP_IF_ZERO, 2, 0, 1, 1), new Operation(INC, 1), new Operation(PRINT, 1)))));
+    }
+}
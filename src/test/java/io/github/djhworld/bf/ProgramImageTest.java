@@ -0,0 +1,134 @@
+package io.github.djhworld.bf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ProgramImageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Program program = new Program(
+            new int[]{Program.JUMP_IF_ZERO, Program.MUL_ADD, Program.DEC, Program.JUMP_IF_NOT_ZERO, Program.INC_DP},
+            new int[]{3, -7, Integer.MAX_VALUE, 0, Integer.MIN_VALUE},
+            new int[]{0, ProgramImage.MAX_OFFSET, -ProgramImage.MAX_OFFSET, 0, -1});
+
+    @Test
+    public void shouldRoundTripProgram() throws Exception {
+        Program decoded = ProgramImage.wrap(ByteBuffer.wrap(ProgramImage.encode(program))).toProgram();
+
+        assertArrayEquals(program.opcodes, decoded.opcodes);
+        assertArrayEquals(program.arguments, decoded.arguments);
+        assertArrayEquals(program.offsets, decoded.offsets);
+    }
+
+    @Test
+    public void shouldTakeEightBytesPerOperation() throws Exception {
+        assertThat(ProgramImage.encode(program).length, is(16 + 5 * 8));
+    }
+
+    @Test
+    public void shouldMapImageWrittenToFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("program.bfi");
+
+        ProgramImage.write(program, file);
+        ProgramImage image = ProgramImage.map(file);
+
+        assertThat(image.size(), is(5));
+        assertThat(ProgramImage.argument(image.operation(2)), is(Integer.MAX_VALUE));
+        assertThat(ProgramImage.offset(image.operation(2)), is(-ProgramImage.MAX_OFFSET));
+        assertThat(folder.getRoot().list().length, is(1));
+    }
+
+    @Test
+    public void shouldReadImageFromBufferPosition() throws Exception {
+        byte[] encoded = ProgramImage.encode(program);
+        ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 3);
+        buffer.position(3);
+        buffer.put(encoded).position(3);
+
+        assertArrayEquals(program.opcodes, ProgramImage.wrap(buffer).toProgram().opcodes);
+    }
+
+    @Test
+    public void shouldRoundTripOffsetsTooWideForOperation() throws Exception {
+        Program wide = new Program(
+                new int[]{Program.INC, Program.MUL_ADD, Program.SET_ZERO, Program.PRINT},
+                new int[]{1, 3, 0, 1},
+                new int[]{10_000_000, -10_000_000, ProgramImage.MAX_OFFSET + 1, Integer.MIN_VALUE});
+
+        byte[] encoded = ProgramImage.encode(wide);
+        ProgramImage image = ProgramImage.wrap(ByteBuffer.wrap(encoded));
+
+        assertThat(encoded.length, is(16 + 4 * 8 + 4 * 4));
+        assertThat(ProgramImage.isWide(image.operation(0)), is(true));
+        assertThat(ProgramImage.opcode(image.operation(1)), is(Program.MUL_ADD));
+        assertThat(image.offset(0), is(10_000_000));
+        assertArrayEquals(wide.opcodes, image.toProgram().opcodes);
+        assertArrayEquals(wide.offsets, image.toProgram().offsets);
+    }
+
+    @Test
+    public void shouldRejectWideOffsetOutsideTable() throws Exception {
+        byte[] encoded = ProgramImage.encode(new Program(new int[]{Program.INC}, new int[]{1}, new int[]{10_000_000}));
+        // one past the only wide offset
+        encoded[16 + 1] = 1;
+
+        try {
+            ProgramImage.wrap(ByteBuffer.wrap(encoded));
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Wide offset 1 out of range at operation 0"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownFormat() throws Exception {
+        ProgramImage.wrap(ByteBuffer.wrap("not a program image".getBytes("US-ASCII")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTruncatedImage() throws Exception {
+        byte[] encoded = ProgramImage.encode(program);
+
+        ProgramImage.wrap(ByteBuffer.wrap(Arrays.copyOf(encoded, encoded.length - 1)));
+    }
+
+    @Test
+    public void shouldRejectUnknownOpcode() throws Exception {
+        assertCorrupt(new int[]{Program.INC, 12}, new int[]{1, 1}, "Invalid opcode 12 at operation 1");
+    }
+
+    @Test
+    public void shouldRejectJumpTargetsOutsideProgram() throws Exception {
+        assertCorrupt(new int[]{Program.JUMP_IF_ZERO, Program.JUMP_IF_NOT_ZERO}, new int[]{5, 0},
+                "Jump target 5 out of range at operation 0");
+        assertCorrupt(new int[]{Program.INC, Program.JUMP_IF_NOT_ZERO}, new int[]{1, -1},
+                "Jump target -1 out of range at operation 1");
+    }
+
+    @Test
+    public void shouldRejectUnpairedJumps() throws Exception {
+        assertCorrupt(new int[]{Program.JUMP_IF_ZERO, Program.INC}, new int[]{1, 1}, "Unpaired jump at operation 0");
+        assertCorrupt(new int[]{Program.JUMP_IF_ZERO, Program.JUMP_IF_ZERO, Program.JUMP_IF_NOT_ZERO},
+                new int[]{2, 2, 1}, "Unpaired jump at operation 0");
+    }
+
+    private static void assertCorrupt(int[] opcodes, int[] arguments, String message) {
+        try {
+            ProgramImage.wrap(ByteBuffer.wrap(ProgramImage.encode(new Program(opcodes, arguments))));
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is(message));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.djhworld.bf;
+
+import org.junit.Test;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static io.github.djhworld.bf.Instruction.*;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class ProgramTest {
+    @Test
+    public void shouldMirrorInstructionOrdinals() throws Exception {
+        assertThat(Program.INC, is(INC.ordinal()));
+        assertThat(Program.DEC, is(DEC.ordinal()));
+        assertThat(Program.INC_DP, is(INC_DP.ordinal()));
+        assertThat(Program.DEC_DP, is(DEC_DP.ordinal()));
+        assertThat(Program.PRINT, is(PRINT.ordinal()));
+        assertThat(Program.READ, is(READ.ordinal()));
+        assertThat(Program.JUMP_IF_ZERO, is(JUMP_IF_ZERO.ordinal()));
+        assertThat(Program.JUMP_IF_NOT_ZERO, is(JUMP_IF_NOT_ZERO.ordinal()));
+        assertThat(Program.SET_ZERO, is(SET_ZERO.ordinal()));
+        assertThat(Program.SCAN_LEFT, is(SCAN_LEFT.ordinal()));
+        assertThat(Program.SCAN_RIGHT, is(SCAN_RIGHT.ordinal()));
+        assertThat(Program.MUL_ADD, is(MUL_ADD.ordinal()));
+        assertThat(Instruction.values().length, is(12));
+    }
+
+    @Test
+    public void shouldPackOperations() throws Exception {
+        Program program = Program.of(newArrayList(
+                new Operation(INC, 3),
+                new Operation(JUMP_IF_ZERO, 3),
+                new Operation(DEC, 1),
+                new Operation(JUMP_IF_NOT_ZERO, 1),
+                new Operation(MUL_ADD, 2, -1)
+        ));
+
+        assertThat(program.size(), is(5));
+        assertArrayEquals(new int[]{Program.INC, Program.JUMP_IF_ZERO, Program.DEC, Program.JUMP_IF_NOT_ZERO, Program.MUL_ADD}, program.opcodes);
+        assertArrayEquals(new int[]{3, 3, 1, 1, 2}, program.arguments);
+        assertArrayEquals(new int[]{0, 0, 0, 0, -1}, program.offsets);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMismatchedArrays() throws Exception {
+        new Program(new int[2], new int[1]);
+    }
+}
@@ -2,15 +2,38 @@ package io.github.djhworld.bf;
 
 import io.github.djhworld.bf.compile.CompileException;
 import io.github.djhworld.bf.compile.Compiler;
+import io.github.djhworld.bf.closure.ClosureCompiler;
+import io.github.djhworld.bf.closure.ClosureMachine;
+import io.github.djhworld.bf.jit.JitCompiler;
+import io.github.djhworld.bf.jit.JitMachine;
+import io.github.djhworld.bf.jit.TieredMachine;
+import io.github.djhworld.bf.vm.BufferedInput;
+import io.github.djhworld.bf.vm.BufferedOutput;
+import io.github.djhworld.bf.vm.CellWidth;
+import io.github.djhworld.bf.vm.CheckedMachine;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Engine;
+import io.github.djhworld.bf.vm.IntMachine;
 import io.github.djhworld.bf.vm.Machine;
+import io.github.djhworld.bf.vm.OverflowPolicy;
+import io.github.djhworld.bf.vm.ProfilingMachine;
+import io.github.djhworld.bf.vm.ShortMachine;
+import io.github.djhworld.bf.vm.Tape;
+import io.github.djhworld.bf.vm.TapeException;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -55,4 +78,27 @@ public class RunnerTest {
         doThrow(new RuntimeException("simulated")).when(mockedMachine).execute(any(List.class));
         runner.run("...");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldReportLeavingTheTapeTheSameOnEveryEngine() throws Exception {
+        Console console = new Console(new BufferedInput(new ByteArrayInputStream(new byte[0])), new BufferedOutput(new ByteArrayOutputStream()));
+        List<Engine> engines = Arrays.asList(
+                new Machine(console, Tape.fixed(10)),
+                new CheckedMachine(console, new int[10], CellWidth.EIGHT, OverflowPolicy.ERROR),
+                new IntMachine(console, new int[10]),
+                new ShortMachine(console, new char[10]),
+                new ProfilingMachine(console, new byte[10]),
+                new JitMachine(new JitCompiler(), console, new byte[10]),
+                new TieredMachine(new JitCompiler(), console, new byte[10], TieredMachine.DEFAULT_THRESHOLD),
+                new ClosureMachine(new ClosureCompiler(), console, new byte[10]));
+
+        for (Engine engine : engines) {
+            try {
+                new Runner(new Compiler(), engine).run("<+");
+                fail("expected TapeException from " + engine.getClass().getSimpleName());
+            } catch (TapeException e) {
+                assertThat(engine.getClass().getSimpleName(), e.getPosition(), is(-1));
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package io.github.djhworld.bf.aot;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Resources;
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.compile.Compiler;
+import io.github.djhworld.bf.jit.CompiledProgram;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Output;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Strings.repeat;
+import static com.google.common.io.Resources.getResource;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeThat;
+
+public class AotCompilerTest {
+    private static final String HELLO = "++++++++[>++++[>++>+++>+++>+<<<<-]>+>+>->>+[<]<-]>>.>---.+++++++..+++.>>.<-.<.+++.------.--------.>>+.";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldNameClassesAfterSourceFiles() {
+        assertThat(AotCompiler.className("rot13.b"), is("Rot13"));
+        assertThat(AotCompiler.className("test-obscure.b"), is("Test_obscure"));
+        assertThat(AotCompiler.className("99-bottles.b"), is("_99_bottles"));
+        assertThat(AotCompiler.className("mandlebrot"), is("Mandlebrot"));
+    }
+
+    @Test
+    public void shouldCompileDirectoryIntoLoadableClasses() throws Exception {
+        Path sources = folder.newFolder("sources").toPath();
+        Path classes = folder.newFolder("classes").toPath();
+        Files.write(sources.resolve("hello.b"), HELLO.getBytes(StandardCharsets.US_ASCII));
+        Files.write(sources.resolve("notes.txt"), "not a program".getBytes(StandardCharsets.US_ASCII));
+
+        List<Path> written = new AotCompiler().compileDirectory(sources, classes);
+
+        assertThat(written.size(), is(1));
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, getClass().getClassLoader())) {
+            CompiledProgram program = (CompiledProgram) loader.loadClass(AotCompiler.PACKAGE + ".Hello").newInstance();
+            assertThat(run(program), is("Hello World!"));
+        }
+    }
+
+    @Test
+    public void shouldRefuseFilesCompilingToSameClass() throws Exception {
+        Path sources = folder.newFolder("sources").toPath();
+        Path classes = folder.newFolder("classes").toPath();
+        Files.write(sources.resolve("a-b.b"), HELLO.getBytes(StandardCharsets.US_ASCII));
+        Files.write(sources.resolve("a_b.b"), "+".getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            new AotCompiler().compileDirectory(sources, classes);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("A_b"));
+        }
+        assertThat(Files.exists(classes.resolve(AotCompiler.PACKAGE.replace('.', '/'))), is(false));
+    }
+
+    @Test
+    public void shouldWriteAddressesForEveryOffset() {
+        assertThat(JavaTranspiler.address(0), is("p"));
+        assertThat(JavaTranspiler.address(3), is("p + 3"));
+        assertThat(JavaTranspiler.address(-3), is("p + (-3)"));
+        assertThat(JavaTranspiler.address(Integer.MIN_VALUE), is("p + (-2147483648)"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownPrecompiledProgram() {
+        AotCompiler.load("no-such-program");
+    }
+
+    @Test
+    public void shouldTranspileToJavaThatCompilesAndRuns() throws Exception {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        assumeThat(javac, is(notNullValue()));
+
+        // long enough to be split into several methods, the loops in front leave the tape as they found it
+        String source = repeat("++++[>++++<-]>[<+>-]<[->>+<<]>>[-]<<", 100) + HELLO;
+        Program program = new Compiler().compileToProgram(source);
+        Path directory = folder.newFolder("java").toPath();
+        Path file = directory.resolve("Hello.java");
+        Files.write(file, new JavaTranspiler(100).transpile("Hello", program).getBytes(StandardCharsets.UTF_8));
+        assertThat(javac.run(null, null, null, file.toString()), is(0));
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // the class picks up standard output as it is loaded
+        System.setOut(new PrintStream(output, true));
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{directory.toUri().toURL()}, null)) {
+            Class<?> hello = loader.loadClass("Hello");
+            hello.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+            assertThat(new String(output.toByteArray(), StandardCharsets.US_ASCII), is("Hello World!"));
+
+            byte[] tape = new byte[100];
+            Object pointer = hello.getMethod("run", byte[].class, int.class).invoke(null, tape, 0);
+            assertThat(pointer, is(5));
+            assertArrayEquals(new byte[]{0, 0, 72, 100, 87, 33, 8, 0}, Arrays.copyOf(tape, 8));
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    @Test
+    public void shouldTranspileToCThatCompilesAndRuns() throws Exception {
+        Path directory = folder.newFolder("c").toPath();
+        Path file = directory.resolve("rot13.c");
+        Path binary = directory.resolve("rot13");
+        String source = Resources.toString(getResource("rot13.b"), UTF_8);
+        Files.write(file, new CTranspiler(100).transpile(new Compiler().compileToProgram(source)).getBytes(StandardCharsets.US_ASCII));
+        assumeThat(exec(null, "cc", "-O1", "-o", binary.toString(), file.toString()), is(notNullValue()));
+
+        assertThat(exec("Hello, World!", binary.toString()), is("Uryyb, Jbeyq!"));
+    }
+
+    /**
+     * @return the standard output of the command, or null if it could not be run or failed
+     */
+    private static String exec(String input, String... command) throws Exception {
+        Process process;
+        try {
+            process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        } catch (IOException e) {
+            return null;
+        }
+        try (OutputStream stdin = process.getOutputStream()) {
+            if (input != null)
+                stdin.write(input.getBytes(StandardCharsets.US_ASCII));
+        }
+        String output = new String(ByteStreams.toByteArray(process.getInputStream()), StandardCharsets.US_ASCII);
+        return process.waitFor() == 0 ? output : null;
+    }
+
+    private static String run(CompiledProgram program) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Console console = new Console(() -> -1, new Output() {
+            @Override
+            public void write(byte value, int times) {
+                for (int i = 0; i < times; i++)
+                    out.write(value);
+            }
+
+            @Override
+            public void flush() {
+            }
+        });
+        program.execute(new byte[100], 0, console);
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}
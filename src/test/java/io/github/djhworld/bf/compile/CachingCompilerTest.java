@@ -0,0 +1,145 @@
+package io.github.djhworld.bf.compile;
+
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.ProgramCodec;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static io.github.djhworld.bf.Instruction.*;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class CachingCompilerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldReturnCachedProgramForSameSource() throws Exception {
+        CachingCompiler compiler = new CachingCompiler(10);
+
+        List<Operation> first = compiler.compile("+[->+<]");
+        List<Operation> second = compiler.compile(Channels.newChannel(new ByteArrayInputStream("+[->+<]".getBytes("US-ASCII"))));
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(compiler.size(), is(1));
+    }
+
+    @Test
+    public void shouldShareEntriesBetweenOverloads() throws Exception {
+        CachingCompiler compiler = new CachingCompiler(10);
+        byte[] source = "+[->+<]".getBytes("US-ASCII");
+
+        List<Operation> first = compiler.compile(new ByteArrayInputStream(source));
+        assertThat(compiler.compile(new StringReader("+[->+<]")), is(sameInstance(first)));
+        assertThat(compiler.compile("+[->+<]"), is(sameInstance(first)));
+        assertThat(compiler.size(), is(1));
+    }
+
+    @Test
+    public void shouldKeepCharsOutsideLatin1ApartFromCommands() throws Exception {
+        CachingCompiler compiler = new CachingCompiler(10);
+
+        // U+012B has '+' as its low byte
+        List<Operation> plus = compiler.compile("+.");
+        List<Operation> other = compiler.compile("\u012b.");
+
+        assertThat(plus.size(), is(2));
+        assertThat(other.size(), is(1));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() throws Exception {
+        CachingCompiler compiler = new CachingCompiler(2);
+
+        List<Operation> a = compiler.compile("+");
+        compiler.compile("-");
+        compiler.compile("+");
+        compiler.compile(">");
+
+        assertThat(compiler.size(), is(2));
+        assertThat(compiler.compile("+"), is(sameInstance(a)));
+    }
+
+    @Test
+    public void shouldKeepCompilerOptionsApart() throws Exception {
+        Path directory = folder.getRoot().toPath();
+
+        List<Operation> wrapping = new CachingCompiler(true, 10, directory).compile("[+]");
+        List<Operation> checked = new CachingCompiler(false, 10, directory).compile("[+]");
+
+        assertThat(wrapping.get(0).instruction, is(SET_ZERO));
+        assertThat(checked.get(0).instruction, is(JUMP_IF_ZERO));
+        assertThat(folder.getRoot().list().length, is(2));
+
+        List<Operation> precomputed = new CachingCompiler(new PartialEvaluator(), 10, directory).compile("+++.");
+        assertThat(precomputed.get(0).instruction, is(SET_ZERO));
+        assertThat(new CachingCompiler(true, 10, directory).compile("+++.").get(0).instruction, is(INC));
+        assertThat(folder.getRoot().list().length, is(4));
+    }
+
+    @Test
+    public void shouldReadProgramsCompiledByAnotherInstance() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("cache");
+        new CachingCompiler(true, 10, directory).compile("++[>+<-].");
+
+        File[] entries = directory.toFile().listFiles();
+        assertThat(entries.length, is(1));
+
+        // an entry that decodes to something else proves the second compiler never parsed the source
+        Files.write(entries[0].toPath(), ProgramCodec.encode(singletonList(new Operation(PRINT, 42))));
+
+        List<Operation> cached = new CachingCompiler(true, 10, directory).compile("++[>+<-].");
+        assertThat(cached.size(), is(1));
+        assertThat(cached.get(0).argument, is(42));
+    }
+
+    @Test
+    public void shouldRecompileCorruptEntries() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        List<Operation> compiled = new CachingCompiler(true, 10, directory).compile("+++.");
+        File entry = directory.toFile().listFiles()[0];
+        Files.write(entry.toPath(), new byte[]{1, 2, 3});
+
+        List<Operation> recompiled = new CachingCompiler(true, 10, directory).compile("+++.");
+
+        assertThat(recompiled.size(), is(compiled.size()));
+        assertThat(Files.size(entry.toPath()), is(not(3L)));
+    }
+
+    @Test
+    public void shouldRecompileEntriesWithUnpairedJumps() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        new CachingCompiler(false, 10, directory).compile("+[>+<-].");
+        File entry = directory.toFile().listFiles()[0];
+        // a loop whose end jumps to itself would never exit
+        Files.write(entry.toPath(), ProgramCodec.encode(asList(
+                new Operation(JUMP_IF_ZERO, 1, 0, 1, 1), new Operation(JUMP_IF_NOT_ZERO, 1, 0, 1, 2))));
+
+        List<Operation> recompiled = new CachingCompiler(false, 10, directory).compile("+[>+<-].");
+
+        assertThat(recompiled.get(0).instruction, is(INC));
+    }
+
+    @Test(expected = CompileException.class)
+    public void shouldNotCacheCompileErrors() throws Exception {
+        CachingCompiler compiler = new CachingCompiler(10);
+        try {
+            compiler.compile("[");
+        } finally {
+            assertThat(compiler.size(), is(0));
+        }
+    }
+}
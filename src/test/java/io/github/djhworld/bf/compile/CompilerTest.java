@@ -1,24 +1,38 @@
 package io.github.djhworld.bf.compile;
 
 import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.ir.ConstantFoldingPass;
+import io.github.djhworld.bf.ir.IdiomPass;
+import io.github.djhworld.bf.ir.OffsetPass;
+import io.github.djhworld.bf.ir.PassManager;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.TypeSafeMatcher;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.CharArrayReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 
 import static io.github.djhworld.bf.Instruction.*;
+import static org.hamcrest.core.Is.is;
 import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class CompilerTest {
     private Compiler compiler;
 
     @Before
     public void setUp() throws Exception {
-        compiler = new Compiler();
+        // the rewrites of single loops on their own, without the passes that look across loops
+        compiler = new Compiler(true, idiomsAndOffsets(true), null);
     }
 
     @Test
@@ -27,20 +41,16 @@ public class CompilerTest {
 
         List<Operation> compiled = compiler.compile(program);
         assertThat(compiled, contains(
-                operationMatcher(new Operation(DEC_DP, 1)),
-                operationMatcher(new Operation(INC_DP, 1)),
                 operationMatcher(new Operation(INC, 1)),
                 operationMatcher(new Operation(DEC, 1)),
                 operationMatcher(new Operation(PRINT, 1)),
                 operationMatcher(new Operation(READ, 1)),
                 operationMatcher(new Operation(INC, 4)),
-                operationMatcher(new Operation(JUMP_IF_ZERO, 10)),
+                operationMatcher(new Operation(JUMP_IF_ZERO, 8)),
                 operationMatcher(new Operation(PRINT, 2)),
                 operationMatcher(new Operation(READ, 2)),
-                operationMatcher(new Operation(JUMP_IF_NOT_ZERO, 7)),
-                operationMatcher(new Operation(INC_DP, 2)),
-                operationMatcher(new Operation(DEC, 4)),
-                operationMatcher(new Operation(DEC_DP, 2))
+                operationMatcher(new Operation(JUMP_IF_NOT_ZERO, 5)),
+                operationMatcher(new Operation(DEC, 4, 2))
         ));
     }
 
@@ -65,6 +75,18 @@ public class CompilerTest {
         ));
     }
 
+    @Test
+    public void shouldIgnoreNulAndOtherNonCommandBytes() throws Exception {
+        String program = "+\0\0.\u00ff x\t\0,";
+
+        List<Operation> compiled = compiler.compile(program);
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(INC, 1)),
+                operationMatcher(new Operation(PRINT, 1)),
+                operationMatcher(new Operation(READ, 1))
+        ));
+    }
+
     @Test
     public void shouldCompileProgramWithNestedLoops() throws Exception {
         String program = "[[[[[.]]]]]";
@@ -94,11 +116,148 @@ public class CompilerTest {
         assertThat(compiled, contains(
                 operationMatcher(new Operation(INC, 4)),
                 operationMatcher(new Operation(DEC, 3)),
-                operationMatcher(new Operation(INC_DP, 3)),
-                operationMatcher(new Operation(PRINT, 1))
+                operationMatcher(new Operation(PRINT, 1, 3)),
+                operationMatcher(new Operation(INC_DP, 3))
+        ));
+    }
+
+    @Test
+    public void shouldRewriteClearLoops() throws Exception {
+        List<Operation> compiled = compiler.compile("+[-]>[+]>[---]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(INC, 1)),
+                operationMatcher(new Operation(SET_ZERO, 0)),
+                operationMatcher(new Operation(SET_ZERO, 0, 1)),
+                operationMatcher(new Operation(SET_ZERO, 0, 2)),
+                operationMatcher(new Operation(INC_DP, 2))
         ));
     }
 
+    @Test
+    public void shouldNotRewriteClearLoopsWithEvenStep() throws Exception {
+        List<Operation> compiled = compiler.compile("[--]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(JUMP_IF_ZERO, 2)),
+                operationMatcher(new Operation(DEC, 2)),
+                operationMatcher(new Operation(JUMP_IF_NOT_ZERO, 0))
+        ));
+    }
+
+    @Test
+    public void shouldRewriteScanLoops() throws Exception {
+        List<Operation> compiled = compiler.compile("[>][<<]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(SCAN_RIGHT, 1)),
+                operationMatcher(new Operation(SCAN_LEFT, 2))
+        ));
+    }
+
+    @Test
+    public void shouldRewriteMultiplyLoops() throws Exception {
+        List<Operation> compiled = compiler.compile("[->+>++<<]<[>>---<<+]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(MUL_ADD, 1, 1)),
+                operationMatcher(new Operation(MUL_ADD, 2, 2)),
+                operationMatcher(new Operation(SET_ZERO, 0)),
+                operationMatcher(new Operation(DEC_DP, 1)),
+                operationMatcher(new Operation(MUL_ADD, 3, 2)),
+                operationMatcher(new Operation(SET_ZERO, 0))
+        ));
+    }
+
+    @Test
+    public void shouldResolveJumpsAroundRewrittenLoops() throws Exception {
+        List<Operation> compiled = compiler.compile("[[-]>[->+<]]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(JUMP_IF_ZERO, 5)),
+                operationMatcher(new Operation(SET_ZERO, 0)),
+                operationMatcher(new Operation(INC_DP, 1)),
+                operationMatcher(new Operation(MUL_ADD, 1, 1)),
+                operationMatcher(new Operation(SET_ZERO, 0)),
+                operationMatcher(new Operation(JUMP_IF_NOT_ZERO, 0))
+        ));
+    }
+
+    @Test
+    public void shouldNotRewriteLoopsWithSideEffectsOrDrift() throws Exception {
+        List<Operation> compiled = compiler.compile("[-.][->+]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(JUMP_IF_ZERO, 3)),
+                operationMatcher(new Operation(DEC, 1)),
+                operationMatcher(new Operation(PRINT, 1)),
+                operationMatcher(new Operation(JUMP_IF_NOT_ZERO, 0)),
+                operationMatcher(new Operation(JUMP_IF_ZERO, 8)),
+                operationMatcher(new Operation(DEC, 1)),
+                operationMatcher(new Operation(INC, 1, 1)),
+                operationMatcher(new Operation(INC_DP, 1)),
+                operationMatcher(new Operation(JUMP_IF_NOT_ZERO, 4))
+        ));
+    }
+
+    @Test
+    public void shouldOnlyRewriteLoopsCountingDownWithoutWrapping() throws Exception {
+        List<Operation> compiled = new Compiler(false, idiomsAndOffsets(false), null).compile("[-][+][->+<][->++-<]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(SET_ZERO, 0)),
+                operationMatcher(new Operation(JUMP_IF_ZERO, 3)),
+                operationMatcher(new Operation(INC, 1)),
+                operationMatcher(new Operation(JUMP_IF_NOT_ZERO, 1)),
+                operationMatcher(new Operation(MUL_ADD, 1, 1)),
+                operationMatcher(new Operation(SET_ZERO, 0)),
+                operationMatcher(new Operation(JUMP_IF_ZERO, 10)),
+                operationMatcher(new Operation(DEC, 1)),
+                operationMatcher(new Operation(INC, 2, 1)),
+                operationMatcher(new Operation(DEC, 1, 1)),
+                operationMatcher(new Operation(JUMP_IF_NOT_ZERO, 6))
+        ));
+    }
+
+    @Test
+    public void shouldFoldPointerMovesIntoOffsets() throws Exception {
+        List<Operation> compiled = compiler.compile(">+>++<<-<,>>>.[<]>>[>+<-]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(INC, 1, 1)),
+                operationMatcher(new Operation(INC, 2, 2)),
+                operationMatcher(new Operation(DEC, 1, 0)),
+                operationMatcher(new Operation(READ, 1, -1)),
+                operationMatcher(new Operation(PRINT, 1, 2)),
+                operationMatcher(new Operation(INC_DP, 2)),
+                operationMatcher(new Operation(SCAN_LEFT, 1)),
+                operationMatcher(new Operation(INC_DP, 2)),
+                operationMatcher(new Operation(MUL_ADD, 1, 1)),
+                operationMatcher(new Operation(SET_ZERO, 0))
+        ));
+    }
+
+    @Test
+    public void shouldFlushPointerMoveBeforeLoopEnd() throws Exception {
+        List<Operation> compiled = compiler.compile("[.>>+<]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(JUMP_IF_ZERO, 4)),
+                operationMatcher(new Operation(PRINT, 1)),
+                operationMatcher(new Operation(INC, 1, 2)),
+                operationMatcher(new Operation(INC_DP, 1)),
+                operationMatcher(new Operation(JUMP_IF_NOT_ZERO, 0))
+        ));
+    }
+
+    @Test(expected = CompileException.class)
+    public void shouldRaiseErrorWhenRewrittenLoopIsUnbalanced() throws Exception {
+        compiler.compile("[-]]");
+    }
+
+    @Test
+    public void shouldCompileToPackedProgram() throws Exception {
+        Program compiled = compiler.compileToProgram("++[>.<-]>[-<+>]");
+
+        assertArrayEquals(new int[]{
+                Program.INC, Program.JUMP_IF_ZERO, Program.PRINT, Program.DEC, Program.JUMP_IF_NOT_ZERO,
+                Program.INC_DP, Program.MUL_ADD, Program.SET_ZERO
+        }, compiled.opcodes);
+        assertArrayEquals(new int[]{2, 4, 1, 1, 1, 1, 1, 0}, compiled.arguments);
+        assertArrayEquals(new int[]{0, 0, 1, 0, 0, 0, -1, 0}, compiled.offsets);
+    }
+
     @Test(expected = CompileException.class)
     public void shouldRaiseErrorOnEmptyProgram() throws Exception {
         compiler.compile("");
@@ -106,7 +265,7 @@ public class CompilerTest {
 
     @Test(expected = CompileException.class)
     public void shouldRaiseErrorOnNullProgram() throws Exception {
-        compiler.compile(null);
+        compiler.compile((String) null);
     }
 
     @Test(expected = CompileException.class)
@@ -119,12 +278,184 @@ public class CompilerTest {
         compiler.compile("----------]");
     }
 
+    @Test
+    public void shouldReportLineAndColumnOfUnmatchedStartLoop() throws Exception {
+        try {
+            compiler.compile("+[\n--[-]\n  [>");
+            fail("expected CompileException");
+        } catch (CompileException e) {
+            assertThat(e.getLine(), is(3));
+            assertThat(e.getColumn(), is(3));
+        }
+    }
+
+    @Test
+    public void shouldReportLineAndColumnOfUnmatchedEndLoop() throws Exception {
+        try {
+            compiler.compile("[-]\n+ ]");
+            fail("expected CompileException");
+        } catch (CompileException e) {
+            assertThat(e.getLine(), is(2));
+            assertThat(e.getColumn(), is(3));
+        }
+    }
+
+    @Test
+    public void shouldKeepSourcePositionOfLoops() throws Exception {
+        List<Operation> operations = compiler.compile("+[>\n [-]<.\n]");
+
+        // [-] is rewritten to SET_ZERO, only the outer loop is left
+        assertThat(operations.get(1).instruction, is(JUMP_IF_ZERO));
+        assertThat(operations.get(1).line, is(1));
+        assertThat(operations.get(1).column, is(2));
+        Operation end = operations.get(operations.size() - 1);
+        assertThat(end.instruction, is(JUMP_IF_NOT_ZERO));
+        assertThat(end.line, is(3));
+        assertThat(end.column, is(1));
+        assertThat(operations.get(2).line, is(-1));
+    }
+
+    @Test
+    public void shouldFoldTokensAcrossReadBoundaries() throws Exception {
+        char[] tokens = new char[20000];
+        Arrays.fill(tokens, '+');
+
+        List<Operation> compiled = compiler.compile(new CharArrayReader(tokens));
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(INC, 20000))
+        ));
+    }
+
+    @Test
+    public void shouldCompileFromStreamAndChannel() throws Exception {
+        byte[] source = "+[->+<]".getBytes(StandardCharsets.US_ASCII);
+
+        List<Operation> fromStream = compiler.compile(new ByteArrayInputStream(source));
+        List<Operation> fromChannel = compiler.compile(Channels.newChannel(new ByteArrayInputStream(source)));
+        for (List<Operation> compiled : Arrays.asList(fromStream, fromChannel)) {
+            assertThat(compiled, contains(
+                    operationMatcher(new Operation(INC, 1)),
+                    operationMatcher(new Operation(MUL_ADD, 1, 1)),
+                    operationMatcher(new Operation(SET_ZERO, 0))
+            ));
+        }
+    }
+
+    @Test
+    public void shouldCompileDeeplyNestedLoops() throws Exception {
+        int depth = 100000;
+        StringBuilder program = new StringBuilder();
+        for (int i = 0; i < depth; i++)
+            program.append("[.");
+        for (int i = 0; i < depth; i++)
+            program.append("]");
+
+        List<Operation> compiled = compiler.compile(program.toString());
+        assertThat(compiled.size(), is(depth * 3));
+        assertThat(compiled.get(0).argument, is(depth * 3 - 1));
+        assertThat(compiled.get(depth * 3 - 1).argument, is(0));
+        assertThat(compiled.get(depth * 2 - 2).argument, is(depth * 2));
+    }
+
+    @Test
+    public void shouldFoldConstants() throws Exception {
+        List<Operation> compiled = new Compiler().compile("+>-<->+++.<+-");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(INC, 2, 1)),
+                operationMatcher(new Operation(PRINT, 1, 1))
+        ));
+    }
+
+    @Test
+    public void shouldDropStoresOverwrittenBySetZero() throws Exception {
+        List<Operation> compiled = new Compiler().compile("+++>[-]<[-]>.,+[-]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(SET_ZERO, 0, 1)),
+                operationMatcher(new Operation(SET_ZERO, 0)),
+                operationMatcher(new Operation(PRINT, 1, 1)),
+                operationMatcher(new Operation(READ, 1, 1)),
+                operationMatcher(new Operation(SET_ZERO, 0, 1)),
+                operationMatcher(new Operation(INC_DP, 1))
+        ));
+    }
+
+    @Test
+    public void shouldDropLoopsStartingOnZeroCell() throws Exception {
+        List<Operation> compiled = new Compiler().compile("[.][+.][>]>[-]<[<][-]>[>+<-]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(JUMP_IF_ZERO, 2)),
+                operationMatcher(new Operation(PRINT, 1)),
+                operationMatcher(new Operation(JUMP_IF_NOT_ZERO, 0)),
+                operationMatcher(new Operation(SET_ZERO, 0, 1)),
+                operationMatcher(new Operation(INC_DP, 1))
+        ));
+    }
+
+    @Test
+    public void shouldNotAssumeTapeIsEmptyAtStart() throws Exception {
+        List<Operation> compiled = new Compiler().compile("[-]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(SET_ZERO, 0))
+        ));
+    }
+
+    @Test
+    public void shouldHoistSetZeroOutOfLoops() throws Exception {
+        List<Operation> compiled = new Compiler().compile("[>[-]<->>+<<]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(JUMP_IF_ZERO, 4)),
+                operationMatcher(new Operation(SET_ZERO, 0, 1)),
+                operationMatcher(new Operation(MUL_ADD, 1, 2)),
+                operationMatcher(new Operation(SET_ZERO, 0)),
+                operationMatcher(new Operation(JUMP_IF_NOT_ZERO, 0))
+        ));
+    }
+
+    @Test
+    public void shouldNotHoistSetZeroOfCellUsedInLoop() throws Exception {
+        List<Operation> compiled = new Compiler().compile("[>[-]+<-]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(JUMP_IF_ZERO, 4)),
+                operationMatcher(new Operation(SET_ZERO, 0, 1)),
+                operationMatcher(new Operation(INC, 1, 1)),
+                operationMatcher(new Operation(DEC, 1)),
+                operationMatcher(new Operation(JUMP_IF_NOT_ZERO, 0))
+        ));
+    }
+
+    @Test
+    public void shouldLeaveOutPassesThatNeedWrappingCells() throws Exception {
+        List<Operation> compiled = new Compiler(false).compile("+-[-]");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(INC, 1)),
+                operationMatcher(new Operation(DEC, 1)),
+                operationMatcher(new Operation(SET_ZERO, 0))
+        ));
+    }
+
+    @Test
+    public void shouldSkipDisabledPasses() throws Exception {
+        PassManager passes = PassManager.defaults(true).disable(ConstantFoldingPass.NAME);
+        List<Operation> compiled = new Compiler(true, passes, null).compile("+-");
+        assertThat(compiled, contains(
+                operationMatcher(new Operation(INC, 1)),
+                operationMatcher(new Operation(DEC, 1))
+        ));
+    }
+
+    private static PassManager idiomsAndOffsets(boolean wrappingCells) {
+        return new PassManager()
+                .add(new IdiomPass(wrappingCells))
+                .add(new OffsetPass());
+    }
+
     private Matcher<Operation> operationMatcher(final Operation expected) {
         return new TypeSafeMatcher<Operation>() {
             @Override
             protected boolean matchesSafely(Operation actual) {
                 return expected.argument == actual.argument
-                        && expected.instruction == actual.instruction;
+                        && expected.instruction == actual.instruction
+                        && expected.offset == actual.offset;
             }
 
             @Override
@@ -0,0 +1,121 @@
+package io.github.djhworld.bf.compile;
+
+import io.github.djhworld.bf.Instruction;
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.vm.BufferedInput;
+import io.github.djhworld.bf.vm.BufferedOutput;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Machine;
+import io.github.djhworld.bf.vm.Tape;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static io.github.djhworld.bf.Instruction.*;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class PartialEvaluatorTest {
+    private static final String HELLO_WORLD = "++++++++[>++++[>++>+++>+++>+<<<<-]>+>+>->>+[<]<-]>>.>---.+++++++..+++.>>.<-.<.+++.------.--------.>>+.";
+
+    private final Compiler compiler = new Compiler();
+
+    @Test
+    public void shouldReplaceProgramWithoutInputByItsOutput() throws Exception {
+        List<Operation> evaluated = new PartialEvaluator().evaluate(compiler.compile(HELLO_WORLD));
+
+        for (Operation operation : evaluated)
+            assertThat(operation.instruction == SET_ZERO || operation.instruction == INC || operation.instruction == PRINT, is(true));
+        assertThat(run(evaluated, ""), is("Hello World!"));
+    }
+
+    @Test
+    public void shouldStartFromStateLeftBeforeFirstRead() throws Exception {
+        String source = "+++[>++<-]>.>+++++[<+++++>-],.<.";
+        List<Operation> evaluated = new PartialEvaluator().evaluate(compiler.compile(source));
+
+        // everything up to the READ was run ahead of time
+        assertThat(evaluated.get(indexOf(evaluated, READ) - 1).instruction, is(INC_DP));
+        assertThat(indexOf(evaluated, JUMP_IF_ZERO), is(-1));
+        assertThat(run(evaluated, "x"), is(run(compiler.compile(source), "x")));
+    }
+
+    @Test
+    public void shouldOnlyRunUnitsThatFinishWithinBudget() throws Exception {
+        String source = "+.>++++++++[>++++++++[>+<-]<-]>>.";
+        List<Operation> compiled = compiler.compile(source);
+
+        List<Operation> evaluated = new PartialEvaluator(10, Tape.DEFAULT_SIZE).evaluate(compiled);
+
+        // the outer loop is left in place and the jumps into it moved along with it
+        int start = indexOf(evaluated, JUMP_IF_ZERO);
+        assertThat(start, is(not(-1)));
+        assertThat(evaluated.get(evaluated.get(start).argument).argument, is(start));
+        assertThat(run(evaluated, ""), is(run(compiled, "")));
+    }
+
+    @Test
+    public void shouldLeaveProgramLeavingTheTapeAlone() throws Exception {
+        List<Operation> compiled = compiler.compile("+<+,");
+
+        assertThat(new PartialEvaluator().evaluate(compiled), is(sameInstance(compiled)));
+    }
+
+    @Test
+    public void shouldLeaveProgramStartingWithReadAlone() throws Exception {
+        List<Operation> compiled = compiler.compile(",[.,]");
+
+        assertThat(new PartialEvaluator().evaluate(compiled), is(sameInstance(compiled)));
+    }
+
+    @Test
+    public void shouldSetCellsRatherThanAddToThem() throws Exception {
+        List<Operation> evaluated = new PartialEvaluator().evaluate(compiler.compile("+++>++,"));
+        Tape tape = Tape.fixed(10);
+        tape.set(0, (byte) 5);
+        tape.set(1, (byte) 5);
+
+        new Machine(new Console(new BufferedInput(new ByteArrayInputStream(new byte[0])), new BufferedOutput(new ByteArrayOutputStream())), tape)
+                .execute(evaluated);
+
+        assertThat(tape.get(0), is((byte) 3));
+        assertThat(tape.get(1), is((byte) 2));
+    }
+
+    @Test
+    public void shouldOnlyRunUnitsPrintingWithinOutputLimit() throws Exception {
+        String source = "+++.>+[>++++++++<-]>..........<+.,";
+        List<Operation> compiled = compiler.compile(source);
+
+        List<Operation> evaluated = new PartialEvaluator(PartialEvaluator.DEFAULT_MAX_OPERATIONS, 5, Tape.DEFAULT_SIZE).evaluate(compiled);
+
+        // the first print fits, the run of ten does not and is left in place along with everything after it
+        assertThat(evaluated.get(indexOf(evaluated, PRINT)).argument, is(1));
+        int kept = 0;
+        for (Operation operation : evaluated) {
+            if (operation.instruction == PRINT && operation.argument == 10)
+                kept++;
+        }
+        assertThat(kept, is(1));
+        assertThat(run(evaluated, "x"), is(run(compiled, "x")));
+    }
+
+    private static int indexOf(List<Operation> operations, Instruction instruction) {
+        for (int i = 0; i < operations.size(); i++) {
+            if (operations.get(i).instruction == instruction)
+                return i;
+        }
+        return -1;
+    }
+
+    private static String run(List<Operation> operations, String input) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Console console = new Console(new BufferedInput(new ByteArrayInputStream(input.getBytes("ISO-8859-1"))), new BufferedOutput(output));
+        new Machine(console, Tape.fixed(Tape.DEFAULT_SIZE)).execute(operations);
+        return output.toString("ISO-8859-1");
+    }
+}
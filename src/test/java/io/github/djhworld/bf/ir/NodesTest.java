@@ -0,0 +1,90 @@
+package io.github.djhworld.bf.ir;
+
+import io.github.djhworld.bf.Operation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.github.djhworld.bf.Instruction.*;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class NodesTest {
+    @Test
+    public void shouldBuildTreeOfBlocksAndLoops() throws Exception {
+        List<Node> nodes = Nodes.of(Arrays.asList(
+                new Operation(INC, 1),
+                new Operation(JUMP_IF_ZERO, 0, 0, 1, 2),
+                new Operation(DEC, 1),
+                new Operation(JUMP_IF_ZERO, 0),
+                new Operation(PRINT, 1),
+                new Operation(JUMP_IF_NOT_ZERO, 0),
+                new Operation(JUMP_IF_NOT_ZERO, 0, 0, 2, 5)));
+
+        assertThat(nodes.size(), is(2));
+        Loop loop = (Loop) nodes.get(1);
+        assertThat(loop.line, is(1));
+        assertThat(loop.column, is(2));
+        assertThat(loop.endLine, is(2));
+        assertThat(loop.endColumn, is(5));
+        assertThat(loop.body.size(), is(2));
+        assertThat(((Block) loop.body.get(0)).operations.get(0).instruction, is(DEC));
+        assertThat(((Loop) loop.body.get(1)).body.size(), is(1));
+    }
+
+    @Test
+    public void shouldResolveJumpsWhenLowering() throws Exception {
+        List<Operation> operations = Nodes.lower(Nodes.of(Arrays.asList(
+                new Operation(JUMP_IF_ZERO, 0, 0, 1, 1),
+                new Operation(JUMP_IF_ZERO, 0),
+                new Operation(JUMP_IF_NOT_ZERO, 0),
+                new Operation(PRINT, 1),
+                new Operation(JUMP_IF_NOT_ZERO, 0, 0, 1, 6))));
+
+        int[] arguments = new int[operations.size()];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = operations.get(i).argument;
+        assertThat(arguments, is(new int[]{4, 2, 1, 1, 0}));
+        assertThat(operations.get(0).column, is(1));
+        assertThat(operations.get(4).column, is(6));
+    }
+
+    @Test
+    public void shouldMergeBlocksLeftNextToEachOther() throws Exception {
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(new Block(Arrays.asList(new Operation(INC, 1))));
+        nodes.add(new Loop(new ArrayList<>()));
+        nodes.add(new Block(Arrays.asList(new Operation(DEC, 1))));
+
+        // dropping the loop leaves two blocks which become one
+        List<Node> rewritten = Nodes.rewrite(nodes, sequence -> {
+            List<Node> result = new ArrayList<>(sequence);
+            result.removeIf(node -> node instanceof Loop);
+            return result;
+        });
+
+        assertThat(rewritten.size(), is(1));
+        assertThat(((Block) rewritten.get(0)).operations.size(), is(2));
+    }
+
+    @Test
+    public void shouldRewriteDeeplyNestedLoops() throws Exception {
+        int depth = 100000;
+        List<Operation> operations = new ArrayList<>();
+        for (int i = 0; i < depth; i++)
+            operations.add(new Operation(JUMP_IF_ZERO, 0));
+        for (int i = 0; i < depth; i++)
+            operations.add(new Operation(JUMP_IF_NOT_ZERO, 0));
+
+        int[] sequences = new int[1];
+        List<Node> nodes = Nodes.rewrite(Nodes.of(operations), sequence -> {
+            sequences[0]++;
+            return sequence;
+        });
+
+        assertThat(sequences[0], is(depth + 1));
+        assertThat(Nodes.lower(nodes).get(0).argument, is(depth * 2 - 1));
+    }
+}
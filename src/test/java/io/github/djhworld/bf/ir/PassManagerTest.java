@@ -0,0 +1,97 @@
+package io.github.djhworld.bf.ir;
+
+import io.github.djhworld.bf.Operation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.github.djhworld.bf.Instruction.INC;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PassManagerTest {
+    @Test
+    public void shouldRunDefaultPassesInOrder() throws Exception {
+        assertThat(PassManager.defaults(true).getPasses(), is(Arrays.asList(
+                "idioms", "offsets", "loop-invariants", "constant-folding", "dead-stores", "dead-loops")));
+        assertThat(PassManager.defaults(false).getPasses(), is(Arrays.asList(
+                "idioms", "offsets", "loop-invariants", "dead-loops")));
+    }
+
+    @Test
+    public void shouldPlacePassesRelativeToOthers() throws Exception {
+        PassManager passes = PassManager.defaults(true)
+                .addBefore(OffsetPass.NAME, new Recorder("first"))
+                .addAfter(DeadLoopPass.NAME, new Recorder("last"))
+                .remove(DeadStorePass.NAME);
+
+        assertThat(passes.getPasses(), is(Arrays.asList(
+                "idioms", "first", "offsets", "loop-invariants", "constant-folding", "dead-loops", "last")));
+    }
+
+    @Test
+    public void shouldOnlyRunEnabledPasses() throws Exception {
+        Recorder recorder = new Recorder("recorder");
+        PassManager passes = new PassManager().add(recorder).disable("recorder");
+
+        passes.run(program());
+        assertThat(recorder.sequences.size(), is(0));
+        assertThat(passes.getEnabledPasses().isEmpty(), is(true));
+
+        passes.enable("recorder").run(program());
+        assertThat(recorder.sequences.size(), is(2));
+    }
+
+    @Test
+    public void shouldRewriteLoopBodiesBeforeTheirParent() throws Exception {
+        Recorder recorder = new Recorder("recorder");
+        new PassManager().add(recorder).run(program());
+
+        // the body of the loop is seen first and on its own, the program afterwards with one loop in it
+        assertThat(recorder.sequences.get(0).size(), is(1));
+        assertThat(recorder.sequences.get(0).get(0) instanceof Block, is(true));
+        assertThat(recorder.sequences.get(1).size(), is(2));
+        assertThat(recorder.sequences.get(1).get(1) instanceof Loop, is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRefuseTwoPassesOfTheSameName() throws Exception {
+        PassManager.defaults(true).add(new OffsetPass());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRefuseToDisableUnknownPass() throws Exception {
+        PassManager.defaults(false).disable(ConstantFoldingPass.NAME);
+    }
+
+    private static List<Node> program() {
+        List<Node> body = new ArrayList<>();
+        body.add(new Block(Arrays.asList(new Operation(INC, 1))));
+        List<Node> program = new ArrayList<>();
+        program.add(new Block(Arrays.asList(new Operation(INC, 1))));
+        program.add(new Loop(body));
+        return program;
+    }
+
+    private static class Recorder implements Pass {
+        private final String name;
+        private final List<List<Node>> sequences = new ArrayList<>();
+
+        Recorder(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public List<Node> apply(List<Node> sequence) {
+            sequences.add(sequence);
+            return sequence;
+        }
+    }
+}
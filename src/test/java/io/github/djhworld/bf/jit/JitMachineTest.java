@@ -0,0 +1,193 @@
+package io.github.djhworld.bf.jit;
+
+import com.google.common.io.Resources;
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.compile.CompileException;
+import io.github.djhworld.bf.compile.Compiler;
+import io.github.djhworld.bf.vm.Machine;
+import io.github.djhworld.bf.vm.TapeException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Strings.repeat;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.io.Resources.getResource;
+import static io.github.djhworld.bf.Instruction.*;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class JitMachineTest {
+    @Mock
+    private InputStream mockedInputStream;
+
+    @Mock
+    private PrintStream mockedPrintStream;
+
+    private JitMachine machine;
+    private byte[] machineMemory;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        this.machineMemory = new byte[30000];
+        this.machine = new JitMachine(mockedInputStream, mockedPrintStream, machineMemory);
+    }
+
+    @Test
+    public void shouldMoveDataPointer() throws Exception {
+        machine.execute(newArrayList(
+                new Operation(INC_DP, 10),
+                new Operation(DEC_DP, 2),
+                new Operation(INC_DP, 40000),
+                new Operation(DEC_DP, 40000)
+        ));
+
+        assertThat(machine.getDataPointer(), is(8));
+    }
+
+    @Test
+    public void shouldUpdateCellsAtOffsets() throws Exception {
+        machine.execute(newArrayList(
+                new Operation(INC_DP, 5),
+                new Operation(INC, 49, 2),
+                new Operation(DEC, 300, -1),
+                new Operation(INC, 7),
+                new Operation(SET_ZERO, 0)
+        ));
+
+        assertEquals((byte) 49, machineMemory[7]);
+        assertEquals((byte) -300, machineMemory[4]);
+        assertEquals((byte) 0, machineMemory[5]);
+    }
+
+    @Test
+    public void shouldPrintAndRead() throws Exception {
+        when(mockedInputStream.read())
+                .thenReturn(105)
+                .thenReturn(-1);
+
+        machine.execute(newArrayList(
+                new Operation(READ, 2, 1),
+                new Operation(PRINT, 2, 1)
+        ));
+
+        assertEquals((byte) 105, machineMemory[1]);
+        verify(mockedInputStream, times(2)).read();
+        verify(mockedPrintStream, times(2)).print(eq('i'));
+        verifyNoMoreInteractions(mockedInputStream, mockedPrintStream);
+    }
+
+    @Test
+    public void shouldScanAndMultiply() throws Exception {
+        machineMemory[0] = 1;
+        machineMemory[1] = 1;
+        machineMemory[2] = 1;
+
+        machine.execute(newArrayList(
+                new Operation(SCAN_RIGHT, 1),
+                new Operation(INC, 6),
+                new Operation(MUL_ADD, 2, 1),
+                new Operation(MUL_ADD, -1, -2),
+                new Operation(SET_ZERO, 0),
+                new Operation(SCAN_LEFT, 2)
+        ));
+
+        assertEquals((byte) 12, machineMemory[4]);
+        assertEquals((byte) -5, machineMemory[1]);
+        assertThat(machine.getDataPointer(), is(3));
+    }
+
+    @Test
+    public void shouldLoop() throws Exception {
+        machine.execute(newArrayList(
+                new Operation(INC, 5),
+                new Operation(INC, 10, 1),
+                new Operation(JUMP_IF_ZERO, 5),
+                new Operation(INC, 1, 1),
+                new Operation(DEC, 1),
+                new Operation(JUMP_IF_NOT_ZERO, 2)
+        ));
+
+        assertEquals((byte) 0, machineMemory[0]);
+        assertEquals((byte) 15, machineMemory[1]);
+    }
+
+    @Test
+    public void shouldSplitLargeProgramsIntoMethods() throws Exception {
+        // enough nested and sequential loops to need several generated methods
+        String block = "++[>+++[>+<.-]<-]" + repeat(">+<-", 5);
+        String program = repeat("+[" + block + "[-]]>>>", 30) + repeat(block, 20);
+
+        List<Operation> operations = new Compiler().compile(program);
+        assertThat(operations.size() > JitCompiler.MAX_METHOD_OPERATIONS * 10, is(true));
+
+        byte[] expected = new byte[30000];
+        new Machine(mockedInputStream, mockedPrintStream, expected).execute(operations);
+        machine.execute(operations);
+
+        assertArrayEquals(expected, machineMemory);
+    }
+
+    @Test(expected = TapeException.class)
+    public void shouldFailWhenLeavingTheTape() throws Exception {
+        machine.execute(newArrayList(
+                new Operation(DEC_DP, 1),
+                new Operation(INC, 1)
+        ));
+    }
+
+    @Test
+    public void shouldExecuteHelloWorld() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        this.machine = new JitMachine(mockedInputStream, new PrintStream(output), machineMemory);
+
+        runProgram("helloworld.b");
+
+        assertEquals("Hello World!\n", output.toString("UTF-8"));
+        verifyZeroInteractions(mockedInputStream);
+    }
+
+    @Test
+    public void shouldExecuteObscureTest() throws Exception {
+        runProgram("test-obscure.b");
+        InOrder inOrder = inOrder(mockedPrintStream);
+        inOrder.verify(mockedPrintStream, times(1)).print(eq('H'));
+        inOrder.verify(mockedPrintStream, times(1)).print(eq('\n'));
+        verifyNoMoreInteractions(mockedPrintStream);
+    }
+
+    @Test
+    public void shouldExecuteRot13() throws Exception {
+        when(mockedInputStream.read())
+                .thenReturn((int) 'a')
+                .thenReturn((int) 'N')
+                .thenReturn((int) '!')
+                .thenReturn(-1);
+
+        runProgram("rot13.b");
+        InOrder inOrder = inOrder(mockedPrintStream);
+        inOrder.verify(mockedPrintStream, times(1)).print(eq('n'));
+        inOrder.verify(mockedPrintStream, times(1)).print(eq('A'));
+        inOrder.verify(mockedPrintStream, times(1)).print(eq('!'));
+        verifyNoMoreInteractions(mockedPrintStream);
+    }
+
+    private void runProgram(String filename) throws IOException, CompileException {
+        String program = Resources.toString(getResource(filename), UTF_8);
+        machine.execute(new Compiler().compile(program));
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.djhworld.bf.jit;
+
+import com.google.common.io.Resources;
+import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.compile.Compiler;
+import io.github.djhworld.bf.vm.BufferedInput;
+import io.github.djhworld.bf.vm.BufferedOutput;
+import io.github.djhworld.bf.vm.Console;
+import io.github.djhworld.bf.vm.Machine;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.io.Resources.getResource;
+import static io.github.djhworld.bf.Instruction.*;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class TieredMachineTest {
+    @Test
+    public void shouldHandOffHotLoopWithLiveState() throws Exception {
+        byte[] memory = new byte[20];
+        for (int i = 0; i < 10; i++)
+            memory[i] = (byte) (i + 1);
+        TieredMachine machine = machine(memory, 3);
+
+        // increments each cell on the way right, the loop becomes hot part way along
+        machine.execute(newArrayList(
+                new Operation(JUMP_IF_ZERO, 3),
+                new Operation(INC, 1),
+                new Operation(INC_DP, 1),
+                new Operation(JUMP_IF_NOT_ZERO, 0)
+        ));
+
+        for (int i = 0; i < 10; i++)
+            assertEquals((byte) (i + 2), memory[i]);
+        assertEquals((byte) 0, memory[10]);
+        assertThat(machine.getDataPointer(), is(10));
+        assertThat(machine.getCompiledLoops(), is(1));
+    }
+
+    @Test
+    public void shouldCompileLoopOnceThresholdIsReached() throws Exception {
+        byte[] memory = new byte[10];
+        TieredMachine machine = machine(memory, 5);
+
+        machine.execute(newArrayList(
+                new Operation(INC, 20),
+                new Operation(JUMP_IF_ZERO, 4),
+                new Operation(INC, 2, 1),
+                new Operation(DEC, 1),
+                new Operation(JUMP_IF_NOT_ZERO, 1),
+                new Operation(INC, 1, 2)
+        ));
+
+        assertEquals((byte) 0, memory[0]);
+        assertEquals((byte) 40, memory[1]);
+        assertEquals((byte) 1, memory[2]);
+        assertThat(machine.getCompiledLoops(), is(1));
+    }
+
+    @Test
+    public void shouldProduceSameResultAsInterpreter() throws Exception {
+        for (String file : new String[]{"helloworld.b", "test-obscure.b", "memory-size-check.b", "rot13.b", "io-test-1.b"}) {
+            List<Operation> operations = new Compiler().compile(Resources.toString(getResource(file), UTF_8));
+            byte[] input = "Hello, tiers!\n".getBytes(UTF_8);
+
+            byte[] expectedMemory = new byte[30000];
+            ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+            new Machine(console(new ByteArrayInputStream(input), expectedOutput), expectedMemory).execute(operations);
+
+            byte[] memory = new byte[30000];
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            new TieredMachine(new JitCompiler(), console(new ByteArrayInputStream(input), output), memory, 2).execute(operations);
+
+            assertArrayEquals(file, expectedMemory, memory);
+            assertArrayEquals(file, expectedOutput.toByteArray(), output.toByteArray());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectThresholdBelowOne() throws Exception {
+        machine(new byte[1], 0);
+    }
+
+    private TieredMachine machine(byte[] memory, int threshold) {
+        return new TieredMachine(new JitCompiler(), console(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream()), memory, threshold);
+    }
+
+    private Console console(InputStream in, OutputStream out) {
+        return new Console(new BufferedInput(in), new BufferedOutput(out));
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.djhworld.bf.pipeline;
+
+import com.google.common.io.Resources;
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.compile.Compiler;
+import io.github.djhworld.bf.vm.BufferedInput;
+import io.github.djhworld.bf.vm.BufferedOutput;
+import io.github.djhworld.bf.vm.TapeException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.io.Resources.getResource;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PipelineTest {
+    // EOF leaves the cell unchanged, so it is set to -1 before every read
+    private static final String CAT = "-,+[-.[-]-,+]";
+
+    private final Compiler compiler = new Compiler();
+
+    @Test(timeout = 10000)
+    public void shouldFeedEachStageWithOutputOfThePreviousOne() throws Exception {
+        Program rot13 = compiler.compileToProgram(Resources.toString(getResource("rot13.b"), UTF_8));
+
+        assertThat(run(new Pipeline(Arrays.asList(rot13, compiler.compileToProgram(CAT))), "Hello"), is("Uryyb"));
+        assertThat(run(new Pipeline(Arrays.asList(rot13, rot13, rot13), 30000, 4), "Hello"), is("Uryyb"));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldPassLargeStreamThroughSmallBuffers() throws Exception {
+        char[] text = new char[100_000];
+        for (int i = 0; i < text.length; i++)
+            text[i] = (char) ('a' + i % 26);
+        Program cat = compiler.compileToProgram(CAT);
+
+        String output = run(new Pipeline(Arrays.asList(cat, cat, cat), 100, 16), new String(text));
+
+        assertThat(output, is(new String(text)));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldStopEarlierStagesOnceLaterOneFinishes() throws Exception {
+        // prints forever, the next stage only reads two bytes
+        Program forever = compiler.compileToProgram("+[.]");
+        Program head = compiler.compileToProgram(",.,.");
+
+        assertThat(run(new Pipeline(Arrays.asList(forever, head), 100, 16), ""), is("\u0001\u0001"));
+    }
+
+    @Test(expected = TapeException.class, timeout = 10000)
+    public void shouldReportFailureOfAStage() throws Exception {
+        run(new Pipeline(Collections.singletonList(compiler.compileToProgram("<+")), 100, 16), "");
+    }
+
+    private static String run(Pipeline pipeline, String input) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pipeline.run(new BufferedInput(new ByteArrayInputStream(input.getBytes(UTF_8))), new BufferedOutput(output));
+        return output.toString("ISO-8859-1");
+    }
+}
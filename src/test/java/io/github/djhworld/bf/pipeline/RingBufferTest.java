@@ -0,0 +1,72 @@
+package io.github.djhworld.bf.pipeline;
+
+import io.github.djhworld.bf.vm.Input;
+import io.github.djhworld.bf.vm.Output;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class RingBufferTest {
+    @Test
+    public void shouldHandBytesOverInOrderAndEndOnceClosed() throws Exception {
+        RingBuffer ring = new RingBuffer(4);
+        Output output = ring.output();
+        Input input = ring.input();
+
+        output.write((byte) 1, 1);
+        output.write((byte) 2, 2);
+        output.flush();
+        ring.closeOutput();
+
+        assertThat(input.read(), is(1));
+        assertThat(input.read(), is(2));
+        assertThat(input.read(), is(2));
+        assertThat(input.read(), is(-1));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldMakeWriterWaitForReaderOnceFull() throws Exception {
+        RingBuffer ring = new RingBuffer(8);
+        int total = 100_000;
+
+        CompletableFuture<Void> writing = CompletableFuture.runAsync(() -> {
+            try {
+                for (int i = 0; i < total; i++)
+                    ring.output().write((byte) i, 1 + i % 3);
+                ring.closeOutput();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        long sum = 0;
+        int count = 0;
+        int value;
+        while ((value = ring.input().read()) != -1) {
+            sum += value;
+            count++;
+        }
+        writing.get(5, TimeUnit.SECONDS);
+
+        long expectedSum = 0;
+        int expectedCount = 0;
+        for (int i = 0; i < total; i++) {
+            expectedSum += (i & 0xFF) * (1 + i % 3);
+            expectedCount += 1 + i % 3;
+        }
+        assertThat(count, is(expectedCount));
+        assertThat(sum, is(expectedSum));
+    }
+
+    @Test(expected = BrokenPipeException.class, timeout = 10000)
+    public void shouldFailWriterOnceReaderHasGone() throws Exception {
+        RingBuffer ring = new RingBuffer(4);
+        ring.closeInput();
+
+        ring.output().write((byte) 1, 5);
+    }
+}
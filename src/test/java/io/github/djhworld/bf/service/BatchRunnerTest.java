@@ -0,0 +1,128 @@
+package io.github.djhworld.bf.service;
+
+import com.google.common.base.Strings;
+import com.google.common.io.Resources;
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.compile.Compiler;
+import io.github.djhworld.bf.vm.Budget;
+import io.github.djhworld.bf.vm.TapeException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.io.Resources.getResource;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class BatchRunnerTest {
+    private final Compiler compiler = new Compiler();
+    private BatchRunner batch;
+
+    @After
+    public void tearDown() throws Exception {
+        batch.close();
+    }
+
+    @Test
+    public void shouldWriteOutputsInOrderOfRecords() throws Exception {
+        batch = new BatchRunner(compiler.compileToProgram(Resources.toString(getResource("rot13.b"), UTF_8)), 100, 4);
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            input.append("record ").append(i).append('\n');
+            expected.append("erpbeq ").append(i).append('\n');
+        }
+        // the last record needs no newline
+        input.append("end");
+        expected.append("raq\n");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        batch.run(new ByteArrayInputStream(input.toString().getBytes(UTF_8)), output, RecordFormat.LINES);
+
+        assertThat(output.toString("US-ASCII"), is(expected.toString()));
+    }
+
+    @Test
+    public void shouldStartEveryRecordOnClearTape() throws Exception {
+        // prints the cell then adds to it, so a tape left over from the last record would print more than zero
+        batch = new BatchRunner(compiler.compileToProgram(">.+<,[>+<[-],]"), 100, 2);
+        List<byte[]> inputs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            inputs.add(new byte[]{1, 2, 3});
+
+        List<byte[]> outputs = batch.run(inputs);
+
+        assertThat(outputs.size(), is(1000));
+        for (byte[] output : outputs)
+            assertArrayEquals(new byte[]{0}, output);
+    }
+
+    @Test
+    public void shouldFrameLengthPrefixedRecords() throws Exception {
+        batch = new BatchRunner(compiler.compileToProgram("-,+[-.[-]-,+]"), 100, 2);
+        byte[] input = {0, 0, 0, 2, 'h', 'i', 0, 0, 0, 0, 0, 0, 0, 1, '\n'};
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        batch.run(new ByteArrayInputStream(input), output, RecordFormat.LENGTH_PREFIXED);
+
+        assertArrayEquals(input, output.toByteArray());
+    }
+
+    @Test
+    public void shouldReadLengthPrefixedRecordsLargerThanOneRead() throws Exception {
+        batch = new BatchRunner(compiler.compileToProgram("-,+[-.[-]-,+]"), 100, 2);
+        byte[] input = new byte[4 + 200_000];
+        input[1] = (byte) (200_000 >>> 16);
+        input[2] = (byte) (200_000 >>> 8);
+        input[3] = (byte) 200_000;
+        for (int i = 4; i < input.length; i++)
+            input[i] = (byte) (i % 100 + 1);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        batch.run(new ByteArrayInputStream(input), output, RecordFormat.LENGTH_PREFIXED);
+
+        assertArrayEquals(input, output.toByteArray());
+    }
+
+    @Test(expected = EOFException.class)
+    public void shouldRejectTextReadAsLengthPrefixed() throws Exception {
+        batch = new BatchRunner(compiler.compileToProgram("-,+[-.[-]-,+]"), 100, 2);
+
+        // "Hell" taken as a length is over a gigabyte, more than the input holds
+        batch.run(new ByteArrayInputStream("Hello, world\n".getBytes(UTF_8)), new ByteArrayOutputStream(), RecordFormat.LENGTH_PREFIXED);
+    }
+
+    @Test
+    public void shouldReportRecordsRunningPastTheirBudget() throws Exception {
+        // loops for ever once it has printed a non-empty record's first byte
+        Program program = compiler.compileToProgram(",[.[]]");
+        batch = new BatchRunner(program, 100, 2, () -> Budget.UNLIMITED.withMaxOperations(1000));
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 600; i++)
+            input.append(i == 300 || i == 599 ? "loops" : "").append('\n');
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        List<Long> failed = batch.run(new ByteArrayInputStream(input.toString().getBytes(UTF_8)), output, RecordFormat.LINES);
+
+        assertThat(failed, is(Arrays.asList(300L, 599L)));
+        assertThat(output.toString("US-ASCII"), is(Strings.repeat("\n", 600)));
+        assertThat(batch.run(Arrays.asList(new byte[0], "loops".getBytes(UTF_8))).get(1), is(nullValue()));
+    }
+
+    @Test(expected = TapeException.class)
+    public void shouldFailBatchWhenRecordFails() throws Exception {
+        Program program = compiler.compileToProgram(",[<]");
+        batch = new BatchRunner(program, 100, 2);
+
+        batch.run(new ByteArrayInputStream("fine\n\nfails\n".getBytes(UTF_8)), new ByteArrayOutputStream(), RecordFormat.LINES);
+    }
+}
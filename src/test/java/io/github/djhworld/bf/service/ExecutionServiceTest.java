@@ -0,0 +1,143 @@
+package io.github.djhworld.bf.service;
+
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.compile.CachingCompiler;
+import io.github.djhworld.bf.compile.CompileException;
+import io.github.djhworld.bf.compile.Compiler;
+import io.github.djhworld.bf.vm.Budget;
+import io.github.djhworld.bf.vm.BudgetExceededException;
+import io.github.djhworld.bf.vm.TapePool;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+public class ExecutionServiceTest {
+    private static final String HELLO_WORLD = "++++++++[>++++[>++>+++>+++>+<<<<-]>+>+>->>+[<]<-]>>.>---.+++++++..+++.>>.<-.<.+++.------.--------.>>+.";
+    private static final String CAT = ",[.,]";
+
+    private final TapePool tapes = new TapePool(100, 4);
+    private ExecutionService service;
+
+    @After
+    public void tearDown() throws Exception {
+        service.close();
+    }
+
+    @Test
+    public void shouldRunManyJobsConcurrently() throws Exception {
+        service = new ExecutionService(new CachingCompiler(10), new ForkJoinPool(4), tapes);
+
+        List<CompletableFuture<JobResult>> hello = new ArrayList<>();
+        List<CompletableFuture<JobResult>> cat = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            hello.add(service.submit(HELLO_WORLD, new byte[0]));
+            cat.add(service.submit(CAT, ("job " + i + "\0").getBytes("US-ASCII")));
+        }
+
+        for (int i = 0; i < 500; i++) {
+            assertThat(new String(hello.get(i).get().getOutput(), "US-ASCII"), is("Hello World!"));
+            assertThat(new String(cat.get(i).get().getOutput(), "US-ASCII"), is("job " + i));
+        }
+        // never more tapes than threads running jobs at once
+        assertThat(tapes.idle() <= 4, is(true));
+    }
+
+    @Test
+    public void shouldRunSameProgramForSameSource() throws Exception {
+        List<Program> programs = Collections.synchronizedList(new ArrayList<>());
+        CachingCompiler compiler = new CachingCompiler(10) {
+            @Override
+            public Program compileToProgram(String input) throws CompileException {
+                Program program = super.compileToProgram(input);
+                programs.add(program);
+                return program;
+            }
+        };
+        service = new ExecutionService(compiler, new ForkJoinPool(1), tapes);
+
+        service.submit(HELLO_WORLD, new byte[0]).get();
+        service.submit(HELLO_WORLD, new byte[0]).get();
+
+        assertThat(programs.size(), is(2));
+        assertThat(programs.get(1), is(sameInstance(programs.get(0))));
+    }
+
+    @Test
+    public void shouldShareCompiledProgramWithoutCompiling() throws Exception {
+        Compiler compiler = mock(Compiler.class);
+        service = new ExecutionService(compiler, new ForkJoinPool(2), tapes);
+        Program program = new Compiler().compileToProgram(HELLO_WORLD);
+
+        List<CompletableFuture<JobResult>> jobs = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            jobs.add(service.submit(program, new byte[0]));
+
+        for (CompletableFuture<JobResult> job : jobs) {
+            JobResult result = job.get();
+            assertThat(result.getOutputLength(), is(12));
+            assertThat(result.getCompileTime(), is(0L));
+        }
+        verifyZeroInteractions(compiler);
+    }
+
+    @Test
+    public void shouldFailJobThatDoesNotCompile() throws Exception {
+        service = new ExecutionService(new CachingCompiler(10), new ForkJoinPool(1), tapes);
+
+        try {
+            service.submit("[[", new byte[0]).get();
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(CompileException.class)));
+        }
+    }
+
+    @Test
+    public void shouldReturnTapeWhenJobFails() throws Exception {
+        service = new ExecutionService(new Compiler(), new ForkJoinPool(1), tapes);
+
+        try {
+            service.submit("<+", new byte[0]).get();
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(tapes.idle(), is(1));
+        }
+
+        // the failed job's writes were cleared before the tape went back
+        JobResult result = service.submit(".", new byte[0]).get();
+        assertThat(result.getOutput()[0], is((byte) 0));
+    }
+
+    @Test
+    public void shouldCreateDefaultExecutor() throws Exception {
+        service = new ExecutionService();
+
+        assertThat(service.submit(HELLO_WORLD, new byte[0]).get().getOutputLength(), is(12));
+    }
+
+    @Test
+    public void shouldFailJobThatRunsPastItsBudget() throws Exception {
+        service = new ExecutionService(new Compiler(), new ForkJoinPool(1), tapes);
+
+        try {
+            service.submit("+[]", new byte[0], Budget.UNLIMITED.withMaxOperations(1000)).get();
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(BudgetExceededException.class)));
+            assertThat(tapes.idle(), is(1));
+        }
+    }
+}
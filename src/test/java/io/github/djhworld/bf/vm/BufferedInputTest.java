@@ -0,0 +1,48 @@
+package io.github.djhworld.bf.vm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class BufferedInputTest {
+    @Test
+    public void shouldReadBytesUntilExhausted() throws Exception {
+        BufferedInput input = new BufferedInput(new ByteArrayInputStream(new byte[]{1, (byte) 200, 3}), 2);
+
+        assertThat(input.read(), is(1));
+        assertThat(input.read(), is(200));
+        assertThat(input.read(), is(3));
+        assertThat(input.read(), is(-1));
+        assertThat(input.read(), is(-1));
+    }
+
+    @Test
+    public void shouldReadFromStreamInBlocks() throws Exception {
+        InputStream source = spy(new ByteArrayInputStream(new byte[100]));
+        BufferedInput input = new BufferedInput(source);
+
+        for (int i = 0; i < 100; i++)
+            input.read();
+
+        verify(source, times(1)).read(any(byte[].class), eq(0), anyInt());
+        verify(source, never()).read();
+    }
+
+    @Test
+    public void shouldReadFromChannel() throws Exception {
+        BufferedInput input = new BufferedInput(Channels.newChannel(new ByteArrayInputStream(new byte[]{7, 8})));
+
+        assertThat(input.read(), is(7));
+        assertThat(input.read(), is(8));
+        assertThat(input.read(), is(-1));
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.djhworld.bf.vm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class BufferedOutputTest {
+    @Test
+    public void shouldHoldOutputUntilFlushed() throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        BufferedOutput output = new BufferedOutput(target);
+
+        output.write((byte) 'a', 1);
+        output.write((byte) 'b', 3);
+        assertArrayEquals(new byte[0], target.toByteArray());
+
+        output.flush();
+        assertArrayEquals("abbb".getBytes("UTF-8"), target.toByteArray());
+    }
+
+    @Test
+    public void shouldDrainWhenBufferIsFull() throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        BufferedOutput output = new BufferedOutput(target, 4);
+
+        output.write((byte) 'x', 10);
+        assertArrayEquals("xxxxxxxx".getBytes("UTF-8"), target.toByteArray());
+
+        output.flush();
+        assertArrayEquals("xxxxxxxxxx".getBytes("UTF-8"), target.toByteArray());
+    }
+
+    @Test
+    public void shouldWriteRepeatedValueInBulk() throws Exception {
+        OutputStream target = mock(OutputStream.class);
+        BufferedOutput output = new BufferedOutput(target);
+
+        output.write((byte) 'z', 1000);
+        output.flush();
+
+        verify(target, times(1)).write(any(byte[].class), eq(0), eq(1000));
+        verify(target, times(1)).flush();
+        verify(target, never()).write(anyInt());
+    }
+
+    @Test
+    public void shouldWriteToChannel() throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        BufferedOutput output = new BufferedOutput(Channels.newChannel(target), 3);
+
+        output.write((byte) 'q', 2);
+        output.write((byte) 'r', 2);
+        output.flush();
+
+        assertArrayEquals("qqrr".getBytes("UTF-8"), target.toByteArray());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyBuffer() throws Exception {
+        new BufferedOutput(new ByteArrayOutputStream(), 0);
+    }
+}
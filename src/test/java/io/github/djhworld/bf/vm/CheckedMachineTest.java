@@ -0,0 +1,93 @@
+package io.github.djhworld.bf.vm;
+
+import io.github.djhworld.bf.compile.Compiler;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CheckedMachineTest {
+    private final Compiler compiler = new Compiler(false);
+    private final Console console = new Console(new BufferedInput(new ByteArrayInputStream(new byte[0])),
+            new BufferedOutput(new ByteArrayOutputStream()));
+
+    @Test
+    public void shouldSaturateAtBothEnds() throws Exception {
+        int[] memory = new int[2];
+        CheckedMachine machine = new CheckedMachine(console, memory, CellWidth.EIGHT, OverflowPolicy.SATURATE);
+
+        machine.execute(compiler.compile("--" + repeat('+', 300) + ">---"));
+
+        assertThat(memory[0], is(255));
+        assertThat(memory[1], is(0));
+    }
+
+    @Test
+    public void shouldSaturateMultiplication() throws Exception {
+        int[] memory = new int[2];
+        CheckedMachine machine = new CheckedMachine(console, memory, CellWidth.SIXTEEN, OverflowPolicy.SATURATE);
+
+        machine.execute(compiler.compile(repeat('+', 300) + "[->" + repeat('+', 300) + "<]"));
+
+        assertThat(memory[0], is(0));
+        assertThat(memory[1], is(65535));
+    }
+
+    @Test
+    public void shouldHoldFullThirtyTwoBitRange() throws Exception {
+        int[] memory = new int[]{0, -2}; // 2^32 - 2
+        CheckedMachine machine = new CheckedMachine(console, memory, CellWidth.THIRTY_TWO, OverflowPolicy.SATURATE);
+
+        machine.execute(compiler.compile("-" + repeat('+', 300) + ">+++"));
+
+        assertThat(memory[0], is(300));
+        assertThat(memory[1], is(-1));
+    }
+
+    @Test
+    public void shouldRaiseErrorOnOverflow() throws Exception {
+        int[] memory = new int[3];
+        CheckedMachine machine = new CheckedMachine(console, memory, CellWidth.EIGHT, OverflowPolicy.ERROR);
+
+        try {
+            machine.execute(compiler.compile(">>" + repeat('+', 255) + "+"));
+            fail("expected CellOverflowException");
+        } catch (CellOverflowException e) {
+            assertThat(e.getPosition(), is(2));
+            assertThat(memory[2], is(0));
+        }
+    }
+
+    @Test
+    public void shouldRaiseErrorOnUnderflow() throws Exception {
+        CheckedMachine machine = new CheckedMachine(console, new int[1], CellWidth.THIRTY_TWO, OverflowPolicy.ERROR);
+
+        try {
+            machine.execute(compiler.compile("+--"));
+            fail("expected CellOverflowException");
+        } catch (CellOverflowException e) {
+            assertThat(e.getPosition(), is(0));
+        }
+    }
+
+    @Test(expected = TapeException.class)
+    public void shouldRaiseErrorOutsideTape() throws Exception {
+        new CheckedMachine(console, new int[1], CellWidth.EIGHT, OverflowPolicy.ERROR).execute(compiler.compile("<+"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectWrapPolicy() throws Exception {
+        new CheckedMachine(console, new int[1], CellWidth.EIGHT, OverflowPolicy.WRAP);
+    }
+
+    private static String repeat(char token, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++)
+            builder.append(token);
+        return builder.toString();
+    }
+}
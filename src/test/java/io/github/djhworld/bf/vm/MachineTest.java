@@ -2,6 +2,8 @@ package io.github.djhworld.bf.vm;
 
 import com.google.common.io.Resources;
 import io.github.djhworld.bf.Operation;
+import io.github.djhworld.bf.Program;
+import io.github.djhworld.bf.ProgramImage;
 import io.github.djhworld.bf.compile.CompileException;
 import io.github.djhworld.bf.compile.Compiler;
 import org.junit.Before;
@@ -9,9 +11,17 @@ import org.junit.Test;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.collect.Lists.newArrayList;
@@ -20,6 +30,7 @@ import static io.github.djhworld.bf.Instruction.*;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -149,6 +160,198 @@ public class MachineTest {
         assertEquals((byte) 15, machineMemory[1]);
     }
 
+    @Test
+    public void shouldExecutePackedProgram() throws Exception {
+        machine.execute(new Program(
+                new int[]{Program.INC, Program.JUMP_IF_ZERO, Program.INC_DP, Program.INC, Program.DEC_DP, Program.DEC, Program.JUMP_IF_NOT_ZERO},
+                new int[]{3, 6, 1, 2, 1, 1, 1}
+        ));
+
+        assertEquals((byte) 0, machineMemory[0]);
+        assertEquals((byte) 6, machineMemory[1]);
+        assertThat(machine.getDataPointer(), is(0));
+    }
+
+    @Test
+    public void shouldAddressCellsRelativeToDataPointer() throws Exception {
+        when(mockedInputStream.read()).thenReturn(65);
+
+        machine.execute(newArrayList(
+                new Operation(INC_DP, 5),
+                new Operation(INC, 3, 2),
+                new Operation(DEC, 4, -1),
+                new Operation(READ, 1, 1),
+                new Operation(PRINT, 1, 1),
+                new Operation(SET_ZERO, 0, 1)
+        ));
+
+        assertEquals((byte) 3, machineMemory[7]);
+        assertEquals((byte) -4, machineMemory[4]);
+        assertEquals((byte) 0, machineMemory[6]);
+        assertThat(machine.getDataPointer(), is(5));
+        verify(mockedPrintStream, times(1)).print(eq('A'));
+    }
+
+    @Test
+    public void shouldSetCellToZero() throws Exception {
+        machine.execute(newArrayList(
+                new Operation(INC, 42),
+                new Operation(SET_ZERO, 0)
+        ));
+
+        assertEquals((byte) 0, machineMemory[0]);
+    }
+
+    @Test
+    public void shouldScanRightToZeroCell() throws Exception {
+        machineMemory[0] = 1;
+        machineMemory[2] = 1;
+        machineMemory[4] = 1;
+        machineMemory[5] = 1;
+
+        machine.execute(newArrayList(
+                new Operation(SCAN_RIGHT, 2)
+        ));
+
+        assertThat(machine.getDataPointer(), is(6));
+    }
+
+    @Test
+    public void shouldScanLeftToZeroCell() throws Exception {
+        machineMemory[7] = 1;
+        machineMemory[8] = 1;
+        machineMemory[9] = 1;
+
+        machine.execute(newArrayList(
+                new Operation(INC_DP, 9),
+                new Operation(SCAN_LEFT, 1)
+        ));
+
+        assertThat(machine.getDataPointer(), is(6));
+    }
+
+    @Test
+    public void shouldMultiplyAndAdd() throws Exception {
+        machine.execute(newArrayList(
+                new Operation(INC_DP, 1),
+                new Operation(INC, 7),
+                new Operation(MUL_ADD, 3, 1),
+                new Operation(MUL_ADD, -1, -1),
+                new Operation(SET_ZERO, 0)
+        ));
+
+        assertEquals((byte) -7, machineMemory[0]);
+        assertEquals((byte) 0, machineMemory[1]);
+        assertEquals((byte) 21, machineMemory[2]);
+    }
+
+    @Test
+    public void shouldNotTouchTargetCellWhenMultiplyCounterIsZero() throws Exception {
+        machine.execute(newArrayList(
+                new Operation(MUL_ADD, 3, -1),
+                new Operation(SET_ZERO, 0)
+        ));
+
+        assertThat(machine.getDataPointer(), is(0));
+    }
+
+    @Test
+    public void shouldFlushOutputBeforeReadingAndAtEnd() throws Exception {
+        Input input = mock(Input.class);
+        Output output = mock(Output.class);
+        when(input.read()).thenReturn(70);
+        when(input.wouldBlock()).thenReturn(true);
+
+        new Machine(input, output, machineMemory).execute(newArrayList(
+                new Operation(INC, 65),
+                new Operation(PRINT, 3),
+                new Operation(READ, 1),
+                new Operation(PRINT, 1)
+        ));
+
+        InOrder inOrder = inOrder(input, output);
+        inOrder.verify(output, times(1)).write((byte) 65, 3);
+        inOrder.verify(input, times(1)).wouldBlock();
+        inOrder.verify(output, times(1)).flush();
+        inOrder.verify(input, times(1)).read();
+        inOrder.verify(output, times(1)).write((byte) 70, 1);
+        inOrder.verify(output, times(1)).flush();
+        verifyNoMoreInteractions(input, output);
+    }
+
+    @Test
+    public void shouldNotFlushWhileInputIsBuffered() throws Exception {
+        byte[] text = new byte[100_000];
+        Arrays.fill(text, (byte) 'a');
+        AtomicInteger writes = new AtomicInteger();
+        OutputStream target = new OutputStream() {
+            @Override
+            public void write(int b) {
+                writes.incrementAndGet();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writes.incrementAndGet();
+            }
+        };
+        Console console = new Console(new BufferedInput(new ByteArrayInputStream(text)), new BufferedOutput(target));
+
+        new Machine(console, Tape.fixed(100)).execute(new Compiler().compileToProgram(Resources.toString(getResource("rot13.b"), UTF_8)));
+
+        // a full output buffer and an input buffer running dry each cost a write, rather than every byte read
+        assertThat(writes.get() <= 2 * (100_000 / BufferedInput.DEFAULT_BUFFER_SIZE + 1) + 1, is(true));
+    }
+
+    @Test(expected = TapeException.class)
+    public void shouldRaiseErrorWhenLeavingFixedTape() throws Exception {
+        machine.execute(newArrayList(
+                new Operation(DEC_DP, 1),
+                new Operation(INC, 1)
+        ));
+    }
+
+    @Test
+    public void shouldGrowTapeWhenMovingPastTheEnd() throws Exception {
+        Tape tape = Tape.growing(100000);
+        Machine machine = new Machine(new Console(mock(Input.class), mock(Output.class)), tape);
+
+        machine.execute(newArrayList(
+                new Operation(INC_DP, 20000),
+                new Operation(INC, 3, 5),
+                new Operation(MUL_ADD, 2, 1),
+                new Operation(INC_DP, 5),
+                new Operation(MUL_ADD, 2, 1),
+                new Operation(SET_ZERO, 0),
+                new Operation(INC_DP, 1),
+                new Operation(SCAN_RIGHT, 1)
+        ));
+
+        assertThat(tape.size() > 20006, is(true));
+        assertEquals((byte) 0, tape.get(20005));
+        assertEquals((byte) 6, tape.get(20006));
+        assertThat(machine.getDataPointer(), is(20007));
+    }
+
+    @Test
+    public void shouldWrapAroundTape() throws Exception {
+        Tape tape = Tape.wrapping(10);
+        Machine machine = new Machine(new Console(mock(Input.class), mock(Output.class)), tape);
+
+        machine.execute(newArrayList(
+                new Operation(DEC_DP, 1),
+                new Operation(INC, 4),
+                new Operation(INC, 1, 2),
+                new Operation(JUMP_IF_ZERO, 5),
+                new Operation(INC_DP, 1),
+                new Operation(JUMP_IF_NOT_ZERO, 3)
+        ));
+
+        assertEquals((byte) 4, tape.get(9));
+        assertEquals((byte) 1, tape.get(1));
+        assertThat(machine.getDataPointer(), is(0));
+    }
+
     // Tests below are based on programs written by daniel b cristofani www.hevanet.com/cristofd/brainfuck/
     // helloworld.b was taken from wikipedia 
     // I'm using them as a testbed to test the validity of the machine
@@ -241,6 +444,302 @@ public class MachineTest {
     }
 
 
+    @Test
+    public void shouldContinueFromPreviousStateUnlessReset() throws Exception {
+        machine.execute(newArrayList(new Operation(INC_DP, 2), new Operation(INC, 1)));
+        // the instruction pointer is already past the end of this program
+        machine.execute(newArrayList(new Operation(INC_DP, 2), new Operation(INC, 1)));
+        assertThat(machine.getDataPointer(), is(2));
+
+        machine.reset();
+        machine.execute(newArrayList(new Operation(INC, 5)));
+
+        assertThat(machine.getDataPointer(), is(0));
+        assertThat(machineMemory[0], is((byte) 5));
+        assertThat(machineMemory[2], is((byte) 1));
+    }
+
+    @Test
+    public void shouldRunOnNewTapeAfterRebinding() throws Exception {
+        machine.execute(newArrayList(new Operation(INC_DP, 3), new Operation(INC, 1)));
+
+        Tape tape = Tape.fixed(10);
+        machine.reset(new Console(new StreamInput(mockedInputStream), new PrintStreamOutput(mockedPrintStream)), tape);
+        machine.execute(newArrayList(new Operation(INC, 7)));
+
+        assertThat(tape.get(0), is((byte) 7));
+        assertThat(machine.getDataPointer(), is(0));
+    }
+
+    @Test
+    public void shouldRecordHowFarTheProgramReached() throws Exception {
+        Tape tape = Tape.fixed(30000);
+        Machine machine = new Machine(new Console(new StreamInput(mockedInputStream), new PrintStreamOutput(mockedPrintStream)), tape);
+
+        machine.execute(newArrayList(
+                new Operation(INC_DP, 10),
+                new Operation(INC, 1, 5),
+                new Operation(DEC_DP, 10),
+                new Operation(SET_ZERO, 0, 2)
+        ));
+
+        // furthest data pointer 10 plus the largest offset 5
+        assertThat(tape.highWater(), is(16));
+    }
+
+    @Test
+    public void shouldTreatWholeTapeAsTouchedWhenReachDependsOnData() throws Exception {
+        Tape tape = Tape.fixed(100);
+        Machine machine = new Machine(new Console(new StreamInput(mockedInputStream), new PrintStreamOutput(mockedPrintStream)), tape);
+
+        machine.execute(new Compiler().compile("+>+>+<<[>]+"));
+
+        assertThat(tape.highWater(), is(100));
+    }
+
+    @Test
+    public void shouldWorkOutReachOfBalancedLoops() throws Exception {
+        Compiler compiler = new Compiler();
+
+        assertThat(Machine.reach(compiler.compileToProgram(">>+[->>>+<<<[>>>>>.<<<<<]]")), is(6));
+        assertThat(Machine.reach(compiler.compileToProgram("+[>+]")), is(-1));
+        assertThat(Machine.reach(compiler.compileToProgram(">+<<+")), is(-1));
+        assertThat(Machine.reach(compiler.compileToProgram("[>]+")), is(-1));
+    }
+
+    @Test
+    public void shouldStopOnceOperationsBudgetRunsOutAndCarryOnUnderLargerBudget() throws Exception {
+        List<Operation> program = newArrayList(
+                new Operation(INC, 10),
+                new Operation(JUMP_IF_ZERO, 6),
+                new Operation(INC_DP, 1),
+                new Operation(INC, 1),
+                new Operation(DEC_DP, 1),
+                new Operation(DEC, 1),
+                new Operation(JUMP_IF_NOT_ZERO, 1)
+        );
+        machine.setBudget(Budget.UNLIMITED.withMaxOperations(20));
+
+        try {
+            machine.execute(program);
+            fail("expected BudgetExceededException");
+        } catch (BudgetExceededException e) {
+            // each pass costs the 5 operations from > to ], the fifth back-edge would take it to 25
+            assertThat(e.getReason(), is(BudgetExceededException.Reason.OPERATIONS));
+            assertThat(e.getOperations(), is(20L));
+            assertThat(e.getInstructionPointer(), is(6));
+            assertThat(e.getDataPointer(), is(0));
+        }
+        assertThat(machineMemory[0], is((byte) 5));
+        assertThat(machineMemory[1], is((byte) 5));
+
+        machine.setBudget(Budget.UNLIMITED.withMaxOperations(1000));
+        machine.execute(program);
+
+        assertThat(machineMemory[0], is((byte) 0));
+        assertThat(machineMemory[1], is((byte) 10));
+        assertThat(machine.getOperations(), is(45L));
+    }
+
+    @Test
+    public void shouldChargeScanOffTheTapeAgainstBudget() throws Exception {
+        byte[] cells = new byte[10];
+        Arrays.fill(cells, (byte) 1);
+        Machine machine = new Machine(new Console(new StreamInput(mockedInputStream), new PrintStreamOutput(mockedPrintStream)),
+                new Tape(cells, TapePolicy.WRAP));
+        machine.setBudget(Budget.UNLIMITED.withMaxOperations(1000));
+
+        try {
+            // no cell is zero, so the scan goes round the tape for ever once it wraps
+            machine.execute(newArrayList(
+                    new Operation(INC_DP, 5),
+                    new Operation(SCAN_RIGHT, 1)
+            ));
+            fail("expected BudgetExceededException");
+        } catch (BudgetExceededException e) {
+            assertThat(e.getReason(), is(BudgetExceededException.Reason.OPERATIONS));
+            assertThat(e.getInstructionPointer(), is(1));
+            assertThat(e.getOperations(), is(1000L));
+        }
+    }
+
+    @Test
+    public void shouldStopWhenCancelled() throws Exception {
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel();
+        machine.setBudget(Budget.UNLIMITED.withCancellation(cancellation));
+
+        try {
+            machine.execute(new Compiler().compile("+[]"));
+            fail("expected BudgetExceededException");
+        } catch (BudgetExceededException e) {
+            assertThat(e.getReason(), is(BudgetExceededException.Reason.CANCELLED));
+            assertThat(e.getOperations(), is(Budget.CHECK_INTERVAL));
+        }
+    }
+
+    @Test
+    public void shouldStopAtDeadline() throws Exception {
+        machine.setBudget(Budget.UNLIMITED.withTimeout(50, TimeUnit.MILLISECONDS));
+
+        try {
+            machine.execute(new Compiler().compile("+[]"));
+            fail("expected BudgetExceededException");
+        } catch (BudgetExceededException e) {
+            assertThat(e.getReason(), is(BudgetExceededException.Reason.DEADLINE));
+        }
+    }
+
+    @Test
+    public void shouldWorkOutCostOfOnePassOfEachLoop() throws Exception {
+        int[] costs = Machine.costs(Program.of(newArrayList(
+                new Operation(JUMP_IF_ZERO, 8),
+                new Operation(INC_DP, 1),
+                new Operation(JUMP_IF_ZERO, 5),
+                new Operation(PRINT, 1),
+                new Operation(DEC, 1),
+                new Operation(JUMP_IF_NOT_ZERO, 2),
+                new Operation(DEC_DP, 1),
+                new Operation(DEC, 1),
+                new Operation(JUMP_IF_NOT_ZERO, 0)
+        )));
+
+        // the inner loop is PRINT, DEC and its own ], the outer loop counts the inner loop's [ but not its body
+        assertThat(costs[5], is(3));
+        assertThat(costs[8], is(5));
+    }
+
+    @Test
+    public void shouldResumeFromSnapshotOnAnotherMachine() throws Exception {
+        Program program = new Compiler().compileToProgram("++++++++[>++++[>++>+++>+++>+<<<<-]>+>+>->>+[<]<-]>>.>---.+++++++..+++.>>.<-.<.+++.------.--------.>>+.");
+        machine.setBudget(Budget.UNLIMITED.withMaxOperations(50));
+        try {
+            machine.execute(program);
+            fail("expected BudgetExceededException");
+        } catch (BudgetExceededException e) {
+            // stopped while still setting up the cells, before printing anything
+        }
+        Snapshot snapshot = Snapshot.decode(ByteBuffer.wrap(machine.snapshot(program).encode()));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Machine resumed = new Machine(new Console(new StreamInput(mockedInputStream), new BufferedOutput(output)), Tape.fixed(100));
+        resumed.restore(program, snapshot);
+        resumed.execute(program);
+
+        assertThat(output.toString("US-ASCII"), is("Hello World!"));
+        assertThat(resumed.getOperations(), is(snapshot.getOperations()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRefuseSnapshotOfAnotherProgram() throws Exception {
+        Compiler compiler = new Compiler();
+        machine.execute(compiler.compileToProgram("+++"));
+        Snapshot snapshot = machine.snapshot(compiler.compileToProgram("+++"));
+
+        machine.restore(compiler.compileToProgram("++"), snapshot);
+    }
+
+    @Test
+    public void shouldExecuteProgramImage() throws Exception {
+        Program program = new Compiler().compileToProgram(Resources.toString(getResource("test-obscure.b"), UTF_8));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Machine machine = new Machine(new StreamInput(mockedInputStream), new PrintStreamOutput(new PrintStream(output)), new byte[30000]);
+
+        machine.execute(ProgramImage.wrap(ByteBuffer.wrap(ProgramImage.encode(program))));
+
+        assertThat(output.toString("US-ASCII"), is("H\n"));
+    }
+
+    @Test
+    public void shouldExecuteProgramImageWithWideOffsets() throws Exception {
+        PagedTape tape = new PagedTape(20_000_000, TapePolicy.FIXED);
+        Machine machine = new Machine(new Console(new StreamInput(mockedInputStream), new PrintStreamOutput(mockedPrintStream)), tape);
+        Program program = new Compiler().compileToProgram(repeat('>', 10_000_000) + "+++[-" + repeat('<', 10_000_000) + "+" + repeat('>', 10_000_000) + "]");
+
+        ProgramImage image = ProgramImage.wrap(ByteBuffer.wrap(ProgramImage.encode(program)));
+        assertThat(ProgramImage.isWide(image.operation(0)), is(true));
+
+        machine.execute(image);
+
+        assertThat(tape.get(0), is((byte) 3));
+        assertThat(tape.get(10_000_000), is((byte) 0));
+    }
+
+    @Test
+    public void shouldExecuteProgramImageOffTheTapeThroughItsPolicy() throws Exception {
+        Tape tape = new Tape(10, TapePolicy.WRAP);
+        Machine machine = new Machine(new Console(new StreamInput(mockedInputStream), new PrintStreamOutput(mockedPrintStream)), tape);
+
+        machine.execute(ProgramImage.wrap(ByteBuffer.wrap(ProgramImage.encode(new Compiler().compileToProgram("<+++>+")))));
+
+        assertThat(tape.get(9), is((byte) 3));
+        assertThat(tape.get(0), is((byte) 1));
+        assertThat(machine.getDataPointer(), is(0));
+    }
+
+    @Test
+    public void shouldScanAcrossPagesOfPagedTape() throws Exception {
+        PagedTape tape = new PagedTape(10_000, TapePolicy.FIXED, 64);
+        for (int i = 1; i < 5000; i++)
+            tape.set(i, (byte) 1);
+        Machine machine = new Machine(new Console(new StreamInput(mockedInputStream), new PrintStreamOutput(mockedPrintStream)), tape);
+
+        machine.execute(newArrayList(new Operation(INC_DP, 10), new Operation(SCAN_RIGHT, 1)));
+        assertThat(machine.getDataPointer(), is(5000));
+
+        machine.reset();
+        machine.execute(newArrayList(new Operation(INC_DP, 4998), new Operation(SCAN_LEFT, 2)));
+        assertThat(machine.getDataPointer(), is(0));
+    }
+
+    @Test
+    public void shouldStopScanAcrossPagesWhereBudgetRunsOut() throws Exception {
+        PagedTape tape = new PagedTape(10_000, TapePolicy.FIXED, 64);
+        for (int i = 0; i < 5000; i++)
+            tape.set(i, (byte) 1);
+        Machine machine = new Machine(new Console(new StreamInput(mockedInputStream), new PrintStreamOutput(mockedPrintStream)), tape);
+        machine.setBudget(Budget.UNLIMITED.withMaxOperations(1000));
+
+        try {
+            // every page after the first takes the slow path
+            machine.execute(newArrayList(new Operation(INC_DP, 100), new Operation(SCAN_RIGHT, 1)));
+            fail("expected BudgetExceededException");
+        } catch (BudgetExceededException e) {
+            assertThat(e.getOperations(), is(1000L));
+            assertThat(e.getDataPointer(), is(1101));
+        }
+    }
+
+    @Test
+    public void shouldRunFarOutOnPagedTape() throws Exception {
+        Compiler compiler = new Compiler();
+        PagedTape tape = new PagedTape(Tape.MAX_SIZE, TapePolicy.FIXED, 4096);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Machine machine = new Machine(new Console(new StreamInput(mockedInputStream), new BufferedOutput(output)), tape);
+
+        // moves 10 million cells out, then runs Hello World there
+        machine.execute(compiler.compileToProgram(repeat('>', 10_000_000)
+                + "++++++++[>++++[>++>+++>+++>+<<<<-]>+>+>->>+[<]<-]>>.>---.+++++++..+++.>>.<-.<.+++.------.--------.>>+."));
+
+        assertThat(output.toString("US-ASCII"), is("Hello World!"));
+        assertThat(machine.getDataPointer(), is(10_000_005));
+        assertThat(tape.pages(), is(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRefuseSnapshotOfPagedTape() throws Exception {
+        Program program = new Compiler().compileToProgram(repeat('>', 100_000) + "+++");
+        Machine machine = new Machine(new Console(new StreamInput(mockedInputStream), new PrintStreamOutput(mockedPrintStream)),
+                new PagedTape(1_000_000, TapePolicy.FIXED, 1024));
+        machine.execute(program);
+
+        machine.snapshot(program);
+    }
+
+    private static String repeat(char c, int times) {
+        return new String(new char[times]).replace('\0', c);
+    }
+
     private void runProgram(String filename) throws IOException, CompileException {
         Compiler compiler = new Compiler();
         String helloWorldStr = Resources.toString(getResource(filename), UTF_8);
@@ -0,0 +1,95 @@
+package io.github.djhworld.bf.vm;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PagedTapeTest {
+    @Test
+    public void shouldOnlyAllocatePagesWrittenTo() throws Exception {
+        PagedTape tape = new PagedTape(Tape.MAX_SIZE, TapePolicy.FIXED, 1024);
+        tape.set(5, (byte) 1);
+        tape.set(50_000_000, (byte) 2);
+        tape.set(50_000_001, (byte) 3);
+        tape.set(1_000_000_000, (byte) 0);
+
+        assertThat(tape.pages(), is(2));
+        assertThat(tape.get(5), is((byte) 1));
+        assertThat(tape.get(50_000_000), is((byte) 2));
+        assertThat(tape.get(50_000_001), is((byte) 3));
+        assertThat(tape.get(2_000_000_000), is((byte) 0));
+        assertThat(tape.pages(), is(2));
+        assertThat(tape.highWater(), is(50_000_000 / 1024 * 1024 + 1024));
+    }
+
+    @Test
+    public void shouldHandOutPageOfFocusedPosition() throws Exception {
+        PagedTape tape = new PagedTape(10_000, TapePolicy.FIXED, 4096);
+        tape.set(5000, (byte) 7);
+
+        tape.focus(3000);
+        assertThat(tape.cells().length, is(0));
+
+        tape.focus(5000);
+        assertThat(tape.base(), is(4096));
+        assertThat(tape.cells()[5000 - 4096], is((byte) 7));
+
+        // the last page stops at the end of the tape
+        tape.set(9999, (byte) 1);
+        tape.focus(9999);
+        assertThat(tape.base(), is(8192));
+        assertThat(tape.cells().length, is(10_000 - 8192));
+    }
+
+    @Test
+    public void shouldRaiseErrorOutsideFixedTape() throws Exception {
+        PagedTape tape = new PagedTape(10, TapePolicy.FIXED, 4);
+
+        try {
+            tape.get(10);
+            fail("expected TapeException");
+        } catch (TapeException e) {
+            assertThat(e.getPosition(), is(10));
+        }
+
+        try {
+            tape.set(-1, (byte) 1);
+            fail("expected TapeException");
+        } catch (TapeException e) {
+            assertThat(e.getPosition(), is(-1));
+        }
+    }
+
+    @Test
+    public void shouldWrapAroundBothEnds() throws Exception {
+        PagedTape tape = new PagedTape(10, TapePolicy.WRAP, 4);
+        tape.set(-1, (byte) 5);
+        tape.set(12, (byte) 7);
+
+        assertThat(tape.get(9), is((byte) 5));
+        assertThat(tape.get(2), is((byte) 7));
+        assertThat(tape.normalise(-1), is(9));
+        assertThat(tape.normalise(3), is(3));
+    }
+
+    @Test
+    public void shouldDropPagesWhenCleared() throws Exception {
+        PagedTape tape = new PagedTape(100_000, TapePolicy.FIXED, 1024);
+        tape.set(70_000, (byte) 1);
+        tape.focus(70_000);
+
+        tape.clear();
+
+        assertThat(tape.pages(), is(0));
+        assertThat(tape.highWater(), is(0));
+        assertThat(tape.get(70_000), is((byte) 0));
+        assertThat(tape.cells().length, is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRefuseToGrow() throws Exception {
+        new PagedTape(100, TapePolicy.GROW);
+    }
+}
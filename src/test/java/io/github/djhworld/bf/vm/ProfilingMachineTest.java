@@ -0,0 +1,97 @@
+package io.github.djhworld.bf.vm;
+
+import io.github.djhworld.bf.compile.Compiler;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static io.github.djhworld.bf.Instruction.*;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ProfilingMachineTest {
+    private final Compiler compiler = new Compiler();
+
+    @Test
+    public void shouldCountOperationsPerInstruction() throws Exception {
+        ProfilingMachine machine = new ProfilingMachine(console(new byte[]{'a', 'b'}, new ByteArrayOutputStream()), new byte[10]);
+
+        machine.execute(compiler.compile(",.>,,..+"));
+
+        Profile profile = machine.getProfile();
+        // the second , . and + are at an offset, leaving a single pointer move at the end
+        assertThat(profile.getOperations(), is(6L));
+        assertThat(profile.getCount(READ), is(2L));
+        assertThat(profile.getCount(PRINT), is(2L));
+        assertThat(profile.getCount(INC), is(1L));
+        assertThat(profile.getInstructionCounts().get("READ"), is(2L));
+        assertThat(profile.getBytesRead(), is(3L));
+        assertThat(profile.getBytesWritten(), is(3L));
+    }
+
+    @Test
+    public void shouldRankLoopsByOperationsWithTheirSourcePositions() throws Exception {
+        ProfilingMachine machine = new ProfilingMachine(console(new byte[0], new ByteArrayOutputStream()), new byte[10]);
+
+        machine.execute(compiler.compile("+++[>++++\n  [>+<-.]<-]"));
+
+        List<Profile.LoopProfile> loops = machine.getProfile().getLoops();
+        assertThat(loops.size(), is(2));
+        // the outer loop includes the operations of the inner one
+        assertThat(loops.get(0).getLine(), is(1));
+        assertThat(loops.get(0).getColumn(), is(4));
+        assertThat(loops.get(0).getIterations(), is(3L));
+        assertThat(loops.get(1).getLine(), is(2));
+        assertThat(loops.get(1).getColumn(), is(3));
+        assertThat(loops.get(1).getEntries(), is(3L));
+        assertThat(loops.get(1).getIterations(), is(12L));
+    }
+
+    @Test
+    public void shouldRecordTapeHighWater() throws Exception {
+        ProfilingMachine machine = new ProfilingMachine(console(new byte[0], new ByteArrayOutputStream()), new byte[100]);
+
+        machine.execute(compiler.compile("+>+>+<<[>]"));
+        // the scan stops at cell 3
+        assertThat(machine.getProfile().getTapeHighWater(), is(4));
+
+        machine = new ProfilingMachine(console(new byte[0], new ByteArrayOutputStream()), new byte[100]);
+        machine.execute(compiler.compile(">>>>>>-<<<<<<"));
+        assertThat(machine.getProfile().getTapeHighWater(), is(7));
+    }
+
+    @Test
+    public void shouldRaiseErrorWhenLeavingTape() throws Exception {
+        ProfilingMachine machine = new ProfilingMachine(console(new byte[0], new ByteArrayOutputStream()), new byte[3]);
+
+        try {
+            machine.execute(compiler.compile(">>>+"));
+            fail("expected TapeException");
+        } catch (TapeException e) {
+            assertThat(e.getPosition(), is(3));
+        }
+    }
+
+    @Test
+    public void shouldRegisterProfileAsMXBean() throws Exception {
+        ProfilingMachine machine = new ProfilingMachine(console(new byte[0], new ByteArrayOutputStream()), new byte[10]);
+        machine.execute(compiler.compile("++[>+<-]"));
+
+        ObjectName name = machine.getProfile().register("io.github.djhworld.bf:type=Profile,name=test");
+        try {
+            Object operations = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Operations");
+            assertThat(operations, is((Object) machine.getProfile().getOperations()));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    private static Console console(byte[] in, ByteArrayOutputStream out) {
+        return new Console(new BufferedInput(new ByteArrayInputStream(in)), new BufferedOutput(out));
+    }
+}
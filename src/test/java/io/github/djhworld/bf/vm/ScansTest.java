@@ -0,0 +1,107 @@
+package io.github.djhworld.bf.vm;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ScansTest {
+    @Test
+    public void shouldFindSameCellsAsScanningOneByOne() throws Exception {
+        byte[] memory = new byte[300];
+        Arrays.fill(memory, (byte) 1);
+        for (int zero : new int[]{0, 7, 8, 9, 40, 41, 100, 163, 200, 257, 299})
+            memory[zero] = 0;
+
+        for (boolean wordAtATime : new boolean[]{true, false}) {
+            for (int step = 1; step <= 9; step++) {
+                for (int start = 0; start < memory.length; start++) {
+                    assertThat(right(memory, start, step, wordAtATime), is(scan(memory, start, step)));
+                    assertThat(left(memory, start, step, wordAtATime), is(scan(memory, start, -step)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldTreatEveryNonZeroValueAsNonZero() throws Exception {
+        byte[] memory = new byte[64];
+        for (int i = 0; i < memory.length; i++)
+            memory[i] = (byte) (i * 37 + 1);
+        memory[50] = 0;
+        memory[5] = 0;
+
+        assertThat(Scans.right(memory, 6, 1, true), is(50));
+        assertThat(Scans.left(memory, 49, 1, true), is(5));
+        assertThat(Scans.right(memory, 50, 1, true), is(50));
+    }
+
+    @Test
+    public void shouldFailWhenRunningOffEitherEnd() throws Exception {
+        byte[] memory = new byte[100];
+        Arrays.fill(memory, (byte) -1);
+
+        try {
+            Scans.right(memory, 3, 1, true);
+            fail("expected to run off the end");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+
+        try {
+            Scans.left(memory, 96, 4, true);
+            fail("expected to run off the start");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldStopAtEitherEndWithinArray() throws Exception {
+        byte[] memory = new byte[100];
+        Arrays.fill(memory, (byte) 1);
+        memory[40] = 0;
+
+        assertThat(Scans.rightWithin(memory, 3, 1), is(40));
+        assertThat(Scans.rightWithin(memory, 41, 1), is(100));
+        assertThat(Scans.rightWithin(memory, 41, 3), is(101));
+        assertThat(Scans.leftWithin(memory, 99, 1), is(40));
+        assertThat(Scans.leftWithin(memory, 39, 1), is(-1));
+        assertThat(Scans.leftWithin(memory, 38, 4), is(-2));
+    }
+
+    @Test
+    public void shouldReadWordsAtATimeFromJava9() throws Exception {
+        assertThat(Scans.isWordAtATime(), is(!System.getProperty("java.specification.version").startsWith("1.")));
+    }
+
+    // all three return -1 when running off the tape
+
+    private static int right(byte[] memory, int position, int step, boolean wordAtATime) {
+        try {
+            return Scans.right(memory, position, step, wordAtATime);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    private static int left(byte[] memory, int position, int step, boolean wordAtATime) {
+        try {
+            return Scans.left(memory, position, step, wordAtATime);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    private static int scan(byte[] memory, int position, int step) {
+        try {
+            while (memory[position] != 0) position += step;
+            return position;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.djhworld.bf.vm;
+
+import io.github.djhworld.bf.compile.Compiler;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ShortMachineTest {
+    private final Compiler compiler = new Compiler();
+
+    @Test
+    public void shouldHoldSixteenBitValues() throws Exception {
+        char[] memory = new char[3];
+        ShortMachine machine = new ShortMachine(console(new byte[0], new ByteArrayOutputStream()), memory);
+
+        // 16 * 16 * 16 * 16 is 0 in an 8-bit cell but 65536 wraps to 0 in a 16-bit one, so stop at 16 * 16 * 16
+        machine.execute(compiler.compile("++++++++++++++++[>++++++++++++++++[>++++++++++++++++<-]<-]>>-"));
+
+        assertThat((int) memory[2], is(4095));
+    }
+
+    @Test
+    public void shouldWrapAtSixteenBits() throws Exception {
+        char[] memory = new char[1];
+        new ShortMachine(console(new byte[0], new ByteArrayOutputStream()), memory).execute(compiler.compile("-"));
+
+        assertThat((int) memory[0], is(65535));
+    }
+
+    @Test
+    public void shouldReadAndPrintLowByte() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        char[] memory = new char[1];
+        ShortMachine machine = new ShortMachine(console(new byte[]{(byte) 200}, out), memory);
+
+        machine.execute(compiler.compile(",." + "+++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++."));
+
+        assertThat((int) memory[0], is(261));
+        assertArrayEquals(new byte[]{(byte) 200, 5}, out.toByteArray());
+    }
+
+    @Test
+    public void shouldRaiseErrorOutsideTape() throws Exception {
+        ShortMachine machine = new ShortMachine(console(new byte[0], new ByteArrayOutputStream()), new char[4]);
+
+        try {
+            machine.execute(compiler.compile(">>+[>+]"));
+            fail("expected TapeException");
+        } catch (TapeException e) {
+            assertThat(e.getPosition(), is(4));
+        }
+    }
+
+    @Test
+    public void shouldMatchIntMachineOnWrappingPrograms() throws Exception {
+        String program = "++++++++[>++++[>++>+++>+++>+<<<<-]>+>+>->>+[<]<-]>>.>---.+++++++..+++.>>.<-.<.+++.------.--------.>>+.";
+        ByteArrayOutputStream shortOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream intOut = new ByteArrayOutputStream();
+
+        new ShortMachine(console(new byte[0], shortOut), new char[10]).execute(compiler.compile(program));
+        new IntMachine(console(new byte[0], intOut), new int[10]).execute(compiler.compile(program));
+
+        assertThat(shortOut.toString("US-ASCII"), is("Hello World!"));
+        assertThat(intOut.toString("US-ASCII"), is("Hello World!"));
+    }
+
+    private static Console console(byte[] in, ByteArrayOutputStream out) {
+        return new Console(new BufferedInput(new ByteArrayInputStream(in)), new BufferedOutput(out));
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.djhworld.bf.vm;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.lessThan;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class SnapshotTest {
+    private static final byte[] DIGEST = new byte[32];
+
+    @Test
+    public void shouldRoundTripState() throws Exception {
+        byte[] cells = new byte[]{1, 0, 0, -1, 5, 0, 0, 0, 7};
+        Snapshot snapshot = new Snapshot(DIGEST, 12, 3, 1L << 40, cells);
+
+        Snapshot decoded = Snapshot.decode(ByteBuffer.wrap(snapshot.encode()));
+
+        assertArrayEquals(DIGEST, decoded.getProgramDigest());
+        assertThat(decoded.getInstructionPointer(), is(12));
+        assertThat(decoded.getDataPointer(), is(3));
+        assertThat(decoded.getOperations(), is(1L << 40));
+        assertArrayEquals(cells, decoded.cells());
+    }
+
+    @Test
+    public void shouldRunLengthEncodeMostlyEmptyTape() throws Exception {
+        byte[] cells = new byte[1000000];
+        cells[10] = 1;
+        cells[999999] = 2;
+
+        byte[] encoded = new Snapshot(DIGEST, 0, 0, 0, cells).encode();
+
+        assertThat(encoded.length, is(lessThan(64)));
+        assertArrayEquals(cells, Snapshot.decode(ByteBuffer.wrap(encoded)).cells());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownFormat() throws Exception {
+        Snapshot.decode(ByteBuffer.wrap("not a snapshot".getBytes("US-ASCII")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTruncatedSnapshot() throws Exception {
+        byte[] encoded = new Snapshot(DIGEST, 0, 0, 0, new byte[]{1, 2, 3}).encode();
+
+        Snapshot.decode(ByteBuffer.wrap(Arrays.copyOf(encoded, encoded.length - 1)));
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.djhworld.bf.vm;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class TapePoolTest {
+    @Test
+    public void shouldReuseZeroedTapes() throws Exception {
+        TapePool pool = new TapePool(16, 2);
+        Tape tape = pool.acquire();
+        tape.set(3, (byte) 9);
+
+        pool.release(tape);
+
+        Tape reused = pool.acquire();
+        assertThat(reused, is(sameInstance(tape)));
+        assertThat(reused.get(3), is((byte) 0));
+        assertThat(reused.highWater(), is(0));
+    }
+
+    @Test
+    public void shouldKeepAtMostMaxIdleTapes() throws Exception {
+        TapePool pool = new TapePool(16, 2);
+        Tape a = pool.acquire();
+        Tape b = pool.acquire();
+        Tape c = pool.acquire();
+
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+
+        assertThat(pool.idle(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectForeignTape() throws Exception {
+        new TapePool(16, 2).release(Tape.fixed(8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTapeWithOtherPolicy() throws Exception {
+        new TapePool(16, 2).release(Tape.wrapping(16));
+    }
+}
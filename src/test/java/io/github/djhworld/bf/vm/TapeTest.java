@@ -0,0 +1,106 @@
+package io.github.djhworld.bf.vm;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TapeTest {
+    @Test
+    public void shouldRaiseErrorOutsideFixedTape() throws Exception {
+        Tape tape = Tape.fixed(10);
+        tape.set(9, (byte) 1);
+
+        try {
+            tape.get(10);
+            fail("expected TapeException");
+        } catch (TapeException e) {
+            assertThat(e.getPosition(), is(10));
+        }
+
+        try {
+            tape.set(-1, (byte) 1);
+            fail("expected TapeException");
+        } catch (TapeException e) {
+            assertThat(e.getPosition(), is(-1));
+        }
+    }
+
+    @Test
+    public void shouldWrapAroundBothEnds() throws Exception {
+        Tape tape = Tape.wrapping(10);
+        tape.set(-1, (byte) 5);
+        tape.set(12, (byte) 7);
+
+        assertThat(tape.get(9), is((byte) 5));
+        assertThat(tape.get(2), is((byte) 7));
+        assertThat(tape.normalise(-1), is(9));
+        assertThat(tape.normalise(25), is(5));
+        assertThat(tape.normalise(3), is(3));
+    }
+
+    @Test
+    public void shouldGrowInChunks() throws Exception {
+        Tape tape = Tape.growing(100000);
+        assertThat(tape.size(), is(Tape.CHUNK_SIZE));
+
+        tape.set(Tape.CHUNK_SIZE, (byte) 3);
+        assertThat(tape.size(), is(Tape.CHUNK_SIZE * 2));
+        assertThat(tape.get(Tape.CHUNK_SIZE), is((byte) 3));
+
+        tape.set(50000, (byte) 4);
+        assertThat(tape.size(), is(53248));
+        assertThat(tape.get(50000), is((byte) 4));
+        assertThat(tape.get(Tape.CHUNK_SIZE), is((byte) 3));
+    }
+
+    @Test
+    public void shouldStopGrowingAtMaximumSize() throws Exception {
+        Tape tape = Tape.growing(5000);
+        tape.set(4999, (byte) 1);
+        assertThat(tape.size(), is(5000));
+
+        try {
+            tape.set(5000, (byte) 1);
+            fail("expected TapeException");
+        } catch (TapeException e) {
+            assertThat(e.getPosition(), is(5000));
+        }
+    }
+
+    @Test(expected = TapeException.class)
+    public void shouldNotGrowToTheLeft() throws Exception {
+        Tape.growing(5000).get(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyFixedTape() throws Exception {
+        Tape.fixed(0);
+    }
+
+    @Test
+    public void shouldOnlyClearBelowHighWater() throws Exception {
+        Tape tape = Tape.fixed(100);
+        assertThat(tape.highWater(), is(0));
+
+        tape.set(10, (byte) 1);
+        tape.cells()[50] = 2;
+        tape.clear();
+
+        // the write straight to the array was never reported, so it survives
+        assertThat(tape.get(10), is((byte) 0));
+        assertThat(tape.cells()[50], is((byte) 2));
+        assertThat(tape.highWater(), is(0));
+    }
+
+    @Test
+    public void shouldTreatWrappedCellsAsTouched() throws Exception {
+        byte[] cells = {1, 2, 3};
+        Tape tape = new Tape(cells, TapePolicy.FIXED);
+        assertThat(tape.highWater(), is(3));
+
+        tape.clear();
+        assertThat(cells[2], is((byte) 0));
+    }
+}